@@ -3,6 +3,8 @@ package com.github.schananas.reactivestockmarket.cqrs;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 /**
  * Interface to represent aggregate
  *
@@ -25,6 +27,17 @@ public interface Aggregate {
      */
     Mono<SourcingEvent> routeCommand(Command command);
 
+    /**
+     * Runs checks of command that don't depend on aggregate state and materializes it ahead of routing, see {@link
+     * PrevalidatedCommand}. Thread-safe, called by sender before command is queued for its aggregate.
+     *
+     * @param command to check
+     * @return command to route, command itself if it has no stateless checks
+     */
+    default Command prevalidate(Command command) {
+        return command;
+    }
+
     /**
      * Routes event  to corresponding handler
      *
@@ -32,6 +45,17 @@ public interface Aggregate {
      */
     Mono<Void> routeEvent(SourcingEvent event);
 
+    /**
+     * Routes batch of events to corresponding handlers, preserving their order
+     *
+     * @param events to handle
+     */
+    default Mono<Void> routeEvents(List<SourcingEvent> events) {
+        return Flux.fromIterable(events)
+                   .concatMap(this::routeEvent)
+                   .then();
+    }
+
     /**
      * Hot stream that emits all aggregate events
      *
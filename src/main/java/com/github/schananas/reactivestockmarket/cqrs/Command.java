@@ -22,4 +22,16 @@ public interface Command {
      * @return unique command identifier
      */
     UUID commandId();
+
+    /**
+     * Priority command overtakes other commands of its aggregate that are still waiting for execution. Only commands
+     * that can't break causality of other commands should have priority, such as cancellations. Every command that
+     * amends or removes resting orders needs to have priority, so that such commands keep their order among
+     * themselves.
+     *
+     * @return true if command has priority
+     */
+    default boolean priority() {
+        return false;
+    }
 }
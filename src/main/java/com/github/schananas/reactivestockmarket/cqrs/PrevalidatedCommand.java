@@ -0,0 +1,43 @@
+package com.github.schananas.reactivestockmarket.cqrs;
+
+import java.util.UUID;
+
+/**
+ * Command that has already been through checks that don't depend on aggregate state, see {@link
+ * Aggregate#prevalidate(Command)}. Carries outcome of those checks, so that aggregate only publishes it in order with
+ * its other commands.
+ *
+ * @param command - original command
+ * @param event - event command has been materialized into, or event to publish about rejection, if any
+ * @param rejection - reason command has been rejected, null if command is valid
+ * @author Stefan Dragisic
+ */
+public record PrevalidatedCommand(Command command, SourcingEvent event, String rejection) implements Command {
+
+    public static PrevalidatedCommand accepted(Command command, SourcingEvent event) {
+        return new PrevalidatedCommand(command, event, null);
+    }
+
+    public static PrevalidatedCommand rejected(Command command, SourcingEvent event, String rejection) {
+        return new PrevalidatedCommand(command, event, rejection);
+    }
+
+    public boolean isRejected() {
+        return rejection != null;
+    }
+
+    @Override
+    public String aggregateId() {
+        return command.aggregateId();
+    }
+
+    @Override
+    public UUID commandId() {
+        return command.commandId();
+    }
+
+    @Override
+    public boolean priority() {
+        return command.priority();
+    }
+}
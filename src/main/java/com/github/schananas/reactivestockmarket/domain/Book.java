@@ -3,13 +3,30 @@ package com.github.schananas.reactivestockmarket.domain;
 import com.github.schananas.reactivestockmarket.cqrs.Aggregate;
 import com.github.schananas.reactivestockmarket.cqrs.Command;
 import com.github.schananas.reactivestockmarket.cqrs.Event;
+import com.github.schananas.reactivestockmarket.cqrs.PrevalidatedCommand;
 import com.github.schananas.reactivestockmarket.cqrs.SourcingEvent;
+import com.github.schananas.reactivestockmarket.domain.command.BulkQuoteCommand;
 import com.github.schananas.reactivestockmarket.domain.command.CancelOrderCommand;
+import com.github.schananas.reactivestockmarket.domain.command.ExpireOrdersCommand;
 import com.github.schananas.reactivestockmarket.domain.command.MakeOrderCommand;
+import com.github.schananas.reactivestockmarket.domain.command.MassCancelCommand;
+import com.github.schananas.reactivestockmarket.domain.command.ReplaceOrderCommand;
+import com.github.schananas.reactivestockmarket.domain.command.UncrossAuctionCommand;
+import com.github.schananas.reactivestockmarket.domain.engine.InstrumentSpec;
 import com.github.schananas.reactivestockmarket.domain.engine.MatchingEngine;
+import com.github.schananas.reactivestockmarket.domain.engine.QuoteLevel;
+import com.github.schananas.reactivestockmarket.domain.engine.SlowConsumerPolicy;
+import com.github.schananas.reactivestockmarket.domain.engine.TimingWheel;
+import com.github.schananas.reactivestockmarket.domain.events.AuctionUncrossRequestedEvent;
 import com.github.schananas.reactivestockmarket.domain.events.CancellationRequestedEvent;
+import com.github.schananas.reactivestockmarket.domain.events.ExpiryRequestedEvent;
+import com.github.schananas.reactivestockmarket.domain.events.MassCancelRequestedEvent;
 import com.github.schananas.reactivestockmarket.domain.events.OrderAcceptedEvent;
 import com.github.schananas.reactivestockmarket.domain.events.OrderRejectedEvent;
+import com.github.schananas.reactivestockmarket.domain.events.QuoteRequestedEvent;
+import com.github.schananas.reactivestockmarket.domain.events.ReplaceRequestedEvent;
+import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+import com.github.schananas.reactivestockmarket.domain.query.TimeInForce;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Flux;
@@ -18,12 +35,22 @@ import reactor.core.publisher.Sinks;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
 
 
 /**
  * Book aggregate to model business domain.
+ * <p>
+ * Good-till-date orders are scheduled into {@link TimingWheel} once they enter matching engine. Wheel is touched only
+ * by command and event handlers, so it is accessed sequentially with all other book state. Expiry is driven by market
+ * clock through {@link ExpireOrdersCommand}.
  *
  * @author Stefan Dragisic
  */
@@ -33,22 +60,41 @@ public class Book implements Aggregate {
 
     private final String aggregateId;
 
+    private final InstrumentSpec spec;
     private final MatchingEngine matchingEngine;
     private static final AtomicLong orderIdGenerator = new AtomicLong();
+    private final AtomicBoolean auctionPending = new AtomicBoolean();
+    private volatile Instant nextAuction;
+    private static final long EXPIRY_RESOLUTION_MILLIS = 10;
+    private final TimingWheel expiries = new TimingWheel(EXPIRY_RESOLUTION_MILLIS, System.currentTimeMillis());
+    private final AtomicBoolean expiryPending = new AtomicBoolean();
+    /**
+     * Epoch millis of the earliest deadline in expiry wheel
+     */
+    private volatile long nextExpiry = Long.MAX_VALUE;
     Sinks.Many<Event> aggregateEventSink = Sinks.many().multicast().onBackpressureBuffer();
     Flux<Event> aggregateEventFlux = aggregateEventSink.asFlux()
                                                              .doOnNext(n -> logger.debug(n.toString()))
                                                              .publish()
                                                              .autoConnect();
 
-    public Book(String aggregateId, MatchingEngine matchingEngine) {
+    public Book(String aggregateId, InstrumentSpec spec, MatchingEngine matchingEngine) {
         this.aggregateId = aggregateId;
+        this.spec = spec;
         this.matchingEngine = matchingEngine;
+        this.nextAuction = Instant.now().plus(spec.auction().interval());
+    }
+
+    public Book(String aggregateId, MatchingEngine matchingEngine) {
+        this(aggregateId, InstrumentSpec.DEFAULT, matchingEngine);
+    }
+
+    public Book(String aggregateId, InstrumentSpec spec) {
+        this(aggregateId, spec, new MatchingEngine(spec));
     }
 
     public Book(String aggregateId) {
-        this.aggregateId = aggregateId;
-        this.matchingEngine = new MatchingEngine();
+        this(aggregateId, InstrumentSpec.DEFAULT);
     }
 
     @Override
@@ -56,6 +102,47 @@ public class Book implements Aggregate {
         return aggregateId;
     }
 
+    /**
+     * Checks if book is in auction mode and auction interval has elapsed. Returns true only once per auction, until
+     * uncross command is handled, so that clock doesn't send duplicate commands while uncross is queued.
+     * Thread-safe, called by market clock.
+     *
+     * @param now - current time
+     * @return true if uncross command should be sent
+     */
+    public boolean claimAuction(Instant now) {
+        return spec.auction().enabled()
+                && !now.isBefore(nextAuction)
+                && auctionPending.compareAndSet(false, true);
+    }
+
+    /**
+     * Releases auction claim whose uncross command has not been admitted to its lane, so that auction is claimed again
+     * on next clock tick. Thread-safe, called by market clock.
+     */
+    public void releaseAuctionClaim() {
+        auctionPending.set(false);
+    }
+
+    /**
+     * Checks if deadline of good-till-date order scheduled for expiry has been reached. Returns true only once until
+     * expire command is handled, so that clock doesn't queue duplicate commands. Thread-safe, called by market clock.
+     *
+     * @param now - current time
+     * @return true if expire command should be sent
+     */
+    public boolean claimExpiry(Instant now) {
+        return now.toEpochMilli() >= nextExpiry && expiryPending.compareAndSet(false, true);
+    }
+
+    /**
+     * Releases expiry claim whose expire command has not been admitted to its lane, so that expiry is claimed again on
+     * next clock tick. Thread-safe, called by market clock.
+     */
+    public void releaseExpiryClaim() {
+        expiryPending.set(false);
+    }
+
     @Override
     public Flux<Event> aggregateEvents() {
         return aggregateEventFlux
@@ -63,59 +150,280 @@ public class Book implements Aggregate {
                 .cast(Event.class);
     }
 
+    /**
+     * Aggregate events for query projection. Projection never misses an event, engine waits for it instead of
+     * disconnecting it when it falls behind.
+     *
+     * @return aggregate events - hot stream
+     */
+    public Flux<Event> projectionEvents() {
+        return aggregateEventFlux
+                .mergeWith(matchingEngine.engineEvents(SlowConsumerPolicy.BLOCK))
+                .cast(Event.class);
+    }
+
     //---------------------------COMMAND HANDLING---------------------------------
 
+    /**
+     * Order, cancel and replace commands are checked and materialized by sender, with order id assigned, so that only
+     * publishing of their outcome is executed sequentially with other commands of the book.
+     *
+     * @param command to check
+     * @return {@link PrevalidatedCommand} or command itself if it is checked sequentially
+     */
+    @Override
+    public Command prevalidate(Command command) {
+        return switch (command) {
+            case MakeOrderCommand cmd -> prevalidateMakeOrder(cmd);
+            case CancelOrderCommand cmd -> prevalidateCancelOrder(cmd);
+            case ReplaceOrderCommand cmd -> prevalidateReplaceOrder(cmd);
+            default -> command;
+        };
+    }
+
     @Override
     public Mono<SourcingEvent> routeCommand(Command command) {
         return switch (command) {
+            case PrevalidatedCommand cmd -> handlePrevalidatedCommand(cmd);
             case MakeOrderCommand cmd -> handleMakeOrderCommand(cmd);
             case CancelOrderCommand cmd -> handleCancelOrderCommand(cmd);
+            case ReplaceOrderCommand cmd -> handleReplaceOrderCommand(cmd);
+            case MassCancelCommand cmd -> handleMassCancelCommand(cmd);
+            case BulkQuoteCommand cmd -> handleBulkQuoteCommand(cmd);
+            case UncrossAuctionCommand cmd -> handleUncrossAuctionCommand(cmd);
+            case ExpireOrdersCommand cmd -> handleExpireOrdersCommand(cmd);
             default -> Mono.error(new RuntimeException(
                     command.getClass().getSimpleName() + ": event not implemented!"));
         };
     }
 
     public Mono<SourcingEvent> handleMakeOrderCommand(MakeOrderCommand cmd) {
+        return Mono.defer(() -> handlePrevalidatedCommand(prevalidateMakeOrder(cmd)));
+    }
+
+    private PrevalidatedCommand prevalidateMakeOrder(MakeOrderCommand cmd) {
+        String rejection = makeOrderRejection(cmd);
+        if (rejection != null) {
+            return PrevalidatedCommand.rejected(cmd,
+                                                new OrderRejectedEvent(cmd.aggregateId(),
+                                                                       UUID.randomUUID(),
+                                                                       cmd.type(),
+                                                                       cmd.amount(),
+                                                                       cmd.price(),
+                                                                       rejection),
+                                                rejection);
+        }
+        return PrevalidatedCommand.accepted(cmd, new OrderAcceptedEvent(cmd.aggregateId(),
+                                                                        UUID.randomUUID(),
+                                                                        orderIdGenerator.incrementAndGet(),
+                                                                        cmd.type(),
+                                                                        cmd.amount(),
+                                                                        cmd.price(),
+                                                                        Instant.now(),
+                                                                        cmd.timeInForce(),
+                                                                        cmd.stopPrice(),
+                                                                        cmd.expireTime()));
+    }
+
+    /**
+     * @return reason order is rejected, or null if order is valid
+     */
+    private String makeOrderRejection(MakeOrderCommand cmd) {
+        if (!hasValidAmountAndPrice(cmd)) {
+            return "Amount/Price needs to be larger then zero!";
+        } else if (spec.auction().enabled() && !cmd.timeInForce().rests()) {
+            return "IOC/FOK not supported in auction mode!";
+        } else if (spec.auction().enabled() && cmd.isStop() && cmd.price().signum() == 0) {
+            //released as market order it could only trade continuously, which auction book never does
+            return "Stop market order not supported in auction mode!";
+        } else if (!hasValidExpireTime(cmd)) {
+            return "GTD order needs expire time in the future!";
+        } else if (!spec.isRepresentable(cmd.price(), cmd.amount())
+                || (cmd.isStop() && !spec.isRepresentable(cmd.stopPrice(), cmd.amount()))) {
+            return "Amount/Price exceeds instrument precision!";
+        }
+        return null;
+    }
+
+    /**
+     * Amount needs to be positive. Price needs to be positive, except for stop order where zero price means that order
+     * is released as market order.
+     */
+    private static boolean hasValidAmountAndPrice(MakeOrderCommand cmd) {
+        if (cmd.amount().signum() <= 0) {
+            return false;
+        }
+        if (cmd.isStop()) {
+            return cmd.stopPrice().signum() > 0 && cmd.price().signum() >= 0;
+        }
+        return cmd.price().signum() > 0;
+    }
+
+    /**
+     * Only GTD order has expire time, and it needs to be in the future.
+     */
+    private static boolean hasValidExpireTime(MakeOrderCommand cmd) {
+        if (cmd.timeInForce() != TimeInForce.GTD) {
+            return cmd.expireTime() == null;
+        }
+        return cmd.expireTime() != null && cmd.expireTime().isAfter(Instant.now());
+    }
+
+    public Mono<SourcingEvent> handleCancelOrderCommand(CancelOrderCommand cmd) {
+        return Mono.defer(() -> handlePrevalidatedCommand(prevalidateCancelOrder(cmd)));
+    }
+
+    private PrevalidatedCommand prevalidateCancelOrder(CancelOrderCommand cmd) {
+        if (!cmd.cancelAll() && cmd.newAmount().compareTo(BigDecimal.ZERO) <= 0) {
+            return PrevalidatedCommand.rejected(cmd, null, "Cancellation: new amount can't be <= 0!");
+        } else if (!spec.isRepresentableAmount(cmd.newAmount())) {
+            return PrevalidatedCommand.rejected(cmd, null, "Cancellation: new amount exceeds instrument precision!");
+        }
+        return PrevalidatedCommand.accepted(cmd, new CancellationRequestedEvent(cmd.aggregateId(),
+                                                                                UUID.randomUUID(),
+                                                                                cmd.orderId(),
+                                                                                cmd.cancelAll(),
+                                                                                cmd.newAmount()));
+    }
+
+    public Mono<SourcingEvent> handleReplaceOrderCommand(ReplaceOrderCommand cmd) {
+        return Mono.defer(() -> handlePrevalidatedCommand(prevalidateReplaceOrder(cmd)));
+    }
+
+    private PrevalidatedCommand prevalidateReplaceOrder(ReplaceOrderCommand cmd) {
+        if (cmd.newPrice().signum() <= 0 || cmd.newAmount().signum() <= 0) {
+            return PrevalidatedCommand.rejected(cmd, null, "Replace: new amount/price needs to be larger then zero!");
+        } else if (!spec.isRepresentable(cmd.newPrice(), cmd.newAmount())) {
+            return PrevalidatedCommand.rejected(cmd, null, "Replace: new amount/price exceeds instrument precision!");
+        }
+        return PrevalidatedCommand.accepted(cmd, new ReplaceRequestedEvent(cmd.aggregateId(),
+                                                                           UUID.randomUUID(),
+                                                                           cmd.orderId(),
+                                                                           cmd.newPrice(),
+                                                                           cmd.newAmount(),
+                                                                           Instant.now()));
+    }
+
+    /**
+     * Publishes outcome of stateless checks in order with other commands of the book
+     */
+    public Mono<SourcingEvent> handlePrevalidatedCommand(PrevalidatedCommand cmd) {
         return Mono.defer(() -> {
+            if (cmd.event() != null) {
+                aggregateEventSink.tryEmitNext(cmd.event());
+            }
+            if (cmd.isRejected()) {
+                return Mono.error(new IllegalStateException(cmd.rejection()));
+            }
+            return Mono.just(cmd.event());
+        });
+    }
 
-            if (cmd.amount().compareTo(BigDecimal.ZERO) <= 0 || cmd.price().compareTo(BigDecimal.ZERO) <= 0) {
-                aggregateEventSink.tryEmitNext(new OrderRejectedEvent(cmd.aggregateId(),
-                                                                      UUID.randomUUID(),
-                                                                      cmd.type(),
-                                                                      cmd.amount(),
-                                                                      cmd.price(),
-                                                                      "Amount/Price needs to be larger then zero!"));
-                return Mono.error(new IllegalStateException("Amount/Price needs to be larger then zero!"));
+    public Mono<SourcingEvent> handleMassCancelCommand(MassCancelCommand cmd) {
+        return Mono.defer(() -> {
+            if ((cmd.minPrice() != null && cmd.minPrice().signum() < 0)
+                    || (cmd.maxPrice() != null && cmd.maxPrice().signum() < 0)
+                    || (cmd.minPrice() != null && cmd.maxPrice() != null
+                    && cmd.minPrice().compareTo(cmd.maxPrice()) > 0)) {
+                return Mono.error(new IllegalStateException("Mass cancel: invalid price range!"));
             } else {
-                OrderAcceptedEvent orderAcceptedEvent = new OrderAcceptedEvent(cmd.aggregateId(),
-                                                                               UUID.randomUUID(),
-                                                                               orderIdGenerator.incrementAndGet(),
-                                                                               cmd.type(),
-                                                                               cmd.amount(),
-                                                                               cmd.price(),
-                                                                               Instant.now());
-                aggregateEventSink.tryEmitNext(orderAcceptedEvent);
-                return Mono.just(orderAcceptedEvent);
+                MassCancelRequestedEvent event = new MassCancelRequestedEvent(cmd.aggregateId(),
+                                                                              UUID.randomUUID(),
+                                                                              cmd.type(),
+                                                                              cmd.minPrice(),
+                                                                              cmd.maxPrice());
+                aggregateEventSink.tryEmitNext(event);
+                return Mono.just(event);
             }
         });
     }
 
-    public Mono<SourcingEvent> handleCancelOrderCommand(CancelOrderCommand cmd) {
+    public Mono<SourcingEvent> handleBulkQuoteCommand(BulkQuoteCommand cmd) {
         return Mono.defer(() -> {
-            if (!cmd.cancelAll() && cmd.newAmount().compareTo(BigDecimal.ZERO) <= 0) {
-                return Mono.error(new IllegalStateException("Cancellation: new amount can't be <= 0!"));
+            String invalid = validateQuote(cmd.levels());
+            if (invalid != null) {
+                return Mono.error(new IllegalStateException("Quote: " + invalid));
             } else {
-                CancellationRequestedEvent event = new CancellationRequestedEvent(cmd.aggregateId(),
-                                                                                  UUID.randomUUID(),
-                                                                                  cmd.orderId(),
-                                                                                  cmd.cancelAll(),
-                                                                                  cmd.newAmount());
+                long[] orderIds = new long[cmd.levels().size()];
+                for (int i = 0; i < orderIds.length; i++) {
+                    orderIds[i] = orderIdGenerator.incrementAndGet();
+                }
+                QuoteRequestedEvent event = new QuoteRequestedEvent(cmd.aggregateId(),
+                                                                    UUID.randomUUID(),
+                                                                    cmd.quoteId(),
+                                                                    List.copyOf(cmd.levels()),
+                                                                    orderIds,
+                                                                    Instant.now());
                 aggregateEventSink.tryEmitNext(event);
                 return Mono.just(event);
             }
         });
     }
 
+    /**
+     * Every level needs positive, representable amount and price, at most one level per side and price, and quote
+     * can't be crossed.
+     *
+     * @return reason why quote is invalid, or null if it is valid
+     */
+    private String validateQuote(List<QuoteLevel> levels) {
+        BigDecimal bestBid = null;
+        BigDecimal bestAsk = null;
+        for (int i = 0; i < levels.size(); i++) {
+            QuoteLevel level = levels.get(i);
+            if (level.type() == null || level.price() == null || level.amount() == null
+                    || level.price().signum() <= 0 || level.amount().signum() <= 0) {
+                return "amount/price needs to be larger then zero!";
+            }
+            if (!spec.isRepresentable(level.price(), level.amount())) {
+                return "amount/price exceeds instrument precision!";
+            }
+            for (int j = 0; j < i; j++) {
+                if (levels.get(j).type() == level.type() && levels.get(j).price().compareTo(level.price()) == 0) {
+                    return "duplicate price level!";
+                }
+            }
+            if (level.type() == OrderType.BUY) {
+                bestBid = bestBid == null ? level.price() : bestBid.max(level.price());
+            } else {
+                bestAsk = bestAsk == null ? level.price() : bestAsk.min(level.price());
+            }
+        }
+        if (bestBid != null && bestAsk != null && bestBid.compareTo(bestAsk) >= 0) {
+            return "bid levels need to be below ask levels!";
+        }
+        return null;
+    }
+
+    public Mono<SourcingEvent> handleUncrossAuctionCommand(UncrossAuctionCommand cmd) {
+        return Mono.defer(() -> {
+            if (!spec.auction().enabled()) {
+                return Mono.error(new IllegalStateException("Book is not in auction mode!"));
+            }
+            Instant now = Instant.now();
+            nextAuction = now.plus(spec.auction().interval());
+            auctionPending.set(false);
+            AuctionUncrossRequestedEvent event = new AuctionUncrossRequestedEvent(cmd.aggregateId(),
+                                                                                  UUID.randomUUID(),
+                                                                                  now);
+            aggregateEventSink.tryEmitNext(event);
+            return Mono.just(event);
+        });
+    }
+
+    public Mono<SourcingEvent> handleExpireOrdersCommand(ExpireOrdersCommand cmd) {
+        return Mono.defer(() -> {
+            expiryPending.set(false);
+            LongStream.Builder expired = LongStream.builder();
+            expiries.advance(cmd.now().toEpochMilli(), expired);
+            nextExpiry = expiries.nextDeadline();
+            ExpiryRequestedEvent event = new ExpiryRequestedEvent(cmd.aggregateId(),
+                                                                  UUID.randomUUID(),
+                                                                  expired.build().toArray());
+            aggregateEventSink.tryEmitNext(event);
+            return Mono.just(event);
+        });
+    }
 
     //---------------------------EVENT HANDLING---------------------------------
 
@@ -124,26 +432,179 @@ public class Book implements Aggregate {
         return switch (event) {
             case OrderAcceptedEvent evt -> handleOrderAcceptedEvent(evt);
             case CancellationRequestedEvent evt -> handleOrderCancellationRequestedEvent(evt);
+            case ReplaceRequestedEvent evt -> handleReplaceRequestedEvent(evt);
+            case MassCancelRequestedEvent evt -> handleMassCancelRequestedEvent(evt);
+            case QuoteRequestedEvent evt -> handleQuoteRequestedEvent(evt);
+            case AuctionUncrossRequestedEvent evt -> handleAuctionUncrossRequestedEvent(evt);
+            case ExpiryRequestedEvent evt -> handleExpiryRequestedEvent(evt);
             default -> Mono.error(new RuntimeException(event.getClass().getSimpleName() + ": event not implemented!"));
         };
     }
 
-    private Mono<Void> handleOrderAcceptedEvent(OrderAcceptedEvent evt) {
-        return Mono.fromRunnable(() -> matchingEngine.placeOrder(evt.orderId(),
-                                                                 evt.aggregateId(),
-                                                                 evt.entryTimestamp(),
-                                                                 evt.type(),
-                                                                 evt.price(),
-                                                                 evt.amount()));
+    /**
+     * Routes batch of events to matching engine in one pass. Consecutive accepted orders are placed as one engine
+     * batch, so engine events of whole run are published together. Consecutive cancellations of the same order are
+     * coalesced into one, see {@link #coalesce(CancellationRequestedEvent, CancellationRequestedEvent)}. Batch is
+     * rejected as a whole if it contains event that is not supported.
+     *
+     * @param events to handle
+     */
+    @Override
+    public Mono<Void> routeEvents(List<SourcingEvent> events) {
+        return Mono.defer(() -> {
+            for (SourcingEvent event : events) {
+                if (!(event instanceof OrderAcceptedEvent)
+                        && !(event instanceof CancellationRequestedEvent)
+                        && !(event instanceof ReplaceRequestedEvent)
+                        && !(event instanceof MassCancelRequestedEvent)
+                        && !(event instanceof QuoteRequestedEvent)
+                        && !(event instanceof AuctionUncrossRequestedEvent)
+                        && !(event instanceof ExpiryRequestedEvent)) {
+                    return Mono.error(new RuntimeException(
+                            event.getClass().getSimpleName() + ": event not implemented!"));
+                }
+            }
+            return Mono.fromRunnable(() -> {
+                List<OrderAcceptedEvent> orders = new ArrayList<>(events.size());
+                Map<Long, CancellationRequestedEvent> cancels = new LinkedHashMap<>();
+                for (SourcingEvent event : events) {
+                    if (!(event instanceof CancellationRequestedEvent) && !cancels.isEmpty()) {
+                        cancels.values().forEach(this::cancel);
+                        cancels.clear();
+                    }
+                    if (event instanceof OrderAcceptedEvent evt) {
+                        scheduleExpiry(evt);
+                        orders.add(evt);
+                    } else {
+                        if (!orders.isEmpty()) {
+                            matchingEngine.placeOrders(orders);
+                            orders = new ArrayList<>();
+                        }
+                        if (event instanceof CancellationRequestedEvent evt) {
+                            cancels.merge(evt.orderId(), evt, Book::coalesce);
+                        } else if (event instanceof ReplaceRequestedEvent evt) {
+                            replace(evt);
+                        } else if (event instanceof MassCancelRequestedEvent evt) {
+                            massCancel(evt);
+                        } else if (event instanceof QuoteRequestedEvent evt) {
+                            quote(evt);
+                        } else if (event instanceof ExpiryRequestedEvent evt) {
+                            expire(evt);
+                        } else {
+                            uncross((AuctionUncrossRequestedEvent) event);
+                        }
+                    }
+                }
+                if (!orders.isEmpty()) {
+                    matchingEngine.placeOrders(orders);
+                }
+                cancels.values().forEach(this::cancel);
+            });
+        });
     }
 
-    private Mono<Void> handleOrderCancellationRequestedEvent(CancellationRequestedEvent evt) {
+    /**
+     * Coalesces two cancellations of the same order with nothing in between that could fill it. Full cancellation
+     * supersedes any partial one, and of two partial cancellations the one to lower amount wins, as reduction to
+     * amount that is not lower than remaining amount has no effect.
+     */
+    private static CancellationRequestedEvent coalesce(CancellationRequestedEvent previous,
+                                                       CancellationRequestedEvent next) {
+        if (previous.cancelAll()) {
+            return previous;
+        }
+        if (next.cancelAll()) {
+            return next;
+        }
+        return next.newAmount().compareTo(previous.newAmount()) < 0 ? next : previous;
+    }
+
+    private Mono<Void> handleOrderAcceptedEvent(OrderAcceptedEvent evt) {
         return Mono.fromRunnable(() -> {
-            if (evt.cancelAll()) {
-                matchingEngine.cancelAll(evt.orderId(), evt.aggregateId());
+            scheduleExpiry(evt);
+            if (evt.stopPrice() != null) {
+                matchingEngine.placeStopOrder(evt.orderId(),
+                                              evt.aggregateId(),
+                                              evt.entryTimestamp(),
+                                              evt.type(),
+                                              evt.stopPrice(),
+                                              evt.stopLimitPrice(),
+                                              evt.amount(),
+                                              evt.timeInForce());
             } else {
-                matchingEngine.cancel(evt.orderId(),evt.aggregateId(), evt.newAmount());
+                matchingEngine.placeOrder(evt.orderId(),
+                                          evt.aggregateId(),
+                                          evt.entryTimestamp(),
+                                          evt.type(),
+                                          evt.price(),
+                                          evt.amount(),
+                                          evt.timeInForce());
             }
         });
     }
+
+    /**
+     * Order that is filled or canceled before it expires stays in the wheel, its expiry is ignored by matching engine.
+     * Clock claims expiry only once the earliest deadline is due, so such orders cost one expire command at most.
+     * Earliest deadline is lowered on schedule and looked up in the wheel only after it has advanced.
+     */
+    private void scheduleExpiry(OrderAcceptedEvent evt) {
+        if (evt.expireTime() != null) {
+            nextExpiry = Math.min(nextExpiry, expiries.schedule(evt.orderId(), evt.expireTime().toEpochMilli()));
+        }
+    }
+
+    private Mono<Void> handleOrderCancellationRequestedEvent(CancellationRequestedEvent evt) {
+        return Mono.fromRunnable(() -> cancel(evt));
+    }
+
+    private Mono<Void> handleReplaceRequestedEvent(ReplaceRequestedEvent evt) {
+        return Mono.fromRunnable(() -> replace(evt));
+    }
+
+    private Mono<Void> handleMassCancelRequestedEvent(MassCancelRequestedEvent evt) {
+        return Mono.fromRunnable(() -> massCancel(evt));
+    }
+
+    private Mono<Void> handleQuoteRequestedEvent(QuoteRequestedEvent evt) {
+        return Mono.fromRunnable(() -> quote(evt));
+    }
+
+    private Mono<Void> handleExpiryRequestedEvent(ExpiryRequestedEvent evt) {
+        return Mono.fromRunnable(() -> expire(evt));
+    }
+
+    private Mono<Void> handleAuctionUncrossRequestedEvent(AuctionUncrossRequestedEvent evt) {
+        return Mono.fromRunnable(() -> uncross(evt));
+    }
+
+    private void uncross(AuctionUncrossRequestedEvent evt) {
+        matchingEngine.uncross(evt.aggregateId(), evt.timestamp());
+    }
+
+    private void replace(ReplaceRequestedEvent evt) {
+        matchingEngine.replace(evt.orderId(), evt.aggregateId(), evt.timestamp(), evt.newPrice(), evt.newAmount());
+    }
+
+    private void expire(ExpiryRequestedEvent evt) {
+        if (evt.orderIds().length > 0) {
+            matchingEngine.expire(evt.aggregateId(), evt.orderIds());
+        }
+    }
+
+    private void quote(QuoteRequestedEvent evt) {
+        matchingEngine.quote(evt.quoteId(), evt.aggregateId(), evt.timestamp(), evt.levels(), evt.orderIds());
+    }
+
+    private void massCancel(MassCancelRequestedEvent evt) {
+        matchingEngine.massCancel(evt.aggregateId(), evt.type(), evt.minPrice(), evt.maxPrice());
+    }
+
+    private void cancel(CancellationRequestedEvent evt) {
+        if (evt.cancelAll()) {
+            matchingEngine.cancelAll(evt.orderId(), evt.aggregateId());
+        } else {
+            matchingEngine.cancel(evt.orderId(), evt.aggregateId(), evt.newAmount());
+        }
+    }
 }
\ No newline at end of file
@@ -2,9 +2,11 @@ package com.github.schananas.reactivestockmarket.domain;
 
 import com.github.schananas.reactivestockmarket.cqrs.AggregateRepository;
 import com.github.schananas.reactivestockmarket.domain.query.BookQueryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 
+import java.util.Collection;
 import java.util.concurrent.ConcurrentHashMap;
 
 import static com.github.schananas.reactivestockmarket.Config.DEFAULT_CONCURRENCY_LEVEL;
@@ -19,15 +21,22 @@ public class BookAggregateRepository implements AggregateRepository<Book> {
 
     private final ConcurrentHashMap<String, Book> aggregates = new ConcurrentHashMap<>(32,0.75f,DEFAULT_CONCURRENCY_LEVEL);
     private final BookQueryRepository bookQueryRepository;
+    private final InstrumentRegistry instrumentRegistry;
 
-    public BookAggregateRepository(BookQueryRepository bookQueryRepository) {
+    @Autowired
+    public BookAggregateRepository(BookQueryRepository bookQueryRepository, InstrumentRegistry instrumentRegistry) {
         this.bookQueryRepository = bookQueryRepository;
+        this.instrumentRegistry = instrumentRegistry;
+    }
+
+    public BookAggregateRepository(BookQueryRepository bookQueryRepository) {
+        this(bookQueryRepository, InstrumentRegistry.defaults());
     }
 
     /**
      * Loads aggregate from repository.
      * For convenience of demo if aggregate is not found it will be automatically created and stored in repository.
-     * Once aggregate is created, query repository subscribes to its events.
+     * Once aggregate is created, query repository subscribes to its events, see {@link Book#projectionEvents()}.
      *
      * @param aggregateId / asset name to load or create from repository
      * @return book aggregate
@@ -35,10 +44,19 @@ public class BookAggregateRepository implements AggregateRepository<Book> {
     @Override
     public Mono<Book> load(String aggregateId) {
         return Mono.fromCallable(() -> aggregates.computeIfAbsent(aggregateId, (k) -> {
-            Book book = new Book(aggregateId);
+            Book book = new Book(aggregateId, instrumentRegistry.resolve(aggregateId));
             //subscribe query projection for book events
-            book.aggregateEvents().concatMap(bookQueryRepository::updateProjection).subscribe();
+            book.projectionEvents().concatMap(bookQueryRepository::updateProjection).subscribe();
             return book;
         }));
     }
+
+    /**
+     * Aggregates that have been loaded so far
+     *
+     * @return live view of loaded book aggregates
+     */
+    public Collection<Book> aggregates() {
+        return aggregates.values();
+    }
 }
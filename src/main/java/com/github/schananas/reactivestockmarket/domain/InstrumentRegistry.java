@@ -0,0 +1,88 @@
+package com.github.schananas.reactivestockmarket.domain;
+
+import com.github.schananas.reactivestockmarket.domain.engine.AllocationPolicy;
+import com.github.schananas.reactivestockmarket.domain.engine.AuctionSpec;
+import com.github.schananas.reactivestockmarket.domain.engine.EventRingSpec;
+import com.github.schananas.reactivestockmarket.domain.engine.ExecutionReports;
+import com.github.schananas.reactivestockmarket.domain.engine.InstrumentSpec;
+import com.github.schananas.reactivestockmarket.domain.engine.OrderStore;
+import com.github.schananas.reactivestockmarket.domain.engine.SlowConsumerPolicy;
+import com.github.schananas.reactivestockmarket.domain.engine.WaitStrategy;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Resolves {@link InstrumentSpec} used when {@link Book} is created.
+ * <p>
+ * Instrument specific values are read from {@code market.instrument.<asset>.*} properties, falling back to {@code
+ * market.instrument.default.*} and then to {@link InstrumentSpec#DEFAULT}.
+ *
+ * @author Stefan Dragisic
+ */
+@Component
+public class InstrumentRegistry {
+
+    private static final String PREFIX = "market.instrument.";
+    private static final String DEFAULT_INSTRUMENT = "default";
+
+    private final Environment environment;
+
+    public InstrumentRegistry(Environment environment) {
+        this.environment = environment;
+    }
+
+    /**
+     * Registry that resolves only from system properties and environment variables
+     *
+     * @return instrument registry
+     */
+    public static InstrumentRegistry defaults() {
+        return new InstrumentRegistry(new StandardEnvironment());
+    }
+
+    /**
+     * Resolves instrument configuration
+     *
+     * @param aggregateId - asset name / aggregate identifier
+     * @return instrument configuration
+     */
+    public InstrumentSpec resolve(String aggregateId) {
+        return new InstrumentSpec(getInt(aggregateId, "price-scale", InstrumentSpec.DEFAULT_PRICE_SCALE),
+                                  getInt(aggregateId, "amount-scale", InstrumentSpec.DEFAULT_AMOUNT_SCALE),
+                                  getInt(aggregateId, "expected-orders", InstrumentSpec.DEFAULT_EXPECTED_ORDERS),
+                                  get(aggregateId, "order-store", OrderStore.Type.class,
+                                      InstrumentSpec.DEFAULT_ORDER_STORE),
+                                  resolveEventRing(aggregateId),
+                                  resolveAuction(aggregateId),
+                                  get(aggregateId, "allocation", AllocationPolicy.class,
+                                      InstrumentSpec.DEFAULT_ALLOCATION),
+                                  get(aggregateId, "execution-reports", ExecutionReports.class,
+                                      InstrumentSpec.DEFAULT_EXECUTION_REPORTS));
+    }
+
+    private EventRingSpec resolveEventRing(String aggregateId) {
+        return new EventRingSpec(getInt(aggregateId, "event-ring-size", EventRingSpec.DEFAULT_SIZE),
+                                 get(aggregateId, "slow-consumer-policy", SlowConsumerPolicy.class,
+                                     EventRingSpec.DEFAULT_SLOW_CONSUMER_POLICY),
+                                 get(aggregateId, "wait-strategy", WaitStrategy.class,
+                                     EventRingSpec.DEFAULT_WAIT_STRATEGY));
+    }
+
+    private AuctionSpec resolveAuction(String aggregateId) {
+        return new AuctionSpec(get(aggregateId, "auction-enabled", Boolean.class, false),
+                               Duration.ofMillis(get(aggregateId, "auction-interval-ms", Long.class,
+                                                     AuctionSpec.DEFAULT_INTERVAL.toMillis())));
+    }
+
+    private int getInt(String aggregateId, String key, int defaultValue) {
+        return get(aggregateId, key, Integer.class, defaultValue);
+    }
+
+    private <T> T get(String aggregateId, String key, Class<T> type, T defaultValue) {
+        T instrumentDefault = environment.getProperty(PREFIX + DEFAULT_INSTRUMENT + "." + key, type, defaultValue);
+        return environment.getProperty(PREFIX + aggregateId + "." + key, type, instrumentDefault);
+    }
+}
@@ -0,0 +1,91 @@
+package com.github.schananas.reactivestockmarket.domain;
+
+import com.github.schananas.reactivestockmarket.domain.bus.CommandBus;
+import com.github.schananas.reactivestockmarket.domain.bus.CommandRejectedException;
+import com.github.schananas.reactivestockmarket.domain.command.ExpireOrdersCommand;
+import com.github.schananas.reactivestockmarket.domain.command.UncrossAuctionCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Drives time based book transitions.
+ * <p>
+ * Clock never touches book state directly. On each tick it only checks which books are due, and sends commands through
+ * {@link CommandBus}, so they are executed sequentially with all other commands of the book. Command rejected because
+ * lane of the book is full releases its claim, so that it is sent again on next tick.
+ *
+ * @author Stefan Dragisic
+ */
+@Component
+public class MarketClock {
+
+    private final Logger logger = LoggerFactory.getLogger(MarketClock.class);
+
+    private final CommandBus commandBus;
+    private final BookAggregateRepository aggregateRepository;
+    private final Duration tick;
+    private Disposable ticker;
+
+    public MarketClock(CommandBus commandBus,
+                       BookAggregateRepository aggregateRepository,
+                       @Value("${market.clock.tick-ms:50}") long tickMillis) {
+        this.commandBus = commandBus;
+        this.aggregateRepository = aggregateRepository;
+        this.tick = Duration.ofMillis(tickMillis);
+    }
+
+    @PostConstruct
+    public void start() {
+        ticker = Flux.interval(tick)
+                     .onBackpressureDrop()
+                     .subscribe(t -> tick(Instant.now()));
+    }
+
+    /**
+     * Sends uncross command to every book in auction mode whose auction interval has elapsed, and expire command to
+     * every book whose earliest good-till-date order deadline has been reached
+     *
+     * @param now - current time
+     */
+    public void tick(Instant now) {
+        for (Book book : aggregateRepository.aggregates()) {
+            if (book.claimAuction(now)) {
+                commandBus.sendCommand(new UncrossAuctionCommand(book.aggregateId(), UUID.randomUUID()))
+                          .subscribe(e -> {
+                          }, e -> {
+                              if (e instanceof CommandRejectedException) {
+                                  book.releaseAuctionClaim();
+                              }
+                              logger.error("Auction of {} failed.", book.aggregateId(), e);
+                          });
+            }
+            if (book.claimExpiry(now)) {
+                commandBus.sendCommand(new ExpireOrdersCommand(book.aggregateId(), UUID.randomUUID(), now))
+                          .subscribe(e -> {
+                          }, e -> {
+                              if (e instanceof CommandRejectedException) {
+                                  book.releaseExpiryClaim();
+                              }
+                              logger.error("Expiry of {} failed.", book.aggregateId(), e);
+                          });
+            }
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (ticker != null) {
+            ticker.dispose();
+        }
+    }
+}
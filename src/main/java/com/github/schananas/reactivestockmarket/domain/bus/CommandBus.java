@@ -1,27 +1,73 @@
 package com.github.schananas.reactivestockmarket.domain.bus;
 
+import com.github.schananas.reactivestockmarket.cqrs.Aggregate;
 import com.github.schananas.reactivestockmarket.cqrs.Command;
+import com.github.schananas.reactivestockmarket.cqrs.PrevalidatedCommand;
 import com.github.schananas.reactivestockmarket.cqrs.SourcingEvent;
 import com.github.schananas.reactivestockmarket.domain.BookAggregateRepository;
+import com.github.schananas.reactivestockmarket.domain.command.MakeOrderCommand;
+import com.github.schananas.reactivestockmarket.domain.events.OrderRejectedEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.Sinks;
 import reactor.core.scheduler.Schedulers;
 
-import java.util.function.Consumer;
 import javax.annotation.PreDestroy;
-
-import static com.github.schananas.reactivestockmarket.Config.DEFAULT_CONCURRENCY_LEVEL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Routes commands to corresponding aggregate.
  * <p>
  * Routes command for district assets/aggregates in parallel, but routes commands withing one aggregate sequentially.
  * <p>
- * Thread synchronization is done by Reactor {@see <a href="https://github.com/reactor/reactor-core/blob/178e0c7cf799122afdd6bf89be32975d2b433609/reactor-core/src/main/java/reactor/core/publisher/SinksSpecs.java#L46">tryAcquire</a>}
+ * Every aggregate is assigned to one of {@link CommandBusSpec#lanes()} shards, initially by hash of its id. Shard
+ * executes its commands sequentially, so number of assets is not limited by stream concurrency and memory per shard
+ * doesn't grow with number of assets. Every {@link CommandBusSpec#rebalanceIntervalMs()} hot aggregates are moved to
+ * dedicated shards and cold ones are packed together, see {@link LaneBalancer}.
+ * <p>
+ * By default shard is {@link CommandShard} that drains its lock-free queue on Reactor scheduler worker, sender only
+ * offers command and schedules drain if shard is idle.
+ * <p>
+ * With {@link CommandBusSpec#dedicatedLanes()} commands are not executed on Reactor schedulers, but on dedicated
+ * {@link CommandLane} thread per shard, so book and matching engine of aggregate are owned by single thread.
+ * <p>
+ * Before command is queued, sender runs its checks that don't depend on aggregate state, see {@link
+ * Aggregate#prevalidate(Command)}, so they run in parallel on sender threads and lane only publishes their outcome.
+ * <p>
+ * Commands of one aggregate that have queued up are executed as batch of at most {@link CommandBusSpec#batchSize()}.
+ * Every command is validated on its own, events of valid commands are then routed to aggregate in one pass, see
+ * {@link Aggregate#routeEvents(List)}, and senders are signaled together.
+ * <p>
+ * Within lane {@link Command#priority()} commands, such as cancellations, are executed ahead of other waiting commands,
+ * see {@link LaneQueue}.
+ * <p>
+ * Every lane admits at most {@link CommandBusSpec#queueDepth()} commands of each class waiting for execution, so
+ * cancellations are admitted even when lane is full of new orders. Command above that
+ * is not buffered, it fails fast with {@link CommandRejectedException}. Queue depth per lane and number of rejected
+ * commands are exposed as metrics.
+ * <p>
+ * Outcome of command whose id has been supplied by client is remembered by {@link Command#commandId()} in bounded
+ * {@link CommandDedupCache}, so that command retried by client within {@link CommandBusSpec#dedupWindowMs()} gets
+ * outcome of the first command instead of being executed again, see {@link #sendRetryableCommand(Command)}. Commands
+ * with server generated ids can't be retried, they are not remembered so that they don't push client ids out of cache.
+ * Command rejected as overloaded is forgotten, so that its retry is executed.
  * <p>
  * Is fire and forget, canceling subscription will not change execution flow, but subscriber has option to "stay" and
  * get signaled once corresponding event has been materialized or if execution has failed.
@@ -29,41 +75,144 @@ import static com.github.schananas.reactivestockmarket.Config.DEFAULT_CONCURRENC
  * @author Stefan Dragisic
  */
 @Component
-public class CommandBus {
+public class CommandBus implements MeterBinder {
 
     private final Logger logger = LoggerFactory.getLogger(CommandBus.class);
 
-    private final Sinks.Many<CommandWrapper> commandExecutor = Sinks.many()
-                                                                    .unicast()
-                                                                    .onBackpressureBuffer();
+    private final BookAggregateRepository aggregateRepository;
 
-    private final Disposable commandExecutorDisposable;
+    private final CommandLane[] lanes;
+    private final CommandShard[] shards;
+    private final int queueDepth;
+    private final AtomicIntegerArray queueDepths;
+    private final AtomicLong rejectedCommands = new AtomicLong();
+    private final LaneBalancer balancer;
+    private final CommandDedupCache<Mono<SourcingEvent>> dedupCache;
+    private final AtomicLong duplicateCommands = new AtomicLong();
+    private final Disposable rebalancing;
 
     /**
-     * Instantiate command bus by subscribing to hot stream on which commands are published
+     * Instantiate command bus with shards running on Reactor schedulers
      *
      * @param aggregateRepository
      */
     public CommandBus(BookAggregateRepository aggregateRepository) {
+        this(aggregateRepository, CommandBusSpec.DEFAULT);
+    }
+
+    @Autowired
+    public CommandBus(BookAggregateRepository aggregateRepository, Environment environment) {
+        this(aggregateRepository, CommandBusSpec.from(environment));
+    }
+
+    /**
+     * Instantiate command bus either with shards running on Reactor schedulers, or by starting dedicated lanes
+     *
+     * @param aggregateRepository
+     * @param spec - command bus configuration
+     */
+    public CommandBus(BookAggregateRepository aggregateRepository, CommandBusSpec spec) {
+        this.aggregateRepository = aggregateRepository;
+        this.queueDepth = spec.queueDepth();
+        this.queueDepths = new AtomicIntegerArray(spec.lanes() * 2);
+        this.balancer = new LaneBalancer(spec.lanes());
+        this.dedupCache = new CommandDedupCache<>(spec.dedupCapacity(), spec.dedupWindowMs());
+        this.rebalancing = spec.rebalanceIntervalMs() > 0 && spec.lanes() > 1
+                ? Schedulers.parallel().schedulePeriodically(balancer::rebalance,
+                                                             spec.rebalanceIntervalMs(),
+                                                             spec.rebalanceIntervalMs(),
+                                                             TimeUnit.MILLISECONDS)
+                : null;
+
+        if (spec.dedicatedLanes()) {
+            lanes = new CommandLane[spec.lanes()];
+            for (int i = 0; i < lanes.length; i++) {
+                lanes[i] = new CommandLane(i, spec.waitStrategy(), spec.batchSize(), batch -> execute(batch).block());
+                lanes[i].start();
+            }
+            shards = null;
+            return;
+        }
+        lanes = null;
+        shards = new CommandShard[spec.lanes()];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new CommandShard(Schedulers.parallel().createWorker(), spec.batchSize(), this::execute);
+        }
+    }
+
+    /**
+     * Splits batch of lane into commands of every aggregate, keeping their order, and executes them aggregate by
+     * aggregate
+     */
+    private Mono<Void> execute(List<CommandWrapper> batch) {
+        Map<String, List<CommandWrapper>> aggregates = new LinkedHashMap<>();
+        for (CommandWrapper cmd : batch) {
+            logger.debug("{} being executed....", cmd.getCommand().getClass().getSimpleName());
+            dequeued(cmd);
+            aggregates.computeIfAbsent(cmd.getCommand().aggregateId(), aggregateId -> new ArrayList<>()).add(cmd);
+        }
+        return Flux.fromIterable(aggregates.values())
+                   .concatMap(this::measured)
+                   .then();
+    }
+
+    /**
+     * Executes commands of aggregate and releases them together with time spent executing them
+     */
+    private Mono<Void> measured(List<CommandWrapper> commands) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return executeOnAggregate(commands).doFinally(signal -> {
+                long busyNanos = (System.nanoTime() - start) / commands.size();
+                commands.forEach(cmd -> balancer.release(cmd.getCommand().aggregateId(), busyNanos));
+            });
+        });
+    }
 
-        commandExecutorDisposable = commandExecutor.asFlux()
-                                                   .doOnNext(n -> logger.debug("{} being executed....",
-                                                                               n.getCommand().getClass()
-                                                                                .getSimpleName()))
-                                                   .groupBy(cw -> cw.getCommand().aggregateId()) //multiplex
-                                                   .flatMap(aggregateCommands -> aggregateCommands //and execute distinct assets in parallel
-                                                           .concatMap(cmd -> aggregateRepository
-                                                                   .load(cmd.getCommand().aggregateId())
-                                                                   .flatMap(aggregate -> aggregate.routeCommand(cmd.getCommand())
-                                                                                                  .flatMap(event -> aggregate.routeEvent(
-                                                                                                                                     event)
-                                                                                                                             .then(cmd.signalMaterialized(
-                                                                                                                                     event)))
-                                                                                                  .doOnError(cmd::signalError)
+    /**
+     * Validates every command of aggregate, applies events of valid commands to aggregate in one pass and then signals
+     * outcome to senders together. Command that fails validation is signaled to its sender only, it doesn't fail other
+     * commands nor terminate command stream.
+     */
+    private Mono<Void> executeOnAggregate(List<CommandWrapper> commands) {
+        return aggregateRepository.load(commands.get(0).getCommand().aggregateId())
+                                  .flatMap(aggregate -> Flux.fromIterable(commands)
+                                                            .concatMap(cmd -> validate(aggregate, cmd))
+                                                            .collectList()
+                                                            .flatMap(materialized -> apply(aggregate, materialized)))
+                                  .doOnError(e -> commands.forEach(cmd -> cmd.signalError(e)))
+                                  .onErrorResume(e -> Mono.empty());
+    }
 
+    /**
+     * Routes command to aggregate, invalid command is signaled to its sender and skipped
+     */
+    private static Mono<Materialized> validate(Aggregate aggregate, CommandWrapper cmd) {
+        return aggregate.routeCommand(cmd.getCommand())
+                        .map(event -> new Materialized(cmd, event))
+                        .doOnError(cmd::signalError)
+                        .onErrorResume(e -> Mono.empty());
+    }
 
-                                                                   )), DEFAULT_CONCURRENCY_LEVEL)
-                                                   .subscribe();
+    /**
+     * Routes events to aggregate, single event on its own and more of them as one batch
+     */
+    private static Mono<Void> apply(Aggregate aggregate, List<Materialized> materialized) {
+        if (materialized.isEmpty()) {
+            return Mono.empty();
+        }
+        Mono<Void> routed = materialized.size() == 1
+                ? aggregate.routeEvent(materialized.get(0).event())
+                : aggregate.routeEvents(materialized.stream().map(Materialized::event).toList());
+        return routed.thenMany(Flux.fromIterable(materialized)
+                                   .concatMap(m -> m.command().signalMaterialized(m.event())))
+                     .then();
+    }
+
+    /**
+     * Command together with event it has been validated into
+     */
+    private record Materialized(CommandWrapper command, SourcingEvent event) {
     }
 
     /**
@@ -73,55 +222,210 @@ public class CommandBus {
      * Is fire and forget - canceling execution does not change execution flow.
      *
      * @param command to send
-     * @return sourcing event once it has been materialized
+     * @return sourcing event once it has been materialized, or {@link CommandRejectedException} if lane is full
      */
     public Mono<SourcingEvent> sendCommand(Command command) {
-        return Mono.defer(() -> {
-            Sinks.One<SourcingEvent> actionResult = Sinks.one();
-            //de-multiplexes multiple subscriptions by publishing commands to a single flow
-            return Mono.<Void>fromRunnable(() -> commandExecutor.emitNext(new CommandWrapper(command,
-                                                                                             actionResult::tryEmitValue,
-                                                                                             actionResult::tryEmitError),
-                                                                          (signalType, emitResult) -> emitResult
-                                                                                  .equals(Sinks.EmitResult.FAIL_NON_SERIALIZED)))
-                       .subscribeOn(Schedulers.parallel())
-                       .then(actionResult.asMono());
-        });
+        return aggregateRepository.load(command.aggregateId())
+                                  .flatMap(aggregate -> send(aggregate, command, false));
     }
 
     /**
-     * Shutdown command bus on bean destruction
+     * Sends a command whose id has been supplied by client, see {@link #sendCommand(Command)}. Command with id that
+     * has already been sent within dedup window is not executed again, it gets outcome of the first command.
+     *
+     * @param command to send
+     * @return sourcing event once it has been materialized, or {@link CommandRejectedException} if lane is full
      */
-    @PreDestroy
-    public void destroy() {
-        commandExecutor.tryEmitComplete();
-        commandExecutorDisposable.dispose();
+    public Mono<SourcingEvent> sendRetryableCommand(Command command) {
+        return aggregateRepository.load(command.aggregateId())
+                                  .flatMap(aggregate -> send(aggregate, command, true));
     }
 
-    private static class CommandWrapper {
+    /**
+     * Reserves id of retryable command, prevalidates command and admits it to its lane, synchronously on sender
+     * thread. Every outcome, including failures before command is queued, is signaled through the same sink, so that
+     * duplicate command gets it as well.
+     */
+    private Mono<SourcingEvent> send(Aggregate aggregate, Command command, boolean retryable) {
+        Sinks.One<SourcingEvent> result = Sinks.unsafe().one();
+        Mono<SourcingEvent> outcome = result.asMono();
+        if (retryable) {
+            Mono<SourcingEvent> previous = dedupCache.putIfAbsent(command.commandId(), outcome);
+            if (previous != null) {
+                duplicateCommands.incrementAndGet();
+                return previous;
+            }
+        }
+        try {
+            if (!submit(aggregate.prevalidate(command), result) && retryable) {
+                //command that hasn't been admitted is executed when retried
+                dedupCache.remove(command.commandId(), outcome);
+            }
+        } catch (RuntimeException e) {
+            result.tryEmitError(e);
+        }
+        return outcome;
+    }
 
-        private final Command command;
-        private final Consumer<SourcingEvent> signalDone;
-        private final Consumer<Throwable> signalError;
+    /**
+     * Admits command to its lane. Command rejected by stateless checks that has no event to publish fails without
+     * being queued.
+     *
+     * @return false if command has been rejected as overloaded
+     */
+    private boolean submit(Command command, Sinks.One<SourcingEvent> result) {
+        if (command instanceof PrevalidatedCommand cmd && cmd.isRejected() && cmd.event() == null) {
+            result.tryEmitError(new IllegalStateException(cmd.rejection()));
+            return true;
+        }
+        int lane = balancer.acquire(command.aggregateId());
+        if (!admit(command, lane)) {
+            balancer.release(command.aggregateId(), 0);
+            result.tryEmitError(new CommandRejectedException(overloaded(command)));
+            return false;
+        }
+        CommandWrapper wrapper = new CommandWrapper(command, lane, result);
+        if (lanes == null) {
+            shards[lane].submit(wrapper);
+        } else if (!lanes[lane].submit(wrapper)) {
+            //lane has been shut down, its admission is given back
+            dequeued(wrapper);
+            balancer.release(command.aggregateId(), 0);
+            result.tryEmitError(new IllegalStateException("Command bus is shut down!"));
+        }
+        return true;
+    }
 
-        public CommandWrapper(Command command,
-                              Consumer<SourcingEvent> action,
-                              Consumer<Throwable> signalError) {
-            this.command = command;
-            this.signalDone = action;
-            this.signalError = signalError;
+    /**
+     * Reserves place in lane queue of command aggregate
+     *
+     * @return false if lane queue is full
+     */
+    private boolean admit(Command command, int lane) {
+        int queue = queue(command, lane);
+        if (queueDepths.incrementAndGet(queue) > queueDepth) {
+            queueDepths.decrementAndGet(queue);
+            rejectedCommands.incrementAndGet();
+            return false;
         }
+        return true;
+    }
 
-        public Command getCommand() {
-            return command;
+    private void dequeued(CommandWrapper command) {
+        queueDepths.decrementAndGet(queue(command.getCommand(), command.getLane()));
+    }
+
+    /**
+     * @return index of queue depth counter of command lane and class
+     */
+    private static int queue(Command command, int lane) {
+        return lane * 2 + (command.priority() ? 1 : 0);
+    }
+
+    private static OrderRejectedEvent overloaded(Command command) {
+        if (command instanceof PrevalidatedCommand cmd) {
+            return overloaded(cmd.command());
+        }
+        if (command instanceof MakeOrderCommand cmd) {
+            return new OrderRejectedEvent(cmd.aggregateId(),
+                                          UUID.randomUUID(),
+                                          cmd.type(),
+                                          cmd.amount(),
+                                          cmd.price(),
+                                          CommandRejectedException.OVERLOADED);
         }
+        return new OrderRejectedEvent(command.aggregateId(),
+                                      UUID.randomUUID(),
+                                      null,
+                                      null,
+                                      null,
+                                      CommandRejectedException.OVERLOADED);
+    }
 
-        public Mono<Void> signalMaterialized(SourcingEvent event) {
-            return Mono.fromRunnable(() -> signalDone.accept(event));
+    /**
+     * @return number of commands waiting for execution in all lanes
+     */
+    public int queueDepth() {
+        int depth = 0;
+        for (int i = 0; i < queueDepths.length(); i++) {
+            depth += queueDepths.get(i);
         }
+        return depth;
+    }
 
-        public void signalError(Throwable t) {
-            signalError.accept(t);
+    /**
+     * @return number of commands rejected because lane queue was full
+     */
+    public long rejectedCommands() {
+        return rejectedCommands.get();
+    }
+
+    /**
+     * @return number of commands recognized as retries of already sent command
+     */
+    public long duplicateCommands() {
+        return duplicateCommands.get();
+    }
+
+    /**
+     * @return number of aggregates moved to other lane by rebalancing
+     */
+    public long laneHandoffs() {
+        return balancer.handoffs();
+    }
+
+    /**
+     * @return number of aggregates that have dedicated lane
+     */
+    public int hotAggregates() {
+        return balancer.hotAggregates();
+    }
+
+    /**
+     * Registers queue depth of every lane, number of rejected and duplicate commands and rebalancing metrics
+     *
+     * @param registry - meter registry
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (int i = 0; i < queueDepths.length(); i++) {
+            int queue = i;
+            Gauge.builder("market.command-bus.queue.depth", queueDepths, depths -> depths.get(queue))
+                 .description("Commands waiting for execution in lane")
+                 .tag("lane", String.valueOf(queue / 2))
+                 .tag("priority", String.valueOf(queue % 2 == 1))
+                 .register(registry);
+        }
+        FunctionCounter.builder("market.command-bus.rejected", rejectedCommands, AtomicLong::get)
+                       .description("Commands rejected because lane queue was full")
+                       .register(registry);
+        FunctionCounter.builder("market.command-bus.duplicates", duplicateCommands, AtomicLong::get)
+                       .description("Retried commands answered with outcome of the first command")
+                       .register(registry);
+        FunctionCounter.builder("market.command-bus.lane.handoffs", balancer, LaneBalancer::handoffs)
+                       .description("Aggregates moved to other lane by rebalancing")
+                       .register(registry);
+        Gauge.builder("market.command-bus.hot-aggregates", balancer, LaneBalancer::hotAggregates)
+             .description("Aggregates that have dedicated lane")
+             .register(registry);
+    }
+
+    /**
+     * Shutdown command bus on bean destruction
+     */
+    @PreDestroy
+    public void destroy() {
+        if (rebalancing != null) {
+            rebalancing.dispose();
+        }
+        if (lanes != null) {
+            for (CommandLane lane : lanes) {
+                lane.shutdown();
+            }
+            return;
+        }
+        for (CommandShard shard : shards) {
+            shard.shutdown();
         }
     }
 }
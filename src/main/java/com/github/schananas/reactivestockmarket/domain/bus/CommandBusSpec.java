@@ -0,0 +1,164 @@
+package com.github.schananas.reactivestockmarket.domain.bus;
+
+import com.github.schananas.reactivestockmarket.domain.engine.WaitStrategy;
+import org.springframework.core.env.Environment;
+
+/**
+ * Configuration of {@link CommandBus}, read from {@code market.command-bus.*} properties.
+ * <p>
+ * Every aggregate is assigned to one of {@code lanes} shards that execute commands sequentially. By default shards run
+ * on Reactor schedulers, with {@code dedicatedLanes} every shard is dedicated thread that waits for commands using
+ * {@code waitStrategy}. Every lane admits at most {@code queueDepth} commands that wait for execution, commands above
+ * that are rejected. Every {@code rebalanceIntervalMs} aggregates are reassigned to lanes by their load, zero keeps
+ * initial assignment. Commands of one aggregate that have queued up are executed as batch of at most {@code batchSize}
+ * commands. Outcome of up to {@code dedupCapacity} commands is remembered for {@code dedupWindowMs} by command id, so
+ * that retried command is not executed again, zero capacity disables deduplication.
+ *
+ * @author Stefan Dragisic
+ */
+public record CommandBusSpec(boolean dedicatedLanes,
+                             int lanes,
+                             WaitStrategy waitStrategy,
+                             int queueDepth,
+                             long rebalanceIntervalMs,
+                             int batchSize,
+                             int dedupCapacity,
+                             long dedupWindowMs) {
+
+    private static final String PREFIX = "market.command-bus.";
+
+    public static final int DEFAULT_LANES = Runtime.getRuntime().availableProcessors();
+    public static final WaitStrategy DEFAULT_WAIT_STRATEGY = WaitStrategy.PARK;
+    public static final int DEFAULT_QUEUE_DEPTH = 8192;
+    public static final long DEFAULT_REBALANCE_INTERVAL_MS = 1000;
+    public static final int DEFAULT_BATCH_SIZE = 64;
+    public static final int DEFAULT_DEDUP_CAPACITY = 65536;
+    public static final long DEFAULT_DEDUP_WINDOW_MS = 60_000;
+
+    public static final CommandBusSpec DEFAULT = new CommandBusSpec(false,
+                                                                    DEFAULT_LANES,
+                                                                    DEFAULT_WAIT_STRATEGY,
+                                                                    DEFAULT_QUEUE_DEPTH,
+                                                                    DEFAULT_REBALANCE_INTERVAL_MS,
+                                                                    DEFAULT_BATCH_SIZE,
+                                                                    DEFAULT_DEDUP_CAPACITY,
+                                                                    DEFAULT_DEDUP_WINDOW_MS);
+
+    public CommandBusSpec {
+        if (lanes <= 0) {
+            throw new IllegalArgumentException("Number of lanes needs to be positive!");
+        }
+        if (waitStrategy == null) {
+            throw new IllegalArgumentException("Wait strategy is required!");
+        }
+        if (queueDepth <= 0) {
+            throw new IllegalArgumentException("Queue depth needs to be positive!");
+        }
+        if (rebalanceIntervalMs < 0) {
+            throw new IllegalArgumentException("Rebalance interval can't be negative!");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size needs to be positive!");
+        }
+        if (dedupCapacity < 0 || dedupWindowMs < 0) {
+            throw new IllegalArgumentException("Dedup capacity and window can't be negative!");
+        }
+    }
+
+    /**
+     * @param lanes - number of shards
+     * @return configuration with shards running on Reactor schedulers
+     */
+    public static CommandBusSpec sharded(int lanes) {
+        return new CommandBusSpec(false,
+                                  lanes,
+                                  DEFAULT_WAIT_STRATEGY,
+                                  DEFAULT_QUEUE_DEPTH,
+                                  DEFAULT_REBALANCE_INTERVAL_MS,
+                                  DEFAULT_BATCH_SIZE,
+                                  DEFAULT_DEDUP_CAPACITY,
+                                  DEFAULT_DEDUP_WINDOW_MS);
+    }
+
+    /**
+     * @param lanes - number of dedicated threads
+     * @param waitStrategy - how idle lane waits for commands
+     * @return configuration with dedicated lanes
+     */
+    public static CommandBusSpec dedicated(int lanes, WaitStrategy waitStrategy) {
+        return new CommandBusSpec(true,
+                                  lanes,
+                                  waitStrategy,
+                                  DEFAULT_QUEUE_DEPTH,
+                                  DEFAULT_REBALANCE_INTERVAL_MS,
+                                  DEFAULT_BATCH_SIZE,
+                                  DEFAULT_DEDUP_CAPACITY,
+                                  DEFAULT_DEDUP_WINDOW_MS);
+    }
+
+    public CommandBusSpec withQueueDepth(int queueDepth) {
+        return new CommandBusSpec(dedicatedLanes,
+                                  lanes,
+                                  waitStrategy,
+                                  queueDepth,
+                                  rebalanceIntervalMs,
+                                  batchSize,
+                                  dedupCapacity,
+                                  dedupWindowMs);
+    }
+
+    public CommandBusSpec withRebalanceIntervalMs(long rebalanceIntervalMs) {
+        return new CommandBusSpec(dedicatedLanes,
+                                  lanes,
+                                  waitStrategy,
+                                  queueDepth,
+                                  rebalanceIntervalMs,
+                                  batchSize,
+                                  dedupCapacity,
+                                  dedupWindowMs);
+    }
+
+    public CommandBusSpec withBatchSize(int batchSize) {
+        return new CommandBusSpec(dedicatedLanes,
+                                  lanes,
+                                  waitStrategy,
+                                  queueDepth,
+                                  rebalanceIntervalMs,
+                                  batchSize,
+                                  dedupCapacity,
+                                  dedupWindowMs);
+    }
+
+    public CommandBusSpec withDedup(int dedupCapacity, long dedupWindowMs) {
+        return new CommandBusSpec(dedicatedLanes,
+                                  lanes,
+                                  waitStrategy,
+                                  queueDepth,
+                                  rebalanceIntervalMs,
+                                  batchSize,
+                                  dedupCapacity,
+                                  dedupWindowMs);
+    }
+
+    /**
+     * Resolves configuration from environment, missing values fall back to {@link #DEFAULT}
+     *
+     * @param environment - Spring environment
+     * @return command bus configuration
+     */
+    public static CommandBusSpec from(Environment environment) {
+        return new CommandBusSpec(environment.getProperty(PREFIX + "dedicated-lanes", Boolean.class, false),
+                                  environment.getProperty(PREFIX + "lanes", Integer.class, DEFAULT_LANES),
+                                  environment.getProperty(PREFIX + "wait-strategy", WaitStrategy.class,
+                                                          DEFAULT_WAIT_STRATEGY),
+                                  environment.getProperty(PREFIX + "queue-depth", Integer.class,
+                                                          DEFAULT_QUEUE_DEPTH),
+                                  environment.getProperty(PREFIX + "rebalance-interval-ms", Long.class,
+                                                          DEFAULT_REBALANCE_INTERVAL_MS),
+                                  environment.getProperty(PREFIX + "batch-size", Integer.class, DEFAULT_BATCH_SIZE),
+                                  environment.getProperty(PREFIX + "dedup-capacity", Integer.class,
+                                                          DEFAULT_DEDUP_CAPACITY),
+                                  environment.getProperty(PREFIX + "dedup-window-ms", Long.class,
+                                                          DEFAULT_DEDUP_WINDOW_MS));
+    }
+}
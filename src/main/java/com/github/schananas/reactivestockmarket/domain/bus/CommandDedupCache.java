@@ -0,0 +1,190 @@
+package com.github.schananas.reactivestockmarket.domain.bus;
+
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded, time-windowed cache of command outcomes keyed by {@link
+ * com.github.schananas.reactivestockmarket.cqrs.Command#commandId()}, used by {@link CommandBus} to recognize
+ * retried commands.
+ * <p>
+ * Cache is split into segments by hash of command id, every segment is guarded by its own lock. Segment keeps entries
+ * in ring of primitive arrays in order of insertion, UUID is stored as two longs. When ring is full, the oldest entry
+ * is overwritten, and entry older than {@code windowMillis} is treated as missing, so size is bounded both by capacity
+ * and by time. Entries are found through open addressing index of ring slots, so lookup doesn't allocate.
+ *
+ * @param <V> - outcome of command
+ * @author Stefan Dragisic
+ */
+class CommandDedupCache<V> {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment<V>[] segments;
+    private final LongSupplier clock;
+
+    /**
+     * @param capacity - max number of remembered commands, zero disables cache
+     * @param windowMillis - how long command is remembered
+     */
+    CommandDedupCache(int capacity, long windowMillis) {
+        this(capacity, windowMillis, System::currentTimeMillis);
+    }
+
+    /**
+     * @param capacity - max number of remembered commands, zero disables cache
+     * @param windowMillis - how long command is remembered
+     * @param clock - current time in epoch millis
+     */
+    @SuppressWarnings("unchecked")
+    CommandDedupCache(int capacity, long windowMillis, LongSupplier clock) {
+        this.clock = clock;
+        if (capacity == 0) {
+            this.segments = null;
+            return;
+        }
+        this.segments = (Segment<V>[]) new Segment[SEGMENTS];
+        int segmentCapacity = Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<>(segmentCapacity, windowMillis);
+        }
+    }
+
+    /**
+     * Remembers outcome of command, unless command is already remembered
+     *
+     * @param commandId - command identifier
+     * @param outcome - outcome to remember
+     * @return outcome of the same command seen within window, or null if command is new
+     */
+    V putIfAbsent(UUID commandId, V outcome) {
+        if (segments == null) {
+            return null;
+        }
+        long msb = commandId.getMostSignificantBits();
+        long lsb = commandId.getLeastSignificantBits();
+        int hash = hash(msb, lsb);
+        return segments[hash >>> 28].putIfAbsent(msb, lsb, hash, outcome, clock.getAsLong());
+    }
+
+    /**
+     * Forgets command if it is still remembered with given outcome, so that its retry is executed
+     *
+     * @param commandId - command identifier
+     * @param outcome - outcome that has been remembered
+     */
+    void remove(UUID commandId, V outcome) {
+        if (segments == null) {
+            return;
+        }
+        long msb = commandId.getMostSignificantBits();
+        long lsb = commandId.getLeastSignificantBits();
+        int hash = hash(msb, lsb);
+        segments[hash >>> 28].remove(msb, lsb, hash, outcome);
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static final class Segment<V> {
+
+        private final long windowMillis;
+        private final long[] msbs;
+        private final long[] lsbs;
+        private final long[] insertedAt;
+        private final Object[] outcomes;
+        /**
+         * Ring slot + 1 of entry, zero for empty index slot
+         */
+        private final int[] index;
+        private final int mask;
+        private int head;
+
+        private Segment(int capacity, long windowMillis) {
+            this.windowMillis = windowMillis;
+            this.msbs = new long[capacity];
+            this.lsbs = new long[capacity];
+            this.insertedAt = new long[capacity];
+            this.outcomes = new Object[capacity];
+            this.index = new int[Integer.highestOneBit(capacity) << 2];
+            this.mask = index.length - 1;
+        }
+
+        @SuppressWarnings("unchecked")
+        private synchronized V putIfAbsent(long msb, long lsb, int hash, V outcome, long now) {
+            int position = find(msb, lsb, hash);
+            if (position >= 0) {
+                int slot = index[position] - 1;
+                if (now - insertedAt[slot] <= windowMillis) {
+                    return (V) outcomes[slot];
+                }
+                delete(position);
+                outcomes[slot] = null;
+            }
+            int slot = head;
+            head = head + 1 == outcomes.length ? 0 : head + 1;
+            if (outcomes[slot] != null) {
+                delete(find(msbs[slot], lsbs[slot], CommandDedupCache.hash(msbs[slot], lsbs[slot])));
+            }
+            msbs[slot] = msb;
+            lsbs[slot] = lsb;
+            insertedAt[slot] = now;
+            outcomes[slot] = outcome;
+            int free = hash & mask;
+            while (index[free] != 0) {
+                free = (free + 1) & mask;
+            }
+            index[free] = slot + 1;
+            return null;
+        }
+
+        private synchronized void remove(long msb, long lsb, int hash, V outcome) {
+            int position = find(msb, lsb, hash);
+            if (position >= 0 && outcomes[index[position] - 1] == outcome) {
+                outcomes[index[position] - 1] = null;
+                delete(position);
+            }
+        }
+
+        /**
+         * @return index position of entry, or -1 if there is none
+         */
+        private int find(long msb, long lsb, int hash) {
+            int position = hash & mask;
+            while (index[position] != 0) {
+                int slot = index[position] - 1;
+                if (msbs[slot] == msb && lsbs[slot] == lsb) {
+                    return position;
+                }
+                position = (position + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * Removes index entry by shifting following entries of its probe sequence back, so that no tombstones are
+         * needed
+         */
+        private void delete(int position) {
+            int hole = position;
+            int next = position;
+            while (true) {
+                next = (next + 1) & mask;
+                if (index[next] == 0) {
+                    index[hole] = 0;
+                    return;
+                }
+                int slot = index[next] - 1;
+                int home = CommandDedupCache.hash(msbs[slot], lsbs[slot]) & mask;
+                //entry whose home is between hole and its position can't be moved before its home
+                boolean stays = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+                if (!stays) {
+                    index[hole] = index[next];
+                    hole = next;
+                }
+            }
+        }
+    }
+}
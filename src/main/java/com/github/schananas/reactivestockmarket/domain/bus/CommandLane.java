@@ -0,0 +1,100 @@
+package com.github.schananas.reactivestockmarket.domain.bus;
+
+import com.github.schananas.reactivestockmarket.domain.engine.WaitStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Dedicated thread that executes commands of aggregates assigned to it in order of arrival, in batches of commands that
+ * have queued up.
+ * <p>
+ * Aggregate is assigned to a single lane, so its command handlers and matching engine only ever run on lane thread
+ * and engine state stays in cache of one core. Priority commands are executed first, see {@link LaneQueue}. When
+ * there are no commands lane waits using {@link WaitStrategy}.
+ *
+ * @author Stefan Dragisic
+ */
+class CommandLane implements Runnable {
+
+    private final Logger logger = LoggerFactory.getLogger(CommandLane.class);
+
+    private final LaneQueue queue = new LaneQueue();
+    private final WaitStrategy waitStrategy;
+    private final Consumer<List<CommandWrapper>> executor;
+    private final int batchSize;
+    //accessed only by lane thread
+    private final List<CommandWrapper> batch;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    CommandLane(int index, WaitStrategy waitStrategy, int batchSize, Consumer<List<CommandWrapper>> executor) {
+        this.waitStrategy = waitStrategy;
+        this.batchSize = batchSize;
+        this.batch = new ArrayList<>(batchSize);
+        this.executor = executor;
+        this.thread = new Thread(this, "command-lane-" + index);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Queues command for execution, thread-safe
+     *
+     * @param command - command to execute
+     * @return false if lane is shut down and command has not been queued
+     */
+    boolean submit(CommandWrapper command) {
+        if (!running) {
+            return false;
+        }
+        queue.offer(command);
+        return true;
+    }
+
+    /**
+     * Stops lane once it finishes current command, commands still in queue are failed
+     */
+    void shutdown() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        CommandWrapper command;
+        while ((command = queue.poll()) != null) {
+            command.signalError(new IllegalStateException("Command bus is shut down!"));
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            CommandWrapper command;
+            while (batch.size() < batchSize && (command = queue.poll()) != null) {
+                batch.add(command);
+            }
+            if (batch.isEmpty()) {
+                waitStrategy.idle();
+                continue;
+            }
+            try {
+                executor.accept(batch);
+            } catch (Throwable t) {
+                logger.error("Batch of {} commands failed on {}.", batch.size(), thread.getName(), t);
+                batch.forEach(failed -> failed.signalError(t));
+            }
+            batch.clear();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.github.schananas.reactivestockmarket.domain.bus;
+
+import com.github.schananas.reactivestockmarket.domain.events.OrderRejectedEvent;
+
+/**
+ * Signals that command has not been accepted by {@link CommandBus} and was never executed, for example because queue
+ * of its lane is full. Carries rejection that can be reported back to sender.
+ *
+ * @author Stefan Dragisic
+ */
+public class CommandRejectedException extends RuntimeException {
+
+    public static final String OVERLOADED = "overloaded";
+
+    private final OrderRejectedEvent rejection;
+
+    public CommandRejectedException(OrderRejectedEvent rejection) {
+        super("Command rejected: " + rejection.cause());
+        this.rejection = rejection;
+    }
+
+    public OrderRejectedEvent rejection() {
+        return rejection;
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.schananas.reactivestockmarket.domain.bus;
+
+import org.reactivestreams.Subscription;
+import reactor.core.CoreSubscriber;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Lane that executes commands of aggregates assigned to it on Reactor scheduler worker, in batches of commands that
+ * have queued up, priority commands first, see {@link LaneQueue}.
+ * <p>
+ * Senders offer commands to lock-free queue and count them in {@code wip}. Only sender that finds shard idle schedules
+ * drain on worker, under load drain loop stays hot and picks up new commands without rescheduling. Drain loop
+ * subscribes to execution of one batch at a time with shard itself, so no subscriber is allocated per batch. If
+ * execution completes asynchronously, drain is suspended and resumed on worker once it completes.
+ *
+ * @author Stefan Dragisic
+ */
+class CommandShard implements Runnable, CoreSubscriber<Void> {
+
+    private static final int IDLE = 0;
+    private static final int EXECUTING = 1;
+    private static final int SUSPENDED = 2;
+
+    private final LaneQueue queue = new LaneQueue();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicInteger phase = new AtomicInteger(IDLE);
+    private final Scheduler.Worker worker;
+    private final Function<List<CommandWrapper>, Mono<Void>> executor;
+    private final int batchSize;
+    //accessed only by drain loop
+    private final List<CommandWrapper> batch;
+
+    /**
+     * @param worker - worker drain loop runs on
+     * @param batchSize - max number of commands executed as one batch
+     * @param executor - executes batch, batch list is reused once execution completes
+     */
+    CommandShard(Scheduler.Worker worker, int batchSize, Function<List<CommandWrapper>, Mono<Void>> executor) {
+        this.worker = worker;
+        this.batchSize = batchSize;
+        this.batch = new ArrayList<>(batchSize);
+        this.executor = executor;
+    }
+
+    /**
+     * Queues command for execution, thread-safe
+     *
+     * @param command - command to execute
+     */
+    void submit(CommandWrapper command) {
+        queue.offer(command);
+        if (wip.getAndIncrement() == 0) {
+            worker.schedule(this);
+        }
+    }
+
+    void shutdown() {
+        worker.dispose();
+    }
+
+    @Override
+    public void run() {
+        if (phase.get() == SUSPENDED) {
+            //resumed after asynchronous execution has completed
+            phase.set(IDLE);
+            int executed = batch.size();
+            batch.clear();
+            if (wip.addAndGet(-executed) == 0) {
+                return;
+            }
+        }
+        int executed;
+        do {
+            //every counted command has been offered before it was counted
+            executed = Math.min(wip.get(), batchSize);
+            for (int i = 0; i < executed; i++) {
+                batch.add(queue.poll());
+            }
+            phase.set(EXECUTING);
+            executor.apply(batch).subscribe(this);
+            if (phase.compareAndSet(EXECUTING, SUSPENDED)) {
+                return;
+            }
+            batch.clear();
+        } while (wip.addAndGet(-executed) != 0);
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(Void unused) {
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        onComplete();
+    }
+
+    @Override
+    public void onComplete() {
+        if (!phase.compareAndSet(EXECUTING, IDLE)) {
+            worker.schedule(this);
+        }
+    }
+}
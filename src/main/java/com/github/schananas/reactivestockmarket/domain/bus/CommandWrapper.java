@@ -0,0 +1,58 @@
+package com.github.schananas.reactivestockmarket.domain.bus;
+
+import com.github.schananas.reactivestockmarket.cqrs.Command;
+import com.github.schananas.reactivestockmarket.cqrs.SourcingEvent;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Command together with sink that signals its outcome to sender
+ *
+ * @author Stefan Dragisic
+ */
+class CommandWrapper {
+
+    private final Command command;
+    private final int lane;
+    private final Sinks.One<SourcingEvent> result;
+
+    CommandWrapper(Command command, int lane) {
+        this(command, lane, Sinks.unsafe().one());
+    }
+
+    /**
+     * @param result - sink outcome of command is signaled to. Outcome is signaled by one thread only, either by sender
+     * before command is queued or by lane once it is executed, so sink doesn't need to be serialized.
+     */
+    CommandWrapper(Command command, int lane, Sinks.One<SourcingEvent> result) {
+        this.command = command;
+        this.lane = lane;
+        this.result = result;
+    }
+
+    public Command getCommand() {
+        return command;
+    }
+
+    /**
+     * @return lane command has been queued to
+     */
+    public int getLane() {
+        return lane;
+    }
+
+    /**
+     * @return sourcing event once command has been executed, or error if execution has failed
+     */
+    public Mono<SourcingEvent> result() {
+        return result.asMono();
+    }
+
+    public Mono<Void> signalMaterialized(SourcingEvent event) {
+        return Mono.fromRunnable(() -> result.tryEmitValue(event));
+    }
+
+    public void signalError(Throwable t) {
+        result.tryEmitError(t);
+    }
+}
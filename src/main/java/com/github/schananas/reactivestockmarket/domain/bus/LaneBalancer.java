@@ -0,0 +1,315 @@
+package com.github.schananas.reactivestockmarket.domain.bus;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Assigns aggregates to lanes of {@link CommandBus} by their load.
+ * <p>
+ * Every aggregate counts commands that arrived and time spent executing them. On {@link #rebalance()} aggregate that
+ * alone takes at least fair share of one lane is hot and gets a dedicated lane, remaining aggregates are packed onto
+ * remaining shared lanes. Aggregate stays on its current lane while that lane has capacity, so cold aggregates are
+ * not moved around without reason. New aggregates are hashed onto shared lanes.
+ * <p>
+ * Aggregate moves to its new lane only at quiescent point, once none of its commands is queued or executing, so
+ * commands of one aggregate never run on two lanes at the same time and keep their order. Lane, pending lane and
+ * number of commands in flight are packed into one atomic word, so acquire, release and handoff are single CAS and
+ * sender never takes a lock.
+ *
+ * @author Stefan Dragisic
+ */
+class LaneBalancer {
+
+    /**
+     * How much shared lane can exceed its fair share of load before aggregates are moved away from it
+     */
+    private static final double SLACK = 0.25;
+    /**
+     * Lane is packed into 16 bits of route state, with all ones reserved for no pending lane
+     */
+    private static final int MAX_LANES = 0xFFFF;
+
+    private final Logger logger = LoggerFactory.getLogger(LaneBalancer.class);
+
+    private final int lanes;
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+    private final AtomicLong handoffs = new AtomicLong();
+    private volatile int[] sharedLanes;
+    private volatile int hotAggregates;
+
+    LaneBalancer(int lanes) {
+        if (lanes > MAX_LANES) {
+            throw new IllegalArgumentException("Command bus supports at most " + MAX_LANES + " lanes!");
+        }
+        this.lanes = lanes;
+        this.sharedLanes = new int[lanes];
+        Arrays.setAll(sharedLanes, lane -> lane);
+    }
+
+    /**
+     * Registers command of aggregate as in flight. Aggregate can't change lane until command is released.
+     *
+     * @param aggregateId - aggregate command is sent to
+     * @return lane to queue command to
+     */
+    int acquire(String aggregateId) {
+        return routes.computeIfAbsent(aggregateId, this::route).acquire();
+    }
+
+    /**
+     * Releases command of aggregate once it has been executed or rejected
+     *
+     * @param aggregateId - aggregate command was sent to
+     * @param busyNanos - time spent executing command
+     */
+    void release(String aggregateId, long busyNanos) {
+        routes.get(aggregateId).release(busyNanos);
+    }
+
+    /**
+     * @return lane aggregate is currently assigned to, or -1 if aggregate hasn't received any command
+     */
+    int lane(String aggregateId) {
+        Route route = routes.get(aggregateId);
+        return route == null ? -1 : route.lane();
+    }
+
+    /**
+     * @return number of aggregates moved to other lane
+     */
+    long handoffs() {
+        return handoffs.get();
+    }
+
+    /**
+     * @return number of aggregates that have dedicated lane
+     */
+    int hotAggregates() {
+        return hotAggregates;
+    }
+
+    /**
+     * Reassigns aggregates to lanes by load measured since last rebalance. Not thread-safe, called periodically from
+     * single thread.
+     */
+    void rebalance() {
+        if (lanes == 1) {
+            return;
+        }
+        List<Sample> samples = new ArrayList<>(routes.size());
+        double total = 0;
+        for (Map.Entry<String, Route> entry : routes.entrySet()) {
+            Sample sample = entry.getValue().sample(entry.getKey());
+            samples.add(sample);
+            total += sample.load;
+        }
+        if (total == 0) {
+            return;
+        }
+        samples.sort(Comparator.comparingDouble((Sample sample) -> sample.load).reversed());
+
+        //hot aggregates keep their lane if it is free, otherwise they take first free lane
+        int hot = 0;
+        while (hot < samples.size() && hot < lanes - 1 && samples.get(hot).load >= total / lanes) {
+            hot++;
+        }
+        boolean[] dedicated = new boolean[lanes];
+        double hotLoad = 0;
+        for (int i = 0; i < hot; i++) {
+            Sample sample = samples.get(i);
+            if (!dedicated[sample.lane]) {
+                dedicated[sample.lane] = true;
+                sample.target = sample.lane;
+            }
+            hotLoad += sample.load;
+        }
+        for (int i = 0, free = 0; i < hot; i++) {
+            Sample sample = samples.get(i);
+            if (sample.target < 0) {
+                while (dedicated[free]) {
+                    free++;
+                }
+                dedicated[free] = true;
+                sample.target = free;
+            }
+            logger.debug("Aggregate {} is hot, {} commands in {} ms, assigned to lane {}.",
+                         sample.aggregateId, sample.arrivals, TimeUnit.NANOSECONDS.toMillis(sample.busyNanos),
+                         sample.target);
+        }
+
+        //cold aggregates, heaviest first, stay on their shared lane while it has capacity or go to least loaded one
+        int[] shared = new int[lanes - hot];
+        for (int lane = 0, i = 0; lane < lanes; lane++) {
+            if (!dedicated[lane]) {
+                shared[i++] = lane;
+            }
+        }
+        double capacity = (total - hotLoad) / shared.length * (1 + SLACK);
+        double[] laneLoads = new double[lanes];
+        for (int i = hot; i < samples.size(); i++) {
+            Sample sample = samples.get(i);
+            int target = sample.lane;
+            if (dedicated[target] || laneLoads[target] + sample.load > capacity) {
+                target = shared[0];
+                for (int lane : shared) {
+                    if (laneLoads[lane] < laneLoads[target]) {
+                        target = lane;
+                    }
+                }
+            }
+            sample.target = target;
+            laneLoads[target] += sample.load;
+        }
+
+        for (Sample sample : samples) {
+            sample.route.reassign(sample.target);
+        }
+        sharedLanes = shared;
+        hotAggregates = hot;
+    }
+
+    private Route route(String aggregateId) {
+        int[] shared = sharedLanes;
+        return new Route(shared[Math.floorMod(aggregateId.hashCode(), shared.length)]);
+    }
+
+    /**
+     * Lane assignment and load of one aggregate
+     */
+    private final class Route {
+
+        private static final long IN_FLIGHT_MASK = 0xFFFF_FFFFL;
+        private static final int LANE_SHIFT = 32;
+        private static final int PENDING_SHIFT = 48;
+        private static final long LANE_MASK = 0xFFFFL;
+        private static final long NO_PENDING_LANE = 0xFFFFL;
+
+        /**
+         * Pending lane (16 bits, all ones if there is none), lane (16 bits) and commands in flight (32 bits)
+         */
+        private final AtomicLong state;
+        private final AtomicLong arrivals = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+        /**
+         * Load smoothed over rebalance intervals, so that one noisy interval doesn't move aggregate back and forth.
+         * Accessed only by rebalancing thread.
+         */
+        private double load;
+
+        private Route(int lane) {
+            this.state = new AtomicLong(state(NO_PENDING_LANE, lane, 0));
+        }
+
+        private int acquire() {
+            arrivals.incrementAndGet();
+            long current;
+            long updated;
+            do {
+                current = state.get();
+                updated = handoff(state(pendingLane(current), lane(current), inFlight(current) + 1));
+            } while (!state.compareAndSet(current, updated));
+            countHandoff(current, updated);
+            return lane(updated);
+        }
+
+        private void release(long busyNanos) {
+            this.busyNanos.addAndGet(busyNanos);
+            long current;
+            long updated;
+            do {
+                current = state.get();
+                updated = handoff(state(pendingLane(current), lane(current), inFlight(current) - 1));
+            } while (!state.compareAndSet(current, updated));
+            countHandoff(current, updated);
+        }
+
+        private int lane() {
+            return lane(state.get());
+        }
+
+        private Sample sample(String aggregateId) {
+            long busy = busyNanos.getAndSet(0);
+            load = load / 2 + busy;
+            long current = state.get();
+            long pending = pendingLane(current);
+            return new Sample(aggregateId, this, (int) (pending != NO_PENDING_LANE ? pending : lane(current)),
+                              arrivals.getAndSet(0), busy, load);
+        }
+
+        private void reassign(int lane) {
+            long current;
+            long updated;
+            do {
+                current = state.get();
+                long pending = lane == lane(current) ? NO_PENDING_LANE : lane;
+                updated = handoff(state(pending, lane(current), inFlight(current)));
+            } while (!state.compareAndSet(current, updated));
+            countHandoff(current, updated);
+        }
+
+        /**
+         * Moves aggregate to pending lane if none of its commands is in flight
+         */
+        private static long handoff(long state) {
+            long pending = pendingLane(state);
+            if (inFlight(state) == 0 && pending != NO_PENDING_LANE) {
+                return state(NO_PENDING_LANE, pending, 0);
+            }
+            return state;
+        }
+
+        private void countHandoff(long previous, long current) {
+            if (lane(previous) != lane(current)) {
+                handoffs.incrementAndGet();
+            }
+        }
+
+        private static long state(long pendingLane, long lane, long inFlight) {
+            return pendingLane << PENDING_SHIFT | lane << LANE_SHIFT | inFlight;
+        }
+
+        private static long pendingLane(long state) {
+            return state >>> PENDING_SHIFT;
+        }
+
+        private static int lane(long state) {
+            return (int) (state >>> LANE_SHIFT & LANE_MASK);
+        }
+
+        private static long inFlight(long state) {
+            return state & IN_FLIGHT_MASK;
+        }
+    }
+
+    /**
+     * Load of aggregate measured by one rebalance
+     */
+    private static final class Sample {
+
+        private final String aggregateId;
+        private final Route route;
+        private final int lane;
+        private final long arrivals;
+        private final long busyNanos;
+        private final double load;
+        private int target = -1;
+
+        private Sample(String aggregateId, Route route, int lane, long arrivals, long busyNanos, double load) {
+            this.aggregateId = aggregateId;
+            this.route = route;
+            this.lane = lane;
+            this.arrivals = arrivals;
+            this.busyNanos = busyNanos;
+            this.load = load;
+        }
+    }
+}
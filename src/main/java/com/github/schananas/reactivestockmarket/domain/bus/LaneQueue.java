@@ -0,0 +1,35 @@
+package com.github.schananas.reactivestockmarket.domain.bus;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Commands waiting for execution in one lane, split by {@link
+ * com.github.schananas.reactivestockmarket.cqrs.Command#priority()}. Priority commands are always taken first,
+ * commands of the same class are taken in order of arrival.
+ * <p>
+ * Thread-safe for any number of producers and single consumer.
+ *
+ * @author Stefan Dragisic
+ */
+class LaneQueue {
+
+    private final Queue<CommandWrapper> priority = new ConcurrentLinkedQueue<>();
+    private final Queue<CommandWrapper> normal = new ConcurrentLinkedQueue<>();
+
+    void offer(CommandWrapper command) {
+        if (command.getCommand().priority()) {
+            priority.offer(command);
+        } else {
+            normal.offer(command);
+        }
+    }
+
+    /**
+     * @return next command to execute, or null if queue is empty
+     */
+    CommandWrapper poll() {
+        CommandWrapper command = priority.poll();
+        return command != null ? command : normal.poll();
+    }
+}
@@ -0,0 +1,38 @@
+package com.github.schananas.reactivestockmarket.domain.command;
+
+import com.github.schananas.reactivestockmarket.cqrs.Command;
+import com.github.schananas.reactivestockmarket.domain.engine.QuoteLevel;
+import org.springframework.lang.NonNull;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Command to atomically replace whole two-sided quote of one market maker. Quote is identified by {@code quoteId},
+ * levels that are not part of new quote are canceled. Empty list of levels pulls the quote.
+ *
+ * @author Stefan Dragisic
+ */
+public record BulkQuoteCommand(String aggregateId, UUID commandId, String quoteId, List<QuoteLevel> levels)
+        implements Command {
+
+    public BulkQuoteCommand(
+            @NonNull String aggregateId,
+            @NonNull UUID commandId,
+            @NonNull String quoteId,
+            @NonNull List<QuoteLevel> levels) {
+        this.aggregateId = aggregateId;
+        this.commandId = commandId;
+        this.quoteId = quoteId;
+        this.levels = levels;
+    }
+
+    /**
+     * Amends resting levels of the quote, so it shares priority class with cancellations and mass cancel never
+     * overtakes quote queued before it
+     */
+    @Override
+    public boolean priority() {
+        return true;
+    }
+}
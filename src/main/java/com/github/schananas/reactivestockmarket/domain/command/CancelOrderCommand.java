@@ -25,4 +25,12 @@ public record CancelOrderCommand(String aggregateId, UUID commandId, long orderI
         this.cancelAll = cancelAll;
         this.newAmount = newAmount;
     }
+
+    /**
+     * Cancels only order that has already been accepted, so it can't overtake placement of the same order
+     */
+    @Override
+    public boolean priority() {
+        return true;
+    }
 }
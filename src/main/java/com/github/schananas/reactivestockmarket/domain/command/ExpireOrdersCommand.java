@@ -0,0 +1,33 @@
+package com.github.schananas.reactivestockmarket.domain.command;
+
+import com.github.schananas.reactivestockmarket.cqrs.Command;
+import org.springframework.lang.NonNull;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Command to cancel good-till-date orders whose expire time has been reached, sent by market clock
+ *
+ * @author Stefan Dragisic
+ */
+public record ExpireOrdersCommand(String aggregateId, UUID commandId, Instant now)
+        implements Command {
+
+    public ExpireOrdersCommand(
+            @NonNull String aggregateId,
+            @NonNull UUID commandId,
+            @NonNull Instant now) {
+        this.aggregateId = aggregateId;
+        this.commandId = commandId;
+        this.now = now;
+    }
+
+    /**
+     * Expires only orders that have already been accepted
+     */
+    @Override
+    public boolean priority() {
+        return true;
+    }
+}
@@ -2,18 +2,26 @@ package com.github.schananas.reactivestockmarket.domain.command;
 
 import com.github.schananas.reactivestockmarket.cqrs.Command;
 import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+import com.github.schananas.reactivestockmarket.domain.query.TimeInForce;
 import org.springframework.lang.NonNull;
 
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.UUID;
 
 /**
  * Command to place new order
+ * <p>
+ * Order with stop price is a stop order that waits until a trade crosses stop price. It is released as limit order at
+ * {@code price}, or as market order if price is zero.
+ * <p>
+ * {@link TimeInForce#GTD} order needs expire time, once it is reached unfilled amount is canceled.
  *
  * @author Stefan Dragisic
  */
 public record MakeOrderCommand(String aggregateId, UUID commandId,
-                               OrderType type, BigDecimal amount, BigDecimal price)
+                               OrderType type, BigDecimal amount, BigDecimal price, TimeInForce timeInForce,
+                               BigDecimal stopPrice, Instant expireTime)
         implements Command {
 
     public MakeOrderCommand(
@@ -21,11 +29,35 @@ public record MakeOrderCommand(String aggregateId, UUID commandId,
             @NonNull UUID commandId,
             @NonNull OrderType type,
             @NonNull BigDecimal amount,
-            @NonNull BigDecimal price) {
+            @NonNull BigDecimal price,
+            @NonNull TimeInForce timeInForce,
+            BigDecimal stopPrice,
+            Instant expireTime) {
         this.aggregateId = aggregateId;
         this.commandId = commandId;
         this.type = type;
         this.amount = amount;
         this.price = price;
+        this.timeInForce = timeInForce;
+        this.stopPrice = stopPrice;
+        this.expireTime = expireTime;
+    }
+
+    public MakeOrderCommand(String aggregateId, UUID commandId, OrderType type, BigDecimal amount, BigDecimal price,
+                            TimeInForce timeInForce, BigDecimal stopPrice) {
+        this(aggregateId, commandId, type, amount, price, timeInForce, stopPrice, null);
+    }
+
+    public MakeOrderCommand(String aggregateId, UUID commandId, OrderType type, BigDecimal amount, BigDecimal price,
+                            TimeInForce timeInForce) {
+        this(aggregateId, commandId, type, amount, price, timeInForce, null);
+    }
+
+    public MakeOrderCommand(String aggregateId, UUID commandId, OrderType type, BigDecimal amount, BigDecimal price) {
+        this(aggregateId, commandId, type, amount, price, TimeInForce.GTC, null);
+    }
+
+    public boolean isStop() {
+        return stopPrice != null;
     }
 }
@@ -0,0 +1,40 @@
+package com.github.schananas.reactivestockmarket.domain.command;
+
+import com.github.schananas.reactivestockmarket.cqrs.Command;
+import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+import org.springframework.lang.NonNull;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * Command to cancel all resting orders on one side of the book, optionally limited to price range. Null bound means
+ * that range is not bounded on that end.
+ *
+ * @author Stefan Dragisic
+ */
+public record MassCancelCommand(String aggregateId, UUID commandId, OrderType type, BigDecimal minPrice,
+                                BigDecimal maxPrice)
+        implements Command {
+
+    public MassCancelCommand(
+            @NonNull String aggregateId,
+            @NonNull UUID commandId,
+            @NonNull OrderType type,
+            BigDecimal minPrice,
+            BigDecimal maxPrice) {
+        this.aggregateId = aggregateId;
+        this.commandId = commandId;
+        this.type = type;
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+    }
+
+    /**
+     * Cancels only orders resting when it is executed, orders still waiting for placement are placed after it
+     */
+    @Override
+    public boolean priority() {
+        return true;
+    }
+}
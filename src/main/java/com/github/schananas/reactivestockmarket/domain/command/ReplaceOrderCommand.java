@@ -0,0 +1,40 @@
+package com.github.schananas.reactivestockmarket.domain.command;
+
+import com.github.schananas.reactivestockmarket.cqrs.Command;
+import org.springframework.lang.NonNull;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * Command to atomically replace price and/or remaining amount of resting order, keeping its order id.
+ * Order keeps its queue priority only if price is unchanged and amount is decreased, GTD order keeps its expire time.
+ *
+ * @author Stefan Dragisic
+ */
+public record ReplaceOrderCommand(String aggregateId, UUID commandId, long orderId, BigDecimal newPrice,
+                                  BigDecimal newAmount)
+        implements Command {
+
+    public ReplaceOrderCommand(
+            @NonNull String aggregateId,
+            @NonNull UUID commandId,
+            @NonNull long orderId,
+            @NonNull BigDecimal newPrice,
+            @NonNull BigDecimal newAmount) {
+        this.aggregateId = aggregateId;
+        this.commandId = commandId;
+        this.orderId = orderId;
+        this.newPrice = newPrice;
+        this.newAmount = newAmount;
+    }
+
+    /**
+     * Replaces only order that has already been accepted. Shares priority class with cancellations, so that cancel of
+     * the same order never overtakes replace queued before it.
+     */
+    @Override
+    public boolean priority() {
+        return true;
+    }
+}
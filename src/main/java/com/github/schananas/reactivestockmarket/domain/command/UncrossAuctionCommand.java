@@ -0,0 +1,22 @@
+package com.github.schananas.reactivestockmarket.domain.command;
+
+import com.github.schananas.reactivestockmarket.cqrs.Command;
+import org.springframework.lang.NonNull;
+
+import java.util.UUID;
+
+/**
+ * Command to uncross book that is in frequent batch auction mode, sent by market clock once auction interval elapses
+ *
+ * @author Stefan Dragisic
+ */
+public record UncrossAuctionCommand(String aggregateId, UUID commandId)
+        implements Command {
+
+    public UncrossAuctionCommand(
+            @NonNull String aggregateId,
+            @NonNull UUID commandId) {
+        this.aggregateId = aggregateId;
+        this.commandId = commandId;
+    }
+}
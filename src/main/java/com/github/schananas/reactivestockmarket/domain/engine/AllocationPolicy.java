@@ -0,0 +1,21 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+/**
+ * Defines how incoming order is allocated between orders resting at the same price level.
+ *
+ * @author Stefan Dragisic
+ */
+public enum AllocationPolicy {
+
+    /**
+     * Price-time priority - orders at a level are filled one by one in order of arrival. Fills are reported as
+     * configured by {@link ExecutionReports}.
+     */
+    FIFO,
+    /**
+     * Price-size priority - level that incoming order can't consume completely is shared between all its orders
+     * proportionally to their remaining amount. All fills of incoming order are reported by single {@link
+     * com.github.schananas.reactivestockmarket.domain.engine.events.OrderExecutedEvent}.
+     */
+    PRO_RATA
+}
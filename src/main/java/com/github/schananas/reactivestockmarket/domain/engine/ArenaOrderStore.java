@@ -0,0 +1,129 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+
+import java.util.Arrays;
+
+/**
+ * Struct-of-arrays {@link OrderStore}.
+ * <p>
+ * Order fields are kept in parallel primitive arrays indexed by slot, so deep books don't cost an object per order and
+ * matching loop walks contiguous memory. Freed slots are chained into free list through {@code next} array and reused
+ * before arena grows. Arena grows (and allocates) only when more orders rest than it was sized for.
+ *
+ * @author Stefan Dragisic
+ */
+public class ArenaOrderStore implements OrderStore {
+
+    private static final OrderType[] TYPES = OrderType.values();
+
+    private long[] ids;
+    private long[] prices;
+    private long[] remainingAmounts;
+    private long[] terms;
+    private byte[] types;
+    private int[] prevs;
+    private int[] nexts;
+
+    private int freeHead = NONE;
+    private int used;
+
+    public ArenaOrderStore(int capacity) {
+        this.ids = new long[capacity];
+        this.prices = new long[capacity];
+        this.remainingAmounts = new long[capacity];
+        this.terms = new long[capacity];
+        this.types = new byte[capacity];
+        this.prevs = new int[capacity];
+        this.nexts = new int[capacity];
+    }
+
+    @Override
+    public int allocate(long id, OrderType type, long price, long amount, long term) {
+        int slot;
+        if (freeHead != NONE) {
+            slot = freeHead;
+            freeHead = nexts[slot];
+        } else {
+            if (used == ids.length) {
+                grow(ids.length << 1);
+            }
+            slot = used++;
+        }
+        ids[slot] = id;
+        types[slot] = (byte) type.ordinal();
+        prices[slot] = price;
+        remainingAmounts[slot] = amount;
+        terms[slot] = term;
+        prevs[slot] = NONE;
+        nexts[slot] = NONE;
+        return slot;
+    }
+
+    @Override
+    public void free(int slot) {
+        prevs[slot] = NONE;
+        nexts[slot] = freeHead;
+        freeHead = slot;
+    }
+
+    @Override
+    public long id(int slot) {
+        return ids[slot];
+    }
+
+    @Override
+    public OrderType type(int slot) {
+        return TYPES[types[slot]];
+    }
+
+    @Override
+    public long price(int slot) {
+        return prices[slot];
+    }
+
+    @Override
+    public long term(int slot) {
+        return terms[slot];
+    }
+
+    @Override
+    public long remainingAmount(int slot) {
+        return remainingAmounts[slot];
+    }
+
+    @Override
+    public void remainingAmount(int slot, long amount) {
+        remainingAmounts[slot] = amount;
+    }
+
+    @Override
+    public int prev(int slot) {
+        return prevs[slot];
+    }
+
+    @Override
+    public void prev(int slot, int prev) {
+        prevs[slot] = prev;
+    }
+
+    @Override
+    public int next(int slot) {
+        return nexts[slot];
+    }
+
+    @Override
+    public void next(int slot, int next) {
+        nexts[slot] = next;
+    }
+
+    private void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+        remainingAmounts = Arrays.copyOf(remainingAmounts, capacity);
+        terms = Arrays.copyOf(terms, capacity);
+        types = Arrays.copyOf(types, capacity);
+        prevs = Arrays.copyOf(prevs, capacity);
+        nexts = Arrays.copyOf(nexts, capacity);
+    }
+}
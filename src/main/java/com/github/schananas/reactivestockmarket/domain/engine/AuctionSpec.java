@@ -0,0 +1,28 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+import java.time.Duration;
+
+/**
+ * Configuration of frequent batch auction mode.
+ * <p>
+ * When enabled, orders are collected into the book without matching, and book is uncrossed at single clearing price
+ * once every {@code interval}.
+ *
+ * @author Stefan Dragisic
+ */
+public record AuctionSpec(boolean enabled, Duration interval) {
+
+    public static final Duration DEFAULT_INTERVAL = Duration.ofSeconds(1);
+
+    public static final AuctionSpec CONTINUOUS = new AuctionSpec(false, DEFAULT_INTERVAL);
+
+    public AuctionSpec {
+        if (interval == null || interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("Auction interval needs to be larger then zero!");
+        }
+    }
+
+    public static AuctionSpec every(Duration interval) {
+        return new AuctionSpec(true, interval);
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computes single clearing price at which crossed book is uncrossed.
+ * <p>
+ * Aggregate demand D(p) is amount bid at p or higher, aggregate supply S(p) is amount offered at p or lower. Only
+ * prices of levels inside crossed range [best ask, best bid] are candidates. Clearing price is the candidate that
+ * maximizes executable volume min(D(p), S(p)), ties are broken by smallest imbalance |D(p) - S(p)| and then by lower
+ * price.
+ * <p>
+ * Both curves are computed in one merge pass over levels inside crossed range, O(L) where L is number of those levels.
+ *
+ * @author Stefan Dragisic
+ */
+public final class AuctionUncross {
+
+    /**
+     * Auction outcome
+     *
+     * @param price - clearing price in ticks
+     * @param volume - amount in lots executed on each side
+     */
+    public record Clearing(long price, long volume) {
+
+    }
+
+    private AuctionUncross() {
+    }
+
+    /**
+     * Computes clearing price
+     *
+     * @param bids - buy side of the book
+     * @param asks - sell side of the book
+     * @return clearing price and volume, or null if book is not crossed
+     */
+    public static Clearing compute(BookSide bids, BookSide asks) {
+        if (bids.isEmpty() || asks.isEmpty() || bids.best().price() < asks.best().price()) {
+            return null;
+        }
+        List<PriceLevel> bidLevels = crossed(bids, asks.best().price());
+        List<PriceLevel> askLevels = crossed(asks, bids.best().price());
+
+        long demand = 0;
+        for (PriceLevel level : bidLevels) {
+            demand += level.totalAmount();
+        }
+        long supply = 0;
+
+        //bid levels are in descending order, walk them from the end to get ascending prices
+        int bid = bidLevels.size() - 1;
+        int ask = 0;
+        long bestPrice = 0;
+        long bestVolume = -1;
+        long bestImbalance = Long.MAX_VALUE;
+        while (bid >= 0 || ask < askLevels.size()) {
+            long price = bid < 0 ? askLevels.get(ask).price()
+                    : ask == askLevels.size() ? bidLevels.get(bid).price()
+                    : Math.min(bidLevels.get(bid).price(), askLevels.get(ask).price());
+
+            while (ask < askLevels.size() && askLevels.get(ask).price() <= price) {
+                supply += askLevels.get(ask++).totalAmount();
+            }
+            long volume = Math.min(demand, supply);
+            long imbalance = Math.abs(demand - supply);
+            if (volume > bestVolume || (volume == bestVolume && imbalance < bestImbalance)) {
+                bestPrice = price;
+                bestVolume = volume;
+                bestImbalance = imbalance;
+            }
+            //bids at this price don't take part at higher prices
+            while (bid >= 0 && bidLevels.get(bid).price() <= price) {
+                demand -= bidLevels.get(bid--).totalAmount();
+            }
+        }
+        return new Clearing(bestPrice, bestVolume);
+    }
+
+    private static List<PriceLevel> crossed(BookSide side, long limitPrice) {
+        List<PriceLevel> crossed = new ArrayList<>();
+        for (PriceLevel level : side.levels()) {
+            if (!side.isAtLeastAsGood(level.price(), limitPrice)) {
+                break;
+            }
+            crossed.add(level);
+        }
+        return crossed;
+    }
+}
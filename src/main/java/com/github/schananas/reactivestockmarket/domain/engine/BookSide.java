@@ -0,0 +1,174 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+
+/**
+ * One side of the order book - price-level ladder.
+ * <p>
+ * Levels are indexed by price for O(1) access to an existing level, and kept in sorted level map that is touched only
+ * when a level is created or emptied. Best level is cached.
+ *
+ * @author Stefan Dragisic
+ */
+public class BookSide {
+
+    private static final int EXPECTED_LEVELS = 64;
+
+    private final OrderType type;
+    private final OrderStore store;
+    private final LongObjectHashMap<PriceLevel> levelIndex = new LongObjectHashMap<>(EXPECTED_LEVELS);
+    private final TreeMap<Long, PriceLevel> levels;
+    private PriceLevel best;
+
+    public BookSide(OrderType type, OrderStore store) {
+        this.type = type;
+        this.store = store;
+        Comparator<Long> priority = type == OrderType.BUY ? Comparator.reverseOrder() : Comparator.naturalOrder();
+        this.levels = new TreeMap<>(priority);
+    }
+
+    public OrderType type() {
+        return type;
+    }
+
+    public boolean isEmpty() {
+        return best == null;
+    }
+
+    /**
+     * @return level with the best price, or null if side is empty
+     */
+    public PriceLevel best() {
+        return best;
+    }
+
+    /**
+     * @param price - price in ticks
+     * @return level at given price, or null if there are no orders at that price
+     */
+    public PriceLevel level(long price) {
+        return levelIndex.get(price);
+    }
+
+    /**
+     * Checks if price is better or equal to other price from the perspective of this side
+     *
+     * @param price - price in ticks
+     * @param other - price in ticks to compare to
+     * @return true if price is better or equal
+     */
+    public boolean isAtLeastAsGood(long price, long other) {
+        return type == OrderType.BUY ? price >= other : price <= other;
+    }
+
+    /**
+     * @return read-only view of levels in priority order, best level first
+     */
+    public Collection<PriceLevel> levels() {
+        return Collections.unmodifiableCollection(levels.values());
+    }
+
+    /**
+     * Sums amount resting at prices at least as good as limit price, in priority order. Stops as soon as needed amount
+     * is reached, so it doesn't walk whole side.
+     *
+     * @param limitPrice - worst acceptable price in ticks
+     * @param needed - amount in lots that needs to be available
+     * @return available amount in lots, at least {@code needed} if there is enough liquidity
+     */
+    public long availableAmount(long limitPrice, long needed) {
+        long available = 0;
+        for (PriceLevel level : levels.values()) {
+            if (available >= needed || !isAtLeastAsGood(level.price(), limitPrice)) {
+                break;
+            }
+            available += level.totalAmount();
+        }
+        return available;
+    }
+
+    /**
+     * Adds order to the end of its price level
+     *
+     * @param slot - slot of order to add
+     * @return level order was added to
+     */
+    public PriceLevel add(int slot) {
+        long price = store.price(slot);
+        PriceLevel level = levelIndex.get(price);
+        if (level == null) {
+            level = new PriceLevel(price, store);
+            levelIndex.put(price, level);
+            levels.put(price, level);
+            if (best == null || !isAtLeastAsGood(best.price(), level.price())) {
+                best = level;
+            }
+        }
+        level.add(slot);
+        return level;
+    }
+
+    /**
+     * @param minPrice - lowest price in ticks, inclusive
+     * @param maxPrice - highest price in ticks, inclusive
+     * @return true if there is at least one level with price in given range
+     */
+    public boolean hasLevels(long minPrice, long maxPrice) {
+        return !range(minPrice, maxPrice).isEmpty();
+    }
+
+    /**
+     * Removes all levels with price in given range, with all their orders, in one pass over sorted level map. Each
+     * removed order is passed to consumer after it has been unlinked from its level, consumer is responsible for
+     * freeing its slot.
+     *
+     * @param minPrice - lowest price in ticks, inclusive
+     * @param maxPrice - highest price in ticks, inclusive
+     * @param removed - consumer of removed order slots
+     */
+    public void removeLevels(long minPrice, long maxPrice, IntConsumer removed) {
+        Iterator<PriceLevel> iterator = range(minPrice, maxPrice).values().iterator();
+        while (iterator.hasNext()) {
+            PriceLevel level = iterator.next();
+            while (!level.isEmpty()) {
+                removed.accept(level.removeFirst());
+            }
+            levelIndex.remove(level.price());
+            iterator.remove();
+        }
+        Map.Entry<Long, PriceLevel> first = levels.firstEntry();
+        best = first == null ? null : first.getValue();
+    }
+
+    private NavigableMap<Long, PriceLevel> range(long minPrice, long maxPrice) {
+        return type == OrderType.BUY
+                ? levels.subMap(maxPrice, true, minPrice, true)
+                : levels.subMap(minPrice, true, maxPrice, true);
+    }
+
+    /**
+     * Removes level once it has no more orders
+     *
+     * @param level - level to remove
+     */
+    public void removeIfEmpty(PriceLevel level) {
+        if (!level.isEmpty()) {
+            return;
+        }
+        levelIndex.remove(level.price());
+        levels.remove(level.price());
+        if (level == best) {
+            Map.Entry<Long, PriceLevel> next = levels.firstEntry();
+            best = next == null ? null : next.getValue();
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+import com.github.schananas.reactivestockmarket.cqrs.UpdateEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Single-producer ring buffer of preallocated, mutable {@link EngineEventSlot}s that {@link MatchingEngine} publishes
+ * its events to.
+ * <p>
+ * Producer claims next sequence, writes event into slot and publishes sequence. Every consumer (projection, event
+ * stream subscribers...) has its own cursor and reads published slots independently. Producer never overwrites slot
+ * that a consumer has not read yet, what happens when it would is defined by {@link SlowConsumerPolicy} of that
+ * consumer, so lossless consumers can be blocking while others are disconnected.
+ * <p>
+ * Producer side doesn't allocate. Consumers are drained on dedicated "engine-events" threads and materialize
+ * immutable events only when subscriber has requested them. Drain is scheduled only when idle consumer is signaled,
+ * under load drain loop stays hot and picks up new sequences without rescheduling.
+ *
+ * @author Stefan Dragisic
+ */
+public class EngineEventRing {
+
+    private static final Scheduler DRAIN_SCHEDULER = Schedulers.newParallel("engine-events",
+                                                                            Schedulers.DEFAULT_POOL_SIZE,
+                                                                            true);
+    private static final RingConsumer[] NO_CONSUMERS = new RingConsumer[0];
+
+    private final Logger logger = LoggerFactory.getLogger(EngineEventRing.class);
+
+    private final InstrumentSpec spec;
+    private final EngineEventSlot[] slots;
+    private final int mask;
+    private final SlowConsumerPolicy defaultPolicy;
+    private final WaitStrategy waitStrategy;
+
+    private final AtomicLong cursor = new AtomicLong(-1);
+    private final AtomicReference<RingConsumer[]> consumers = new AtomicReference<>(NO_CONSUMERS);
+    private final AtomicLong disconnectedConsumers = new AtomicLong();
+    private final AtomicLong producerWaits = new AtomicLong();
+
+    //accessed only by producer
+    private long claimed = -1;
+    private long cachedMinimum = -1;
+
+    public EngineEventRing(InstrumentSpec spec) {
+        EventRingSpec ringSpec = spec.eventRing();
+        this.spec = spec;
+        this.slots = new EngineEventSlot[ringSpec.size()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new EngineEventSlot();
+        }
+        this.mask = ringSpec.size() - 1;
+        this.defaultPolicy = ringSpec.slowConsumerPolicy();
+        this.waitStrategy = ringSpec.waitStrategy();
+    }
+
+    /**
+     * Claims next slot. Slot needs to be published with {@link #publish(EngineEventSlot)} before next claim.
+     *
+     * @return slot to write event into
+     */
+    public EngineEventSlot claim() {
+        long next = claimed + 1;
+        long wrapPoint = next - slots.length;
+        if (wrapPoint > cachedMinimum) {
+            cachedMinimum = awaitCapacity(wrapPoint);
+        }
+        claimed = next;
+        EngineEventSlot slot = slots[(int) next & mask];
+        slot.sequence(next);
+        return slot;
+    }
+
+    /**
+     * Makes slot visible to consumers
+     *
+     * @param slot - claimed slot
+     */
+    public void publish(EngineEventSlot slot) {
+        cursor.lazySet(slot.sequence());
+    }
+
+    /**
+     * Wakes up consumers that are not already draining. Called once per engine operation, after all its events have
+     * been published.
+     */
+    public void signalConsumers() {
+        for (RingConsumer consumer : consumers.get()) {
+            consumer.signal();
+        }
+    }
+
+    /**
+     * Hot stream of events published after subscription, with slow consumer policy configured by {@link
+     * EventRingSpec}. Each subscriber gets its own cursor.
+     *
+     * @return stream of engine events
+     */
+    public Flux<UpdateEvent> events() {
+        return events(defaultPolicy);
+    }
+
+    /**
+     * Hot stream of events published after subscription. Each subscriber gets its own cursor.
+     *
+     * @param policy - what happens when subscriber falls behind by more than ring size
+     * @return stream of engine events
+     */
+    public Flux<UpdateEvent> events(SlowConsumerPolicy policy) {
+        return Flux.push(sink -> {
+            RingConsumer consumer = new RingConsumer(sink, DRAIN_SCHEDULER.createWorker(), policy);
+            consumer.sequence.set(cursor.get());
+            add(consumer);
+            //consumer is now visible to producer, skip what has been published in the meantime
+            consumer.sequence.set(cursor.get());
+            sink.onRequest(n -> consumer.signal());
+            sink.onDispose(() -> {
+                consumer.cancelled = true;
+                remove(consumer);
+                consumer.worker.dispose();
+            });
+        });
+    }
+
+    /**
+     * @return last published sequence
+     */
+    public long cursor() {
+        return cursor.get();
+    }
+
+    public int size() {
+        return slots.length;
+    }
+
+    public int consumerCount() {
+        return consumers.get().length;
+    }
+
+    /**
+     * @return number of consumers disconnected by {@link SlowConsumerPolicy#DISCONNECT}
+     */
+    public long disconnectedConsumers() {
+        return disconnectedConsumers.get();
+    }
+
+    /**
+     * @return number of times producer had to wait for consumers by {@link SlowConsumerPolicy#BLOCK}
+     */
+    public long producerWaits() {
+        return producerWaits.get();
+    }
+
+    private long awaitCapacity(long wrapPoint) {
+        long minimum = minimumSequence();
+        if (minimum >= wrapPoint) {
+            return minimum;
+        }
+        serveLagging(wrapPoint);
+        if (minimumSequence() < wrapPoint) {
+            //only blocking consumers are left behind
+            producerWaits.incrementAndGet();
+            do {
+                waitStrategy.idle();
+                //disconnecting consumer may fall behind while producer waits for blocking one
+                serveLagging(wrapPoint);
+            } while (minimumSequence() < wrapPoint);
+        }
+        return minimumSequence();
+    }
+
+    /**
+     * Disconnects lagging consumers that may be disconnected and wakes up blocking ones, operation may publish more
+     * events than ring holds before {@link #signalConsumers()} is called.
+     */
+    private void serveLagging(long wrapPoint) {
+        for (RingConsumer consumer : consumers.get()) {
+            if (consumer.sequence.get() >= wrapPoint) {
+                continue;
+            }
+            if (consumer.policy == SlowConsumerPolicy.DISCONNECT) {
+                disconnect(consumer);
+            } else {
+                consumer.signal();
+            }
+        }
+    }
+
+    private long minimumSequence() {
+        long minimum = claimed;
+        for (RingConsumer consumer : consumers.get()) {
+            minimum = Math.min(minimum, consumer.sequence.get());
+        }
+        return minimum;
+    }
+
+    private void disconnect(RingConsumer consumer) {
+        //flag is raised before slot is overwritten, consumer checks it after reading a slot
+        consumer.disconnected = true;
+        remove(consumer);
+        disconnectedConsumers.incrementAndGet();
+        logger.warn("Engine event consumer disconnected, fell behind by more than {} events.", slots.length);
+        consumer.signal();
+    }
+
+    private void add(RingConsumer consumer) {
+        RingConsumer[] current;
+        RingConsumer[] updated;
+        do {
+            current = consumers.get();
+            updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = consumer;
+        } while (!consumers.compareAndSet(current, updated));
+    }
+
+    private void remove(RingConsumer consumer) {
+        RingConsumer[] current;
+        RingConsumer[] updated;
+        do {
+            current = consumers.get();
+            updated = Arrays.stream(current).filter(c -> c != consumer).toArray(RingConsumer[]::new);
+            if (updated.length == current.length) {
+                return;
+            }
+        } while (!consumers.compareAndSet(current, updated));
+    }
+
+    private final class RingConsumer implements Runnable {
+
+        private final AtomicLong sequence = new AtomicLong(-1);
+        private final AtomicInteger wip = new AtomicInteger();
+        private final FluxSink<UpdateEvent> sink;
+        private final Scheduler.Worker worker;
+        private final SlowConsumerPolicy policy;
+        private volatile boolean disconnected;
+        private volatile boolean cancelled;
+
+        private RingConsumer(FluxSink<UpdateEvent> sink, Scheduler.Worker worker, SlowConsumerPolicy policy) {
+            this.sink = sink;
+            this.worker = worker;
+            this.policy = policy;
+        }
+
+        private void signal() {
+            if (wip.getAndIncrement() == 0) {
+                worker.schedule(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            while (true) {
+                long requested = sink.requestedFromDownstream();
+                long emitted = 0;
+                long next = sequence.get() + 1;
+                long available = cursor.get();
+                while (emitted != requested && next <= available && !cancelled) {
+                    UpdateEvent event = slots[(int) next & mask].toEvent(spec);
+                    if (disconnected) {
+                        break;
+                    }
+                    sequence.lazySet(next);
+                    sink.next(event);
+                    next++;
+                    emitted++;
+                }
+                if (cancelled) {
+                    return;
+                }
+                if (disconnected) {
+                    sink.error(new SlowConsumerException("Consumer fell behind engine by more than "
+                                                                 + slots.length + " events."));
+                    return;
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+import com.github.schananas.reactivestockmarket.cqrs.UpdateEvent;
+import com.github.schananas.reactivestockmarket.domain.engine.events.AuctionFillEvent;
+import com.github.schananas.reactivestockmarket.domain.engine.events.AuctionUncrossedEvent;
+import com.github.schananas.reactivestockmarket.domain.engine.events.OrderCanceledEvent;
+import com.github.schananas.reactivestockmarket.domain.engine.events.OrderExecutedEvent;
+import com.github.schananas.reactivestockmarket.domain.engine.events.OrderMatchedEvent;
+import com.github.schananas.reactivestockmarket.domain.engine.events.OrderPlacedEvent;
+import com.github.schananas.reactivestockmarket.domain.engine.events.OrderReplacedEvent;
+import com.github.schananas.reactivestockmarket.domain.engine.events.OrdersMassCanceledEvent;
+import com.github.schananas.reactivestockmarket.domain.engine.events.StopOrderPlacedEvent;
+import com.github.schananas.reactivestockmarket.domain.engine.events.StopOrderTriggeredEvent;
+import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Mutable, preallocated slot of {@link EngineEventRing}.
+ * <p>
+ * Engine writes events into slots as primitive ticks/lots. Slot is materialized into immutable event only when
+ * consumer reads it, see {@link #toEvent(InstrumentSpec)}.
+ *
+ * @author Stefan Dragisic
+ */
+public class EngineEventSlot {
+
+    /**
+     * Type of event stored in slot
+     */
+    public enum Kind {
+        PLACED,
+        MATCHED,
+        CANCELED,
+        AUCTION_FILL,
+        AUCTION_UNCROSSED,
+        STOP_PLACED,
+        STOP_TRIGGERED,
+        REPLACED,
+        MASS_CANCELED,
+        EXECUTED
+    }
+
+    private long sequence;
+    private Kind kind;
+    private String aggregateId;
+    private Instant timestamp;
+    private OrderType orderType;
+    /**
+     * Order id, resting order id for {@link Kind#MATCHED} or incoming order id for {@link Kind#EXECUTED}
+     */
+    private long orderId;
+    private long incomingId;
+    /**
+     * Order price, incoming order price for {@link Kind#MATCHED}, clearing price for auction events or trade price for
+     * {@link Kind#STOP_TRIGGERED}
+     */
+    private long price;
+    /**
+     * Resting order price for {@link Kind#MATCHED}, stop price for stop events or previous price for {@link
+     * Kind#REPLACED}
+     */
+    private long restingPrice;
+    /**
+     * Order amount, incoming amount for {@link Kind#MATCHED}, canceled amount for {@link Kind#CANCELED}, filled amount
+     * for {@link Kind#AUCTION_FILL} or volume for {@link Kind#AUCTION_UNCROSSED}
+     */
+    private long amount;
+    private long previousAmount;
+    private long remainingAmount;
+    private boolean priorityKept;
+    /**
+     * Canceled order ids and amounts for {@link Kind#MASS_CANCELED}, or resting order ids, fill prices, filled and
+     * remaining amounts for {@link Kind#EXECUTED}. Arrays are reused and grow only when needed.
+     */
+    private long[] batchIds = new long[0];
+    private long[] batchAmounts = new long[0];
+    private long[] batchPrices = new long[0];
+    private long[] batchRemainingAmounts = new long[0];
+    private int batchSize;
+
+    void placed(long orderId, String aggregateId, Instant timestamp, OrderType orderType, long price, long amount) {
+        this.kind = Kind.PLACED;
+        this.orderId = orderId;
+        this.aggregateId = aggregateId;
+        this.timestamp = timestamp;
+        this.orderType = orderType;
+        this.price = price;
+        this.amount = amount;
+    }
+
+    void matched(long restingId, String aggregateId, Instant entryTimestamp, long incomingId, OrderType orderType,
+                 long incomingPrice, long restingPrice, long incomingAmount, long previousRestingAmount,
+                 long restingRemainingAmount) {
+        this.kind = Kind.MATCHED;
+        this.orderId = restingId;
+        this.aggregateId = aggregateId;
+        this.timestamp = entryTimestamp;
+        this.incomingId = incomingId;
+        this.orderType = orderType;
+        this.price = incomingPrice;
+        this.restingPrice = restingPrice;
+        this.amount = incomingAmount;
+        this.previousAmount = previousRestingAmount;
+        this.remainingAmount = restingRemainingAmount;
+    }
+
+    void canceled(long orderId, String aggregateId, OrderType orderType, long canceledAmount, long remainingAmount) {
+        this.kind = Kind.CANCELED;
+        this.orderId = orderId;
+        this.aggregateId = aggregateId;
+        this.orderType = orderType;
+        this.amount = canceledAmount;
+        this.remainingAmount = remainingAmount;
+    }
+
+    void auctionFill(long orderId, String aggregateId, OrderType orderType, long clearingPrice, long filledAmount,
+                     long remainingAmount) {
+        this.kind = Kind.AUCTION_FILL;
+        this.orderId = orderId;
+        this.aggregateId = aggregateId;
+        this.orderType = orderType;
+        this.price = clearingPrice;
+        this.amount = filledAmount;
+        this.remainingAmount = remainingAmount;
+    }
+
+    void auctionUncrossed(String aggregateId, Instant timestamp, long clearingPrice, long volume) {
+        this.kind = Kind.AUCTION_UNCROSSED;
+        this.aggregateId = aggregateId;
+        this.timestamp = timestamp;
+        this.price = clearingPrice;
+        this.amount = volume;
+    }
+
+    void stopPlaced(long orderId, String aggregateId, Instant timestamp, OrderType orderType, long stopPrice,
+                    long price, long amount) {
+        this.kind = Kind.STOP_PLACED;
+        this.orderId = orderId;
+        this.aggregateId = aggregateId;
+        this.timestamp = timestamp;
+        this.orderType = orderType;
+        this.restingPrice = stopPrice;
+        this.price = price;
+        this.amount = amount;
+    }
+
+    void stopTriggered(long orderId, String aggregateId, OrderType orderType, long stopPrice, long tradePrice) {
+        this.kind = Kind.STOP_TRIGGERED;
+        this.orderId = orderId;
+        this.aggregateId = aggregateId;
+        this.orderType = orderType;
+        this.restingPrice = stopPrice;
+        this.price = tradePrice;
+    }
+
+    void replaced(long orderId, String aggregateId, Instant timestamp, OrderType orderType, long previousPrice,
+                  long price, long previousAmount, long amount, boolean priorityKept) {
+        this.kind = Kind.REPLACED;
+        this.orderId = orderId;
+        this.aggregateId = aggregateId;
+        this.timestamp = timestamp;
+        this.orderType = orderType;
+        this.restingPrice = previousPrice;
+        this.price = price;
+        this.previousAmount = previousAmount;
+        this.amount = amount;
+        this.priorityKept = priorityKept;
+    }
+
+    void massCanceled(String aggregateId, OrderType orderType) {
+        this.kind = Kind.MASS_CANCELED;
+        this.aggregateId = aggregateId;
+        this.orderType = orderType;
+        this.batchSize = 0;
+    }
+
+    void addCanceled(long orderId, long canceledAmount) {
+        ensureBatchCapacity();
+        batchIds[batchSize] = orderId;
+        batchAmounts[batchSize] = canceledAmount;
+        batchSize++;
+    }
+
+    void executed(long incomingId, String aggregateId, Instant entryTimestamp, OrderType orderType, long incomingPrice,
+                  long incomingAmount) {
+        this.kind = Kind.EXECUTED;
+        this.orderId = incomingId;
+        this.aggregateId = aggregateId;
+        this.timestamp = entryTimestamp;
+        this.orderType = orderType;
+        this.price = incomingPrice;
+        this.amount = incomingAmount;
+        this.batchSize = 0;
+    }
+
+    void addFill(long restingId, long price, long filledAmount, long restingRemainingAmount) {
+        ensureBatchCapacity();
+        batchIds[batchSize] = restingId;
+        batchPrices[batchSize] = price;
+        batchAmounts[batchSize] = filledAmount;
+        batchRemainingAmounts[batchSize] = restingRemainingAmount;
+        batchSize++;
+    }
+
+    private void ensureBatchCapacity() {
+        if (batchSize == batchIds.length) {
+            int capacity = Math.max(16, batchSize * 2);
+            batchIds = Arrays.copyOf(batchIds, capacity);
+            batchAmounts = Arrays.copyOf(batchAmounts, capacity);
+            batchPrices = Arrays.copyOf(batchPrices, capacity);
+            batchRemainingAmounts = Arrays.copyOf(batchRemainingAmounts, capacity);
+        }
+    }
+
+    void sequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public long sequence() {
+        return sequence;
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    /**
+     * Materializes slot into immutable event
+     *
+     * @param spec - instrument configuration used to convert ticks/lots
+     * @return event
+     */
+    public UpdateEvent toEvent(InstrumentSpec spec) {
+        return switch (kind) {
+            case PLACED -> new OrderPlacedEvent(orderId,
+                                                aggregateId,
+                                                timestamp,
+                                                orderType,
+                                                spec.price(price),
+                                                spec.amount(amount));
+            case MATCHED -> new OrderMatchedEvent(orderId,
+                                                  aggregateId,
+                                                  timestamp,
+                                                  incomingId,
+                                                  orderType,
+                                                  spec.price(price),
+                                                  spec.price(restingPrice),
+                                                  spec.amount(amount),
+                                                  spec.amount(previousAmount),
+                                                  spec.amount(remainingAmount));
+            case CANCELED -> new OrderCanceledEvent(orderId,
+                                                    aggregateId,
+                                                    orderType,
+                                                    spec.amount(amount),
+                                                    spec.amount(remainingAmount));
+            case AUCTION_FILL -> new AuctionFillEvent(orderId,
+                                                      aggregateId,
+                                                      orderType,
+                                                      spec.price(price),
+                                                      spec.amount(amount),
+                                                      spec.amount(remainingAmount));
+            case AUCTION_UNCROSSED -> new AuctionUncrossedEvent(aggregateId,
+                                                                timestamp,
+                                                                spec.price(price),
+                                                                spec.amount(amount));
+            case STOP_PLACED -> new StopOrderPlacedEvent(orderId,
+                                                         aggregateId,
+                                                         timestamp,
+                                                         orderType,
+                                                         spec.price(restingPrice),
+                                                         price == TriggerBook.MARKET ? null : spec.price(price),
+                                                         spec.amount(amount));
+            case STOP_TRIGGERED -> new StopOrderTriggeredEvent(orderId,
+                                                               aggregateId,
+                                                               orderType,
+                                                               spec.price(restingPrice),
+                                                               spec.price(price));
+            case REPLACED -> new OrderReplacedEvent(orderId,
+                                                    aggregateId,
+                                                    timestamp,
+                                                    orderType,
+                                                    spec.price(restingPrice),
+                                                    spec.price(price),
+                                                    spec.amount(previousAmount),
+                                                    spec.amount(amount),
+                                                    priorityKept);
+            case MASS_CANCELED -> new OrdersMassCanceledEvent(aggregateId, orderType, canceledOrders(spec));
+            case EXECUTED -> new OrderExecutedEvent(orderId,
+                                                    aggregateId,
+                                                    timestamp,
+                                                    orderType,
+                                                    spec.price(price),
+                                                    spec.amount(amount),
+                                                    fills(spec));
+        };
+    }
+
+    private List<OrdersMassCanceledEvent.CanceledOrder> canceledOrders(InstrumentSpec spec) {
+        List<OrdersMassCanceledEvent.CanceledOrder> canceled = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            canceled.add(new OrdersMassCanceledEvent.CanceledOrder(batchIds[i], spec.amount(batchAmounts[i])));
+        }
+        return canceled;
+    }
+
+    private List<OrderExecutedEvent.Fill> fills(InstrumentSpec spec) {
+        List<OrderExecutedEvent.Fill> fills = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            fills.add(new OrderExecutedEvent.Fill(batchIds[i],
+                                                  spec.price(batchPrices[i]),
+                                                  spec.amount(batchAmounts[i]),
+                                                  spec.amount(batchRemainingAmounts[i])));
+        }
+        return fills;
+    }
+}
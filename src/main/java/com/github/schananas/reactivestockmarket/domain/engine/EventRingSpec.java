@@ -0,0 +1,30 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+/**
+ * Configuration of {@link EngineEventRing}.
+ * <p>
+ * {@code size} is number of preallocated slots and needs to be power of two. It bounds how far consumer can fall
+ * behind matching engine before {@code slowConsumerPolicy} kicks in. Policy applies to event stream subscribers, query
+ * projection of the book is always lossless and uses {@link SlowConsumerPolicy#BLOCK}.
+ *
+ * @author Stefan Dragisic
+ */
+public record EventRingSpec(int size, SlowConsumerPolicy slowConsumerPolicy, WaitStrategy waitStrategy) {
+
+    public static final int DEFAULT_SIZE = 1024;
+    public static final SlowConsumerPolicy DEFAULT_SLOW_CONSUMER_POLICY = SlowConsumerPolicy.DISCONNECT;
+    public static final WaitStrategy DEFAULT_WAIT_STRATEGY = WaitStrategy.PARK;
+
+    public static final EventRingSpec DEFAULT = new EventRingSpec(DEFAULT_SIZE,
+                                                                  DEFAULT_SLOW_CONSUMER_POLICY,
+                                                                  DEFAULT_WAIT_STRATEGY);
+
+    public EventRingSpec {
+        if (size <= 0 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Event ring size needs to be power of two!");
+        }
+        if (slowConsumerPolicy == null || waitStrategy == null) {
+            throw new IllegalArgumentException("Slow consumer policy and wait strategy are required!");
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+/**
+ * Defines how fills of incoming order are reported.
+ *
+ * @author Stefan Dragisic
+ */
+public enum ExecutionReports {
+
+    /**
+     * Every fill is reported by its own {@link
+     * com.github.schananas.reactivestockmarket.domain.engine.events.OrderMatchedEvent}
+     */
+    INDIVIDUAL,
+    /**
+     * All fills of incoming order, across all levels it sweeps, are reported by single {@link
+     * com.github.schananas.reactivestockmarket.domain.engine.events.OrderExecutedEvent}
+     */
+    COALESCED
+}
@@ -0,0 +1,95 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+
+import java.util.Arrays;
+
+/**
+ * {@link OrderStore} that keeps each resting order as separate {@link Order} object, referenced from slot table.
+ *
+ * @author Stefan Dragisic
+ */
+public class HeapOrderStore implements OrderStore {
+
+    private Order[] orders;
+    private int[] freeSlots;
+    private int freeCount;
+    private int used;
+
+    public HeapOrderStore(int capacity) {
+        this.orders = new Order[capacity];
+        this.freeSlots = new int[capacity];
+    }
+
+    @Override
+    public int allocate(long id, OrderType type, long price, long amount, long term) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (used == orders.length) {
+                orders = Arrays.copyOf(orders, orders.length << 1);
+                freeSlots = Arrays.copyOf(freeSlots, orders.length);
+            }
+            slot = used++;
+        }
+        orders[slot] = new Order(id, type, price, amount, term);
+        return slot;
+    }
+
+    @Override
+    public void free(int slot) {
+        orders[slot] = null;
+        freeSlots[freeCount++] = slot;
+    }
+
+    @Override
+    public long id(int slot) {
+        return orders[slot].getId();
+    }
+
+    @Override
+    public OrderType type(int slot) {
+        return orders[slot].type();
+    }
+
+    @Override
+    public long price(int slot) {
+        return orders[slot].getPrice();
+    }
+
+    @Override
+    public long term(int slot) {
+        return orders[slot].getTerm();
+    }
+
+    @Override
+    public long remainingAmount(int slot) {
+        return orders[slot].getRemainingAmount();
+    }
+
+    @Override
+    public void remainingAmount(int slot, long amount) {
+        orders[slot].resize(amount);
+    }
+
+    @Override
+    public int prev(int slot) {
+        return orders[slot].prev;
+    }
+
+    @Override
+    public void prev(int slot, int prev) {
+        orders[slot].prev = prev;
+    }
+
+    @Override
+    public int next(int slot) {
+        return orders[slot].next;
+    }
+
+    @Override
+    public void next(int slot, int next) {
+        orders[slot].next = next;
+    }
+}
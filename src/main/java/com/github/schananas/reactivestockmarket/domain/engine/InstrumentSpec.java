@@ -0,0 +1,159 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+import java.math.BigDecimal;
+
+/**
+ * Per-instrument configuration of {@link MatchingEngine}.
+ * <p>
+ * Prices and amounts are matched as scaled {@code long} ticks/lots, {@code priceScale} and {@code amountScale} define
+ * number of decimal places one tick/lot represents. {@link BigDecimal} is used only to convert values at the engine
+ * boundary.
+ * <p>
+ * {@code expectedOrders} sizes engine order index and {@link OrderStore} up front, so that they don't grow (and
+ * allocate) in steady state. {@code orderStore} selects how resting orders are stored. {@code eventRing} configures
+ * buffer engine publishes its events to. {@code auction} switches instrument from continuous matching to frequent
+ * batch auctions. {@code allocation} defines how incoming order is allocated between orders resting at one price.
+ * {@code executionReports} defines whether fills of incoming order are reported one by one or all at once,
+ * {@link AllocationPolicy#PRO_RATA} always reports them at once.
+ *
+ * @author Stefan Dragisic
+ */
+public record InstrumentSpec(int priceScale,
+                             int amountScale,
+                             int expectedOrders,
+                             OrderStore.Type orderStore,
+                             EventRingSpec eventRing,
+                             AuctionSpec auction,
+                             AllocationPolicy allocation,
+                             ExecutionReports executionReports) {
+
+    public static final int DEFAULT_PRICE_SCALE = 8;
+    public static final int DEFAULT_AMOUNT_SCALE = 8;
+    public static final int DEFAULT_EXPECTED_ORDERS = 1024;
+    public static final OrderStore.Type DEFAULT_ORDER_STORE = OrderStore.Type.HEAP;
+    public static final AllocationPolicy DEFAULT_ALLOCATION = AllocationPolicy.FIFO;
+    public static final ExecutionReports DEFAULT_EXECUTION_REPORTS = ExecutionReports.INDIVIDUAL;
+
+    public static final InstrumentSpec DEFAULT = new InstrumentSpec(DEFAULT_PRICE_SCALE, DEFAULT_AMOUNT_SCALE);
+
+    public InstrumentSpec {
+        if (priceScale < 0 || amountScale < 0) {
+            throw new IllegalArgumentException("Price/Amount scale can't be negative!");
+        }
+        if (expectedOrders <= 0) {
+            throw new IllegalArgumentException("Expected number of orders needs to be larger then zero!");
+        }
+        if (orderStore == null) {
+            throw new IllegalArgumentException("Order store type is required!");
+        }
+        if (eventRing == null) {
+            throw new IllegalArgumentException("Event ring configuration is required!");
+        }
+        if (auction == null) {
+            throw new IllegalArgumentException("Auction configuration is required!");
+        }
+        if (allocation == null) {
+            throw new IllegalArgumentException("Allocation policy is required!");
+        }
+        if (executionReports == null) {
+            throw new IllegalArgumentException("Execution reports mode is required!");
+        }
+    }
+
+    public InstrumentSpec(int priceScale, int amountScale) {
+        this(priceScale,
+             amountScale,
+             DEFAULT_EXPECTED_ORDERS,
+             DEFAULT_ORDER_STORE,
+             EventRingSpec.DEFAULT,
+             AuctionSpec.CONTINUOUS,
+             DEFAULT_ALLOCATION,
+             DEFAULT_EXECUTION_REPORTS);
+    }
+
+    public InstrumentSpec withOrderStore(int expectedOrders, OrderStore.Type orderStore) {
+        return new InstrumentSpec(priceScale, amountScale, expectedOrders, orderStore, eventRing, auction,
+                                  allocation, executionReports);
+    }
+
+    public InstrumentSpec withEventRing(EventRingSpec eventRing) {
+        return new InstrumentSpec(priceScale, amountScale, expectedOrders, orderStore, eventRing, auction,
+                                  allocation, executionReports);
+    }
+
+    public InstrumentSpec withAuction(AuctionSpec auction) {
+        return new InstrumentSpec(priceScale, amountScale, expectedOrders, orderStore, eventRing, auction,
+                                  allocation, executionReports);
+    }
+
+    public InstrumentSpec withAllocation(AllocationPolicy allocation) {
+        return new InstrumentSpec(priceScale, amountScale, expectedOrders, orderStore, eventRing, auction,
+                                  allocation, executionReports);
+    }
+
+    public InstrumentSpec withExecutionReports(ExecutionReports executionReports) {
+        return new InstrumentSpec(priceScale, amountScale, expectedOrders, orderStore, eventRing, auction,
+                                  allocation, executionReports);
+    }
+
+    /**
+     * @return true if all fills of incoming order are reported by single event
+     */
+    public boolean coalescesExecutions() {
+        return allocation == AllocationPolicy.PRO_RATA || executionReports == ExecutionReports.COALESCED;
+    }
+
+    /**
+     * Converts price to ticks
+     *
+     * @param price - price to convert
+     * @return price in ticks
+     * @throws ArithmeticException if price has more decimal places than instrument supports or doesn't fit in long
+     */
+    public long toTicks(BigDecimal price) {
+        return price.movePointRight(priceScale).longValueExact();
+    }
+
+    /**
+     * Converts amount to lots
+     *
+     * @param amount - amount to convert
+     * @return amount in lots
+     * @throws ArithmeticException if amount has more decimal places than instrument supports or doesn't fit in long
+     */
+    public long toLots(BigDecimal amount) {
+        return amount.movePointRight(amountScale).longValueExact();
+    }
+
+    public BigDecimal price(long ticks) {
+        return BigDecimal.valueOf(ticks, priceScale);
+    }
+
+    public BigDecimal amount(long lots) {
+        return BigDecimal.valueOf(lots, amountScale);
+    }
+
+    /**
+     * Checks if price and amount can be represented as ticks/lots without loss of precision
+     *
+     * @param price - price to check
+     * @param amount - amount to check
+     * @return true if both values are representable
+     */
+    public boolean isRepresentable(BigDecimal price, BigDecimal amount) {
+        return isRepresentable(price, priceScale) && isRepresentable(amount, amountScale);
+    }
+
+    public boolean isRepresentableAmount(BigDecimal amount) {
+        return isRepresentable(amount, amountScale);
+    }
+
+    private static boolean isRepresentable(BigDecimal value, int scale) {
+        try {
+            value.movePointRight(scale).longValueExact();
+            return true;
+        } catch (ArithmeticException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map with primitive {@code long} keys and {@code int} values, used by {@link MatchingEngine} to
+ * map order ids to {@link OrderStore} slots.
+ * <p>
+ * Same layout as {@link LongObjectHashMap} - linear probing with backward-shift deletion, sized up front and growing
+ * only if that size is exceeded. {@link #MISSING} is reserved to mark empty entries and can't be stored.
+ * <p>
+ * Not thread-safe.
+ *
+ * @author Stefan Dragisic
+ */
+public class LongIntHashMap {
+
+    public static final int MISSING = -1;
+
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    /**
+     * @param expectedSize - number of entries map should hold without growing
+     */
+    public LongIntHashMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != MISSING;
+    }
+
+    /**
+     * @param key - key
+     * @return value associated with key or {@link #MISSING}
+     */
+    public int get(long key) {
+        int index = index(key);
+        int value;
+        while ((value = values[index]) != MISSING) {
+            if (keys[index] == key) {
+                return value;
+            }
+            index = (index + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    /**
+     * Associates value with key
+     *
+     * @param key - key
+     * @param value - value, can't be {@link #MISSING}
+     * @return previous value or {@link #MISSING}
+     */
+    public int put(long key, int value) {
+        if (value == MISSING) {
+            throw new IllegalArgumentException("Value is reserved to mark missing entry!");
+        }
+        int index = index(key);
+        int previous;
+        while ((previous = values[index]) != MISSING) {
+            if (keys[index] == key) {
+                values[index] = value;
+                return previous;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+        if (++size > resizeThreshold) {
+            rehash(keys.length << 1);
+        }
+        return MISSING;
+    }
+
+    /**
+     * Removes value associated with key, shifting following entries of the probe chain back into the freed slot
+     *
+     * @param key - key
+     * @return removed value or {@link #MISSING}
+     */
+    public int remove(long key) {
+        int index = index(key);
+        int value;
+        while ((value = values[index]) != MISSING) {
+            if (keys[index] == key) {
+                values[index] = MISSING;
+                size--;
+                shiftBack(index);
+                return value;
+            }
+            index = (index + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    private void shiftBack(int free) {
+        int index = free;
+        while (true) {
+            index = (index + 1) & mask;
+            if (values[index] == MISSING) {
+                return;
+            }
+            int home = index(keys[index]);
+            //entry can be moved only if free slot lies on its probe path
+            if (((index - home) & mask) >= ((index - free) & mask)) {
+                keys[free] = keys[index];
+                values[free] = values[index];
+                values[index] = MISSING;
+                free = index;
+            }
+        }
+    }
+
+    private int index(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void rehash(int newCapacity) {
+        if (newCapacity > MAX_CAPACITY) {
+            throw new IllegalStateException("Map has reached maximum capacity!");
+        }
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != MISSING) {
+                int index = index(oldKeys[i]);
+                while (values[index] != MISSING) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, MISSING);
+        mask = capacity - 1;
+        resizeThreshold = capacity >> 1;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+        return Math.min(capacity, MAX_CAPACITY);
+    }
+}
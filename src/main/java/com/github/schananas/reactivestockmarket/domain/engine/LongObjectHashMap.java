@@ -0,0 +1,161 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+/**
+ * Open-addressing hash map with primitive {@code long} keys, used by {@link MatchingEngine} to index orders without
+ * boxing keys or allocating entry nodes.
+ * <p>
+ * Uses linear probing and backward-shift deletion, so removal leaves no tombstones and lookups never degrade with
+ * churn. Table is sized up front from expected number of entries and grows only if that size is exceeded - in steady
+ * state neither put nor remove allocates.
+ * <p>
+ * Not thread-safe, {@code null} values are not permitted.
+ *
+ * @author Stefan Dragisic
+ */
+public class LongObjectHashMap<V> {
+
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    /**
+     * @param expectedSize - number of entries map should hold without growing
+     */
+    public LongObjectHashMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int index = index(key);
+        Object value;
+        while ((value = values[index]) != null) {
+            if (keys[index] == key) {
+                return (V) value;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Associates value with key
+     *
+     * @param key - key
+     * @param value - non-null value
+     * @return previous value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not permitted!");
+        }
+        int index = index(key);
+        Object previous;
+        while ((previous = values[index]) != null) {
+            if (keys[index] == key) {
+                values[index] = value;
+                return (V) previous;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+        if (++size > resizeThreshold) {
+            rehash(keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Removes value associated with key, shifting following entries of the probe chain back into the freed slot
+     *
+     * @param key - key
+     * @return removed value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int index = index(key);
+        Object value;
+        while ((value = values[index]) != null) {
+            if (keys[index] == key) {
+                values[index] = null;
+                size--;
+                shiftBack(index);
+                return (V) value;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    private void shiftBack(int free) {
+        int index = free;
+        while (true) {
+            index = (index + 1) & mask;
+            if (values[index] == null) {
+                return;
+            }
+            int home = index(keys[index]);
+            //entry can be moved only if free slot lies on its probe path
+            if (((index - home) & mask) >= ((index - free) & mask)) {
+                keys[free] = keys[index];
+                values[free] = values[index];
+                values[index] = null;
+                free = index;
+            }
+        }
+    }
+
+    private int index(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void rehash(int newCapacity) {
+        if (newCapacity > MAX_CAPACITY) {
+            throw new IllegalStateException("Map has reached maximum capacity!");
+        }
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int index = index(oldKeys[i]);
+                while (values[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeThreshold = capacity >> 1;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+        return Math.min(capacity, MAX_CAPACITY);
+    }
+}
@@ -1,82 +1,164 @@
 package com.github.schananas.reactivestockmarket.domain.engine;
 
-import com.github.schananas.reactivestockmarket.domain.engine.events.OrderCanceledEvent;
-import com.github.schananas.reactivestockmarket.domain.engine.events.OrderMatchedEvent;
-import com.github.schananas.reactivestockmarket.domain.engine.events.OrderPlacedEvent;
 import com.github.schananas.reactivestockmarket.cqrs.UpdateEvent;
 import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+import com.github.schananas.reactivestockmarket.domain.query.TimeInForce;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Sinks;
 
 import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Single threaded matching engine - any thread synchronization should be done externally.
  * <p>
- * Uses Max-Heap and Min-Heap {@link TreeSet}
+ * Uses price-level ladder {@link BookSide} for bids and asks - one FIFO {@link PriceLevel} per price, with cached
+ * best level. Sorted level map is touched only when level is created or emptied.
+ * <p>
+ * Prices and amounts are matched as scaled {@code long} ticks/lots configured by {@link InstrumentSpec}, {@link
+ * BigDecimal} values are converted only when order enters engine and when events are published.
  * <p>
  * Time complexity for critical operations are as.
- * - Add – O(log N)
- * - Cancel – O(1)
+ * - Add at existing level – O(1)
+ * - Add at new level – O(log L), L being number of price levels
+ * - Cancel – O(1), order is unlinked from its level by intrusive links
+ * - Mass cancel – O(log L + N), N being number of canceled orders
+ * - Best price – O(1)
+ * <p>
+ * Immediate-or-cancel and fill-or-kill orders never rest in the book, unfilled amount is reported by {@link
+ * com.github.schananas.reactivestockmarket.domain.engine.events.OrderCanceledEvent}. Fill-or-kill checks available
+ * liquidity before any resting order is touched.
+ * <p>
+ * Stop orders wait in {@link TriggerBook} until a trade crosses their stop price, and are then released into engine in
+ * the same operation as the trade that triggered them.
+ * <p>
+ * Orders resting at the same price are filled as defined by {@link InstrumentSpec#allocation()}. With {@link
+ * AllocationPolicy#PRO_RATA} level that incoming order can't consume completely is split between all its orders in
+ * one pass. Fills of incoming order are written into single slot when {@link InstrumentSpec#coalescesExecutions()}.
+ * <p>
+ * Resting order can be replaced atomically by {@link #replace(long, String, Instant, long, long)}. It keeps its queue
+ * priority only if price is unchanged and amount is decreased, otherwise it is re-entered as new resting order under
+ * the same id. Expiry is tracked by order id, so replaced GTD order still expires at its original expire time.
  * <p>
- * Asynchronous - no immediate return values, all events are publishes to local event bus {@link
- * MatchingEngine#engineEventSink}
+ * Market maker can replace its whole quote at once by {@link #quote(String, String, Instant, List, long[])}, quote
+ * is applied as diff against its resting levels.
+ * <p>
+ * In frequent batch auction mode ({@link InstrumentSpec#auction()}) orders are only collected into the book, and
+ * matched all at once by {@link #uncross(String, Instant)}.
+ * <p>
+ * Resting orders are kept in {@link OrderStore} and addressed by slot, order ids are mapped to slots by primitive
+ * {@link LongIntHashMap} sized from {@link InstrumentSpec#expectedOrders()}, so placing, canceling and filling orders
+ * doesn't box order ids.
+ * <p>
+ * Asynchronous - no immediate return values, all events are written into preallocated slots of {@link EngineEventRing}
+ * and consumers are signaled once per operation, see {@link MatchingEngine#engineEvents()}
  *
  * @author Stefan Dragisic
  */
 public class MatchingEngine {
 
+    private static final long NO_TRADE = -1;
+    /**
+     * Limit prices stop market orders are matched at once released, never reported in events
+     */
+    private static final long MARKET_BUY = Long.MAX_VALUE;
+    private static final long MARKET_SELL = 0;
+    private static final long NO_ORDER = -1;
+    private static final long[] NO_ORDERS = new long[0];
+
     private final Logger logger = LoggerFactory.getLogger(MatchingEngine.class);
-    private final TreeSet<Order> bids;
-    private final TreeSet<Order> asks;
-    private final Map<Long, Order> orders;
+    private final InstrumentSpec spec;
+    private final BookSide bids;
+    private final BookSide asks;
+    private final OrderStore store;
+    private final LongIntHashMap orders;
     private final AtomicLong term;
-    Sinks.Many<UpdateEvent> engineEventSink = Sinks.many().multicast().onBackpressureBuffer();
-    Flux<UpdateEvent> engineEventFlux = engineEventSink.asFlux()
-                                                       .doOnNext(n -> logger.info(n.toString()))
-                                                       .publish()
-                                                       .autoConnect();
+    private final EngineEventRing eventRing;
+    private final boolean proRata;
+    private final boolean coalesceExecutions;
+    private final TriggerBook triggers = new TriggerBook();
+    private final List<StopOrder> triggered = new ArrayList<>();
+    /**
+     * Order ids of every quote level, by quote id
+     */
+    private final Map<String, long[]> quotes = new HashMap<>();
+    private long lastTradePrice = NO_TRADE;
+    /**
+     * Range of trade prices since stops were last checked, so that stops crossed during sweep through several levels
+     * are released even if sweep ends beyond them
+     */
+    private long lowSinceTriggerCheck = NO_TRADE;
+    private long highSinceTriggerCheck = NO_TRADE;
+    //re-entered replaced order is announced by replace event, not by placed event
+    private boolean replacing;
+    /**
+     * Execution report of incoming order that is being matched, claimed on first fill and published once matching is
+     * done, only when fills are reported together
+     */
+    private EngineEventSlot execution;
 
     public MatchingEngine() {
-        this.bids = new TreeSet<>(MatchingEngine::compareBids);
-        this.asks = new TreeSet<>(MatchingEngine::compareAsks);
-
-        this.orders = new HashMap<>();
-        this.term = new AtomicLong(0);
+        this(InstrumentSpec.DEFAULT);
     }
 
-    private static int compareBids(Order a, Order b) {
-        int result = b.getPrice().compareTo(a.getPrice());
-        if (result != 0) {
-            return result;
-        }
+    public MatchingEngine(InstrumentSpec spec) {
+        this.spec = spec;
+        this.store = OrderStore.create(spec);
+        this.bids = new BookSide(OrderType.BUY, store);
+        this.asks = new BookSide(OrderType.SELL, store);
 
-        return Long.compare(a.getTerm(), b.getTerm());
+        this.orders = new LongIntHashMap(spec.expectedOrders());
+        this.term = new AtomicLong(0);
+        this.eventRing = new EngineEventRing(spec);
+        this.proRata = spec.allocation() == AllocationPolicy.PRO_RATA;
+        this.coalesceExecutions = spec.coalescesExecutions();
     }
 
-    private static int compareAsks(Order a, Order b) {
-        int result = a.getPrice().compareTo(b.getPrice());
-        if (result != 0) {
-            return result;
-        }
-
-        return Long.compare(a.getTerm(), b.getTerm());
+    /**
+     * Instrument configuration used by this engine
+     *
+     * @return instrument configuration
+     */
+    public InstrumentSpec spec() {
+        return spec;
     }
 
     /**
-     * All engine execution events are published to this bus
+     * All engine execution events are published to this bus, every subscriber reads ring independently
      *
      * @return local engine event bus - hot stream
      */
     public Flux<UpdateEvent> engineEvents() {
-        return engineEventFlux;
+        return eventRing.events()
+                        .doOnNext(n -> logger.debug("{}", n));
+    }
+
+    /**
+     * All engine execution events, with given policy for subscriber that falls behind
+     *
+     * @param policy - slow consumer policy of subscriber
+     * @return local engine event bus - hot stream
+     */
+    public Flux<UpdateEvent> engineEvents(SlowConsumerPolicy policy) {
+        return eventRing.events(policy)
+                        .doOnNext(n -> logger.debug("{}", n));
+    }
+
+    /**
+     * Ring buffer engine events are published to
+     *
+     * @return engine event ring
+     */
+    public EngineEventRing eventRing() {
+        return eventRing;
     }
 
     /**
@@ -91,138 +173,523 @@ public class MatchingEngine {
      */
     public void placeOrder(long orderId, String aggregateId, Instant entryTimestamp, OrderType type, BigDecimal price,
                            BigDecimal amount) {
-        if (orders.containsKey(orderId)) {
+        placeOrder(orderId, aggregateId, entryTimestamp, type, price, amount, TimeInForce.GTC);
+    }
+
+    /**
+     * Places order into matching engine
+     *
+     * @param orderId - order identifier
+     * @param aggregateId - asset name / aggregate identifier
+     * @param entryTimestamp - time when the system registered order
+     * @param type - direction - can be either "BUY" or "SELL"
+     * @param price - a price for limit order
+     * @param amount - amount of asset to fill by order
+     * @param timeInForce - what happens with amount that can't be filled immediately
+     */
+    public void placeOrder(long orderId, String aggregateId, Instant entryTimestamp, OrderType type, BigDecimal price,
+                           BigDecimal amount, TimeInForce timeInForce) {
+        placeOrder(orderId, aggregateId, entryTimestamp, type, spec.toTicks(price), spec.toLots(amount), timeInForce);
+    }
+
+    /**
+     * Places order into matching engine
+     *
+     * @param orderId - order identifier
+     * @param aggregateId - asset name / aggregate identifier
+     * @param entryTimestamp - time when the system registered order
+     * @param type - direction - can be either "BUY" or "SELL"
+     * @param price - a price for limit order in ticks
+     * @param amount - amount of asset to fill by order in lots
+     */
+    public void placeOrder(long orderId, String aggregateId, Instant entryTimestamp, OrderType type, long price,
+                           long amount) {
+        placeOrder(orderId, aggregateId, entryTimestamp, type, price, amount, TimeInForce.GTC);
+    }
+
+    /**
+     * Places order into matching engine
+     *
+     * @param orderId - order identifier
+     * @param aggregateId - asset name / aggregate identifier
+     * @param entryTimestamp - time when the system registered order
+     * @param type - direction - can be either "BUY" or "SELL"
+     * @param price - a price for limit order in ticks
+     * @param amount - amount of asset to fill by order in lots
+     * @param timeInForce - what happens with amount that can't be filled immediately
+     */
+    public void placeOrder(long orderId, String aggregateId, Instant entryTimestamp, OrderType type, long price,
+                           long amount, TimeInForce timeInForce) {
+        match(orderId, aggregateId, entryTimestamp, type, price, amount, timeInForce);
+        releaseTriggeredStops();
+        eventRing.signalConsumers();
+    }
+
+    /**
+     * Places stop order into trigger book. Order is released into matching engine once a trade crosses its stop price,
+     * or immediately if last trade has already crossed it.
+     *
+     * @param orderId - order identifier
+     * @param aggregateId - asset name / aggregate identifier
+     * @param entryTimestamp - time when the system registered order
+     * @param type - direction - can be either "BUY" or "SELL"
+     * @param stopPrice - trade price that releases order
+     * @param price - a price for released limit order, or null to release order as market order
+     * @param amount - amount of asset to fill by order
+     * @param timeInForce - what happens with amount that can't be filled immediately once order is released
+     * @throws IllegalArgumentException if price is zero, market order is marked only by null price
+     */
+    public void placeStopOrder(long orderId, String aggregateId, Instant entryTimestamp, OrderType type,
+                               BigDecimal stopPrice, BigDecimal price, BigDecimal amount, TimeInForce timeInForce) {
+        stop(orderId,
+             aggregateId,
+             entryTimestamp,
+             type,
+             spec.toTicks(stopPrice),
+             stopLimitTicks(price),
+             spec.toLots(amount),
+             timeInForce);
+        releaseTriggeredStops();
+        eventRing.signalConsumers();
+    }
+
+    /**
+     * Places batch of orders into matching engine, in given order. Whole batch is matched in one pass and consumers
+     * are signaled once, after all events of the batch have been published.
+     *
+     * @param batch - orders to place
+     */
+    public void placeOrders(List<? extends OrderRequest> batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            OrderRequest order = batch.get(i);
+            if (order.stopPrice() != null) {
+                stop(order.orderId(),
+                     order.aggregateId(),
+                     order.entryTimestamp(),
+                     order.type(),
+                     spec.toTicks(order.stopPrice()),
+                     stopLimitTicks(order.stopLimitPrice()),
+                     spec.toLots(order.amount()),
+                     order.timeInForce());
+            } else {
+                match(order.orderId(),
+                      order.aggregateId(),
+                      order.entryTimestamp(),
+                      order.type(),
+                      spec.toTicks(order.price()),
+                      spec.toLots(order.amount()),
+                      order.timeInForce());
+            }
+            releaseTriggeredStops();
+        }
+        eventRing.signalConsumers();
+    }
+
+    private long stopLimitTicks(BigDecimal price) {
+        if (price == null) {
+            return TriggerBook.MARKET;
+        }
+        if (price.signum() == 0) {
+            throw new IllegalArgumentException("Stop limit price can't be zero, market stop order has no price!");
+        }
+        return spec.toTicks(price);
+    }
+
+    private void stop(long orderId, String aggregateId, Instant entryTimestamp, OrderType type, long stopPrice,
+                      long price, long amount, TimeInForce timeInForce) {
+        if (orders.containsKey(orderId) || triggers.contains(orderId)) {
             return;
         }
-        if (type == OrderType.BUY) {
-            buy(orderId, aggregateId, entryTimestamp, price, amount);
+        triggers.add(new StopOrder(orderId, aggregateId, entryTimestamp, type, stopPrice, price, amount, timeInForce));
+
+        EngineEventSlot event = eventRing.claim();
+        event.stopPlaced(orderId, aggregateId, entryTimestamp, type, stopPrice, price, amount);
+        eventRing.publish(event);
+
+        if (lastTradePrice != NO_TRADE && TriggerBook.isTriggered(type, stopPrice, lastTradePrice)) {
+            traded(lastTradePrice);
+        }
+    }
+
+    private void traded(long price) {
+        lastTradePrice = price;
+        if (lowSinceTriggerCheck == NO_TRADE) {
+            lowSinceTriggerCheck = price;
+            highSinceTriggerCheck = price;
         } else {
-            sell(orderId, aggregateId, entryTimestamp, price, amount);
+            lowSinceTriggerCheck = Math.min(lowSinceTriggerCheck, price);
+            highSinceTriggerCheck = Math.max(highSinceTriggerCheck, price);
         }
     }
 
-    private void buy(long incomingId, String aggregateId, Instant entryTimestamp, BigDecimal incomingPrice,
-                     BigDecimal incomingAmount) {
+    /**
+     * Releases stops crossed by any trade since last check, buy stops by the highest and sell stops by the lowest
+     * trade price. Released stops can trade and trigger further stops, so it repeats until there are no new trades.
+     */
+    private void releaseTriggeredStops() {
+        while (lowSinceTriggerCheck != NO_TRADE) {
+            long low = lowSinceTriggerCheck;
+            long high = highSinceTriggerCheck;
+            lowSinceTriggerCheck = NO_TRADE;
+            highSinceTriggerCheck = NO_TRADE;
+            if (triggers.isEmpty()) {
+                return;
+            }
+            triggers.drainTriggered(low, high, triggered);
+            for (int i = 0; i < triggered.size(); i++) {
+                StopOrder stop = triggered.get(i);
+
+                EngineEventSlot event = eventRing.claim();
+                event.stopTriggered(stop.id(), stop.aggregateId(), stop.type(), stop.stopPrice(),
+                                    stop.type() == OrderType.BUY ? high : low);
+                eventRing.publish(event);
+
+                match(stop.id(),
+                      stop.aggregateId(),
+                      stop.entryTimestamp(),
+                      stop.type(),
+                      stop.isMarket() ? (stop.type() == OrderType.BUY ? MARKET_BUY : MARKET_SELL) : stop.price(),
+                      stop.amount(),
+                      stop.isMarket() ? TimeInForce.IOC : stop.timeInForce());
+            }
+            triggered.clear();
+        }
+    }
+
+    private void match(long orderId, String aggregateId, Instant entryTimestamp, OrderType type, long price,
+                       long amount, TimeInForce timeInForce) {
+        if (orders.containsKey(orderId) || triggers.contains(orderId)) {
+            return;
+        }
+        if (spec.auction().enabled()) {
+            rest(orderId, aggregateId, entryTimestamp, type, price, amount, timeInForce,
+                 type == OrderType.BUY ? bids : asks);
+            return;
+        }
+        if (timeInForce == TimeInForce.FOK
+                && (type == OrderType.BUY ? asks : bids).availableAmount(price, amount) < amount) {
+            emitCanceled(orderId, aggregateId, type, amount, 0);
+            return;
+        }
+        long remaining = type == OrderType.BUY
+                ? buy(orderId, aggregateId, entryTimestamp, price, amount)
+                : sell(orderId, aggregateId, entryTimestamp, price, amount);
+        publishExecution();
+        if (remaining > 0) {
+            rest(orderId, aggregateId, entryTimestamp, type, price, remaining, timeInForce,
+                 type == OrderType.BUY ? bids : asks);
+        }
+    }
+
+    /**
+     * @return unfilled amount of incoming order
+     */
+    private long buy(long incomingId, String aggregateId, Instant entryTimestamp, long incomingPrice,
+                     long incomingAmount) {
         while (!asks.isEmpty()) {
-            Order resting = asks.first();
+            PriceLevel level = asks.best();
+            int resting = level.first();
 
-            BigDecimal restingPrice = resting.getPrice();
-            if (restingPrice.compareTo(incomingPrice) > 0) {
+            long restingPrice = level.price();
+            if (restingPrice > incomingPrice) {
                 break;
             }
 
-            long restingId = resting.getId();
+            if (proRata && incomingAmount < level.totalAmount()) {
+                allocateProRata(level, aggregateId, entryTimestamp, incomingId, OrderType.BUY, incomingPrice,
+                                incomingAmount);
+                return 0;
+            }
+
+            long restingId = store.id(resting);
 
-            BigDecimal restingAmount = resting.getRemainingAmount();
+            long restingAmount = store.remainingAmount(resting);
 
-            if (restingAmount.compareTo(incomingAmount) > 0) {
-                resting.reduce(incomingAmount);
+            if (restingAmount > incomingAmount) {
+                level.reduce(resting, incomingAmount);
 
-                engineEventSink.tryEmitNext(new OrderMatchedEvent(restingId,
-                                                                  aggregateId,
-                                                                  entryTimestamp,
-                                                                  incomingId,
-                                                                  OrderType.BUY,
-                                                                  incomingPrice,
-                                                                  restingPrice,
-                                                                  incomingAmount,
-                                                                  restingAmount,
-                                                                  resting.getRemainingAmount()));
+                emitMatched(restingId,
+                            aggregateId,
+                            entryTimestamp,
+                            incomingId,
+                            OrderType.BUY,
+                            incomingPrice,
+                            restingPrice,
+                            incomingAmount,
+                            restingAmount,
+                            store.remainingAmount(resting));
 
-                return;
+                return 0;
             }
 
-            asks.remove(resting);
+            level.removeFirst();
+            asks.removeIfEmpty(level);
             orders.remove(restingId);
+            store.free(resting);
 
-            engineEventSink.tryEmitNext(new OrderMatchedEvent(restingId,
-                                                              aggregateId,
-                                                              entryTimestamp,
-                                                              incomingId,
-                                                              OrderType.BUY,
-                                                              incomingPrice,
-                                                              restingPrice,
-                                                              incomingAmount,
-                                                              restingAmount,
-                                                              BigDecimal.ZERO));
+            emitMatched(restingId,
+                        aggregateId,
+                        entryTimestamp,
+                        incomingId,
+                        OrderType.BUY,
+                        incomingPrice,
+                        restingPrice,
+                        incomingAmount,
+                        restingAmount,
+                        0);
 
 
-            incomingAmount = incomingAmount.subtract(restingAmount);
+            incomingAmount -= restingAmount;
 
-            if (incomingAmount.compareTo(BigDecimal.ZERO) == 0) {
-                return;
+            if (incomingAmount == 0) {
+                return 0;
             }
         }
 
-        add(incomingId, aggregateId, entryTimestamp, OrderType.BUY, incomingPrice, incomingAmount, bids);
+        return incomingAmount;
     }
 
-    private void sell(long incomingId, String aggregateId, Instant entryTimestamp, BigDecimal incomingPrice,
-                      BigDecimal incomingAmount) {
+    /**
+     * @return unfilled amount of incoming order
+     */
+    private long sell(long incomingId, String aggregateId, Instant entryTimestamp, long incomingPrice,
+                      long incomingAmount) {
         while (!bids.isEmpty()) {
-            Order resting = bids.first();
+            PriceLevel level = bids.best();
+            int resting = level.first();
 
-            BigDecimal restingPrice = resting.getPrice();
-            if (restingPrice.compareTo(incomingPrice) < 0) {
+            long restingPrice = level.price();
+            if (restingPrice < incomingPrice) {
                 break;
             }
 
-            long restingId = resting.getId();
+            if (proRata && incomingAmount < level.totalAmount()) {
+                allocateProRata(level, aggregateId, entryTimestamp, incomingId, OrderType.SELL, incomingPrice,
+                                incomingAmount);
+                return 0;
+            }
+
+            long restingId = store.id(resting);
 
-            BigDecimal restingAmount = resting.getRemainingAmount();
-            if (restingAmount.compareTo(incomingAmount) > 0) {
-                resting.reduce(incomingAmount);
+            long restingAmount = store.remainingAmount(resting);
+            if (restingAmount > incomingAmount) {
+                level.reduce(resting, incomingAmount);
 
-                engineEventSink.tryEmitNext(new OrderMatchedEvent(restingId,
-                                                                  aggregateId,
-                                                                  entryTimestamp,
-                                                                  incomingId,
-                                                                  OrderType.SELL,
-                                                                  incomingPrice,
-                                                                  restingPrice,
-                                                                  incomingAmount,
-                                                                  restingAmount,
-                                                                  resting.getRemainingAmount()));
+                emitMatched(restingId,
+                            aggregateId,
+                            entryTimestamp,
+                            incomingId,
+                            OrderType.SELL,
+                            incomingPrice,
+                            restingPrice,
+                            incomingAmount,
+                            restingAmount,
+                            store.remainingAmount(resting));
 
-                return;
+                return 0;
             }
 
-            bids.remove(resting);
+            level.removeFirst();
+            bids.removeIfEmpty(level);
             orders.remove(restingId);
+            store.free(resting);
+
+            emitMatched(restingId,
+                        aggregateId,
+                        entryTimestamp,
+                        incomingId,
+                        OrderType.SELL,
+                        incomingPrice,
+                        restingPrice,
+                        incomingAmount,
+                        restingAmount,
+                        0);
+
+            incomingAmount -= restingAmount;
+            if (incomingAmount == 0) {
+                return 0;
+            }
+        }
 
-            engineEventSink.tryEmitNext(new OrderMatchedEvent(restingId,
-                                                              aggregateId,
-                                                              entryTimestamp,
-                                                              incomingId,
-                                                              OrderType.SELL,
-                                                              incomingPrice,
-                                                              restingPrice,
-                                                              incomingAmount,
-                                                              restingAmount,
-                                                              BigDecimal.ZERO));
-
-            incomingAmount = incomingAmount.subtract(restingAmount);
-            if (incomingAmount.compareTo(BigDecimal.ZERO) == 0) {
-                return;
+        return incomingAmount;
+    }
+
+    /**
+     * Splits incoming amount between all orders resting at level proportionally to their remaining amount. Order gets
+     * difference of rounded up cumulative shares, so fills add up to incoming amount exactly and rounding remainder
+     * goes to orders with higher time priority. Incoming amount needs to be lower than level amount.
+     */
+    private void allocateProRata(PriceLevel level, String aggregateId, Instant entryTimestamp, long incomingId,
+                                 OrderType type, long incomingPrice, long incomingAmount) {
+        long levelAmount = level.totalAmount();
+        long restingPrice = level.price();
+        long cumulative = 0;
+        long allocated = 0;
+        int resting = level.first();
+        while (resting != OrderStore.NONE && allocated < incomingAmount) {
+            int next = store.next(resting);
+            long restingAmount = store.remainingAmount(resting);
+            cumulative += restingAmount;
+            long filled = multiplyDivideCeil(incomingAmount, cumulative, levelAmount) - allocated;
+            if (filled > 0) {
+                long restingId = store.id(resting);
+                if (filled == restingAmount) {
+                    level.remove(resting);
+                    orders.remove(restingId);
+                    store.free(resting);
+                } else {
+                    level.reduce(resting, filled);
+                }
+                emitMatched(restingId,
+                            aggregateId,
+                            entryTimestamp,
+                            incomingId,
+                            type,
+                            incomingPrice,
+                            restingPrice,
+                            incomingAmount - allocated,
+                            restingAmount,
+                            restingAmount - filled);
+                allocated += filled;
             }
+            resting = next;
         }
+    }
 
-        add(incomingId, aggregateId, entryTimestamp, OrderType.SELL, incomingPrice, incomingAmount, asks);
+    /**
+     * @return {@code a * b / divisor} rounded up, without overflow of intermediate product
+     */
+    private static long multiplyDivideCeil(long a, long b, long divisor) {
+        if (Math.multiplyHigh(a, b) == 0 && a * b >= 0) {
+            long product = a * b;
+            return product / divisor + (product % divisor == 0 ? 0 : 1);
+        }
+        BigInteger[] quotient = BigInteger.valueOf(a)
+                                          .multiply(BigInteger.valueOf(b))
+                                          .divideAndRemainder(BigInteger.valueOf(divisor));
+        return quotient[0].longValue() + quotient[1].signum();
     }
 
-    private void add(long orderId, String aggregateId, Instant entryTimestamp, OrderType type, BigDecimal price,
-                     BigDecimal amount, TreeSet<Order> queue) {
-        Order order = new Order(orderId, type, price, amount, term.incrementAndGet());
+    /**
+     * Uncrosses book at single clearing price, see {@link AuctionUncross}. Orders are filled in price-time priority on
+     * both sides until clearing volume is reached, each order is reported once by {@link
+     * com.github.schananas.reactivestockmarket.domain.engine.events.AuctionFillEvent}, followed by single {@link
+     * com.github.schananas.reactivestockmarket.domain.engine.events.AuctionUncrossedEvent}. Does nothing if book is
+     * not crossed.
+     *
+     * @param aggregateId - asset name / aggregate identifier
+     * @param timestamp - time of the auction
+     */
+    public void uncross(String aggregateId, Instant timestamp) {
+        AuctionUncross.Clearing clearing = AuctionUncross.compute(bids, asks);
+        if (clearing == null || clearing.volume() == 0) {
+            return;
+        }
+        fillAuction(bids, aggregateId, clearing);
+        fillAuction(asks, aggregateId, clearing);
 
-        queue.add(order);
-        orders.put(orderId, order);
+        EngineEventSlot event = eventRing.claim();
+        event.auctionUncrossed(aggregateId, timestamp, clearing.price(), clearing.volume());
+        eventRing.publish(event);
 
-        engineEventSink.tryEmitNext(new OrderPlacedEvent(orderId,
-                                                         aggregateId,
-                                                         entryTimestamp,
-                                                         type,
-                                                         price,
-                                                         amount));
+        traded(clearing.price());
+        releaseTriggeredStops();
+        eventRing.signalConsumers();
+    }
+
+    private void fillAuction(BookSide side, String aggregateId, AuctionUncross.Clearing clearing) {
+        long remaining = clearing.volume();
+        while (remaining > 0) {
+            PriceLevel level = side.best();
+            int slot = level.first();
+            long orderId = store.id(slot);
+            long amount = store.remainingAmount(slot);
+            long filled = Math.min(amount, remaining);
+
+            if (filled == amount) {
+                level.removeFirst();
+                side.removeIfEmpty(level);
+                orders.remove(orderId);
+                store.free(slot);
+            } else {
+                level.reduce(slot, filled);
+            }
+            remaining -= filled;
+
+            EngineEventSlot event = eventRing.claim();
+            event.auctionFill(orderId, aggregateId, side.type(), clearing.price(), filled, amount - filled);
+            eventRing.publish(event);
+        }
+    }
+
+    /**
+     * Adds unfilled amount to the book, or cancels it if order is not allowed to rest
+     */
+    private void rest(long orderId, String aggregateId, Instant entryTimestamp, OrderType type, long price,
+                      long amount, TimeInForce timeInForce, BookSide side) {
+        if (timeInForce.rests()) {
+            add(orderId, aggregateId, entryTimestamp, type, price, amount, side);
+        } else {
+            emitCanceled(orderId, aggregateId, type, amount, 0);
+        }
+    }
+
+    private void add(long orderId, String aggregateId, Instant entryTimestamp, OrderType type, long price,
+                     long amount, BookSide side) {
+        int slot = store.allocate(orderId, type, price, amount, term.incrementAndGet());
+
+        side.add(slot);
+        orders.put(orderId, slot);
+
+        if (replacing) {
+            return;
+        }
+        EngineEventSlot event = eventRing.claim();
+        event.placed(orderId, aggregateId, entryTimestamp, type, price, amount);
+        eventRing.publish(event);
+    }
+
+    private void emitMatched(long restingId, String aggregateId, Instant entryTimestamp, long incomingId,
+                             OrderType type, long incomingPrice, long restingPrice, long incomingAmount,
+                             long previousRestingAmount, long restingRemainingAmount) {
+        traded(restingPrice);
+        //stop market order reports price it executed at instead of its matching limit
+        long reportedPrice = incomingPrice == (type == OrderType.BUY ? MARKET_BUY : MARKET_SELL)
+                ? restingPrice
+                : incomingPrice;
+
+        if (coalesceExecutions) {
+            if (execution == null) {
+                execution = eventRing.claim();
+                execution.executed(incomingId, aggregateId, entryTimestamp, type, reportedPrice, incomingAmount);
+            }
+            execution.addFill(restingId, restingPrice, previousRestingAmount - restingRemainingAmount,
+                              restingRemainingAmount);
+            return;
+        }
+
+        EngineEventSlot event = eventRing.claim();
+        event.matched(restingId,
+                      aggregateId,
+                      entryTimestamp,
+                      incomingId,
+                      type,
+                      reportedPrice,
+                      restingPrice,
+                      incomingAmount,
+                      previousRestingAmount,
+                      restingRemainingAmount);
+        eventRing.publish(event);
+    }
+
+    /**
+     * Publishes execution report of incoming order, if it had any fills
+     */
+    private void publishExecution() {
+        if (execution != null) {
+            eventRing.publish(execution);
+            execution = null;
+        }
     }
 
     /**
@@ -232,7 +699,7 @@ public class MatchingEngine {
      * @param aggregateId - asset name / aggregate identifier
      */
     public void cancelAll(long orderId, String aggregateId) {
-        cancel(orderId, aggregateId, BigDecimal.ZERO);
+        cancel(orderId, aggregateId, 0L);
     }
 
     /**
@@ -243,32 +710,268 @@ public class MatchingEngine {
      * @param newAmount - new amount to replace previous amount
      */
     public void cancel(long orderId, String aggregateId, BigDecimal newAmount) {
-        Order order = orders.get(orderId);
-        if (order == null) {
+        cancel(orderId, aggregateId, spec.toLots(newAmount));
+    }
+
+    /**
+     * Partially cancels order and sets new amount to be filled
+     *
+     * @param orderId - order identifier
+     * @param aggregateId - asset name / aggregate identifier
+     * @param newAmount - new amount in lots to replace previous amount
+     */
+    public void cancel(long orderId, String aggregateId, long newAmount) {
+        reduce(orderId, aggregateId, newAmount);
+        eventRing.signalConsumers();
+    }
+
+    /**
+     * Cancels full amount of every given order that is still resting in the book or waiting in trigger book, in one
+     * engine operation. Unknown, filled or already canceled orders are skipped.
+     *
+     * @param aggregateId - asset name / aggregate identifier
+     * @param orderIds - order identifiers
+     */
+    public void expire(String aggregateId, long[] orderIds) {
+        for (long orderId : orderIds) {
+            reduce(orderId, aggregateId, 0L);
+        }
+        eventRing.signalConsumers();
+    }
+
+    private void reduce(long orderId, String aggregateId, long newAmount) {
+        int slot = orders.get(orderId);
+        if (slot == LongIntHashMap.MISSING) {
+            reduceStop(orderId, aggregateId, newAmount);
             return;
         }
 
-        BigDecimal remainingAmount = order.getRemainingAmount();
+        long remainingAmount = store.remainingAmount(slot);
 
-        if (newAmount.compareTo(remainingAmount) >= 0) {
+        if (newAmount >= remainingAmount) {
             return;
         }
 
-        if (newAmount.compareTo(BigDecimal.ZERO) > 0) {
-            order.resize(newAmount);
+        OrderType type = store.type(slot);
+        BookSide side = type == OrderType.BUY ? bids : asks;
+        PriceLevel level = side.level(store.price(slot));
+
+        if (newAmount > 0) {
+            level.resize(slot, newAmount);
         } else {
-            TreeSet<Order> queue = order.type() == OrderType.BUY ? bids : asks;
+            level.remove(slot);
+            side.removeIfEmpty(level);
+            orders.remove(orderId);
+            store.free(slot);
+        }
 
-            queue.remove(order);
+        emitCanceled(orderId, aggregateId, type, remainingAmount - newAmount, newAmount);
+    }
+
+    private void reduceStop(long orderId, String aggregateId, long newAmount) {
+        StopOrder stop = triggers.get(orderId);
+        if (stop == null || newAmount >= stop.amount()) {
+            return;
+        }
+        long remainingAmount = stop.amount();
+        if (newAmount > 0) {
+            stop.resize(newAmount);
+        } else {
+            triggers.remove(orderId);
+        }
+        emitCanceled(orderId, aggregateId, stop.type(), remainingAmount - newAmount, newAmount);
+    }
+
+    /**
+     * Cancels all resting orders on one side of the book with price in given range
+     *
+     * @param aggregateId - asset name / aggregate identifier
+     * @param type - side of the book
+     * @param minPrice - lowest price, inclusive, or null for no lower bound
+     * @param maxPrice - highest price, inclusive, or null for no upper bound
+     */
+    public void massCancel(String aggregateId, OrderType type, BigDecimal minPrice, BigDecimal maxPrice) {
+        massCancel(aggregateId,
+                   type,
+                   minPrice == null ? 0 : spec.toTicks(minPrice),
+                   maxPrice == null ? Long.MAX_VALUE : spec.toTicks(maxPrice));
+    }
+
+    /**
+     * Cancels all resting orders on one side of the book with price in given range, in one pass over price levels.
+     * All canceled orders are reported by single {@link
+     * com.github.schananas.reactivestockmarket.domain.engine.events.OrdersMassCanceledEvent}. Pending stop orders are
+     * not affected. Does nothing if there are no orders in range.
+     *
+     * @param aggregateId - asset name / aggregate identifier
+     * @param type - side of the book
+     * @param minPrice - lowest price in ticks, inclusive
+     * @param maxPrice - highest price in ticks, inclusive
+     */
+    public void massCancel(String aggregateId, OrderType type, long minPrice, long maxPrice) {
+        BookSide side = type == OrderType.BUY ? bids : asks;
+        if (minPrice > maxPrice || !side.hasLevels(minPrice, maxPrice)) {
+            return;
+        }
+        EngineEventSlot event = eventRing.claim();
+        event.massCanceled(aggregateId, type);
+        side.removeLevels(minPrice, maxPrice, slot -> {
+            long orderId = store.id(slot);
+            event.addCanceled(orderId, store.remainingAmount(slot));
+            orders.remove(orderId);
+            store.free(slot);
+        });
+        eventRing.publish(event);
+        eventRing.signalConsumers();
+    }
+
+    /**
+     * Atomically replaces price and remaining amount of resting order
+     *
+     * @param orderId - order identifier
+     * @param aggregateId - asset name / aggregate identifier
+     * @param timestamp - time when the system registered replace request
+     * @param newPrice - new price
+     * @param newAmount - new amount to replace remaining amount
+     */
+    public void replace(long orderId, String aggregateId, Instant timestamp, BigDecimal newPrice,
+                        BigDecimal newAmount) {
+        replace(orderId, aggregateId, timestamp, spec.toTicks(newPrice), spec.toLots(newAmount));
+    }
+
+    /**
+     * Atomically replaces price and remaining amount of resting order. If price is unchanged and amount is decreased
+     * order is resized in place and keeps its queue priority. Otherwise order is taken out of the book and re-entered
+     * under the same id, it can trade immediately if new price crosses the book, and GTD order keeps its expire time.
+     * Either way single {@link
+     * com.github.schananas.reactivestockmarket.domain.engine.events.OrderReplacedEvent} is published. Does nothing if
+     * order is not resting in the book.
+     *
+     * @param orderId - order identifier
+     * @param aggregateId - asset name / aggregate identifier
+     * @param timestamp - time when the system registered replace request
+     * @param newPrice - new price in ticks
+     * @param newAmount - new amount in lots to replace remaining amount
+     */
+    public void replace(long orderId, String aggregateId, Instant timestamp, long newPrice, long newAmount) {
+        replaceResting(orderId, aggregateId, timestamp, newPrice, newAmount);
+        eventRing.signalConsumers();
+    }
+
+    private void replaceResting(long orderId, String aggregateId, Instant timestamp, long newPrice, long newAmount) {
+        int slot = orders.get(orderId);
+        if (slot == LongIntHashMap.MISSING || newAmount <= 0) {
+            return;
+        }
+        long price = store.price(slot);
+        long amount = store.remainingAmount(slot);
+        if (price == newPrice && amount == newAmount) {
+            return;
+        }
+
+        OrderType type = store.type(slot);
+        BookSide side = type == OrderType.BUY ? bids : asks;
+        PriceLevel level = side.level(price);
+        boolean priorityKept = price == newPrice && newAmount < amount;
+
+        if (priorityKept) {
+            level.resize(slot, newAmount);
+        } else {
+            level.remove(slot);
+            side.removeIfEmpty(level);
             orders.remove(orderId);
+            store.free(slot);
+        }
+
+        EngineEventSlot event = eventRing.claim();
+        event.replaced(orderId, aggregateId, timestamp, type, price, newPrice, amount, newAmount, priorityKept);
+        eventRing.publish(event);
+
+        if (!priorityKept) {
+            replacing = true;
+            try {
+                //resting order is either GTC or GTD, engine doesn't tell them apart, expiry stays with the id
+                match(orderId, aggregateId, timestamp, type, newPrice, newAmount, TimeInForce.GTC);
+            } finally {
+                replacing = false;
+            }
+            releaseTriggeredStops();
+        }
+    }
+
+    /**
+     * Atomically replaces whole quote of one market maker, in one engine operation. New quote is applied as diff
+     * against levels of previous quote that are still resting:
+     * - level with same side and price is replaced, see {@link #replace(long, String, Instant, long, long)}, so it
+     * keeps queue priority if amount is unchanged or decreased
+     * - level that is not part of new quote is canceled
+     * - new level is placed as GTC order under id assigned to it, and can trade immediately
+     * <p>
+     * Levels of previous quote that have been filled in the meantime are placed again as new levels.
+     *
+     * @param quoteId - quote identifier, unique within the book
+     * @param aggregateId - asset name / aggregate identifier
+     * @param timestamp - time when the system registered quote
+     * @param levels - all levels of new quote, at most one per side and price
+     * @param orderIds - order id for every level, used only if level is placed as new order
+     */
+    public void quote(String quoteId, String aggregateId, Instant timestamp, List<QuoteLevel> levels,
+                      long[] orderIds) {
+        int size = levels.size();
+        long[] prices = new long[size];
+        long[] amounts = new long[size];
+        for (int i = 0; i < size; i++) {
+            prices[i] = spec.toTicks(levels.get(i).price());
+            amounts[i] = spec.toLots(levels.get(i).amount());
+        }
+
+        long[] current = new long[size];
+        Arrays.fill(current, NO_ORDER);
+        for (long orderId : quotes.getOrDefault(quoteId, NO_ORDERS)) {
+            int slot = orders.get(orderId);
+            if (slot == LongIntHashMap.MISSING) {
+                continue;
+            }
+            int level = quoteLevel(levels, prices, store.type(slot), store.price(slot));
+            if (level < 0) {
+                reduce(orderId, aggregateId, 0L);
+            } else {
+                current[level] = orderId;
+            }
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (current[i] != NO_ORDER) {
+                replaceResting(current[i], aggregateId, timestamp, prices[i], amounts[i]);
+            } else {
+                current[i] = orderIds[i];
+                match(orderIds[i], aggregateId, timestamp, levels.get(i).type(), prices[i], amounts[i],
+                      TimeInForce.GTC);
+            }
+        }
+        releaseTriggeredStops();
+
+        if (size == 0) {
+            quotes.remove(quoteId);
+        } else {
+            quotes.put(quoteId, current);
         }
+        eventRing.signalConsumers();
+    }
 
-        engineEventSink.tryEmitNext(new OrderCanceledEvent(orderId,
-                                                           aggregateId,
-                                                           order.type(),
-                                                           remainingAmount.subtract(newAmount),
-                                                           newAmount));
+    private static int quoteLevel(List<QuoteLevel> levels, long[] prices, OrderType type, long price) {
+        for (int i = 0; i < prices.length; i++) {
+            if (prices[i] == price && levels.get(i).type() == type) {
+                return i;
+            }
+        }
+        return -1;
     }
 
-    ;
+    private void emitCanceled(long orderId, String aggregateId, OrderType type, long canceledAmount,
+                              long remainingAmount) {
+        EngineEventSlot event = eventRing.claim();
+        event.canceled(orderId, aggregateId, type, canceledAmount, remainingAmount);
+        eventRing.publish(event);
+    }
 }
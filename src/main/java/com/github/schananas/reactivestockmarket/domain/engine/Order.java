@@ -2,22 +2,26 @@ package com.github.schananas.reactivestockmarket.domain.engine;
 
 import com.github.schananas.reactivestockmarket.domain.query.OrderType;
 
-import java.math.BigDecimal;
-
 /**
- * Representation of order used by {@link MatchingEngine}
+ * Representation of order used by {@link HeapOrderStore}
+ * <p>
+ * Price and remaining amount are kept as scaled ticks/lots, see {@link InstrumentSpec}. While resting, order is linked
+ * into its {@link PriceLevel} by intrusive prev/next slot links.
  *
  * @author Stefan Dragisic
  */
 public class Order {
     private final OrderType type;
-    private final BigDecimal price;
+    private final long price;
     private final long term;
     private final long id;
 
-    private BigDecimal remainingAmount;
+    private long remainingAmount;
+
+    int prev = OrderStore.NONE;
+    int next = OrderStore.NONE;
 
-    public Order(long id, OrderType type, BigDecimal price, BigDecimal amount, long term) {
+    public Order(long id, OrderType type, long price, long amount, long term) {
         this.id = id;
         this.type  = type;
         this.price = price;
@@ -26,7 +30,7 @@ public class Order {
         this.remainingAmount = amount;
     }
 
-    public BigDecimal getPrice() {
+    public long getPrice() {
         return price;
     }
 
@@ -34,7 +38,7 @@ public class Order {
         return type;
     }
 
-    public BigDecimal getRemainingAmount() {
+    public long getRemainingAmount() {
         return remainingAmount;
     }
 
@@ -42,15 +46,15 @@ public class Order {
         return term;
     }
 
-    public void reduce(BigDecimal amount) {
-        remainingAmount = remainingAmount.subtract(amount);
+    public void reduce(long amount) {
+        remainingAmount -= amount;
     }
 
     public long getId() {
         return id;
     }
 
-    public void resize(BigDecimal newAmount) {
+    public void resize(long newAmount) {
         remainingAmount = newAmount;
     }
 }
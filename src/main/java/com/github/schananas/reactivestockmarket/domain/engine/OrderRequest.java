@@ -0,0 +1,43 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+import com.github.schananas.reactivestockmarket.domain.query.TimeInForce;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Order as seen by {@link MatchingEngine#placeOrders(java.util.List)}, implemented directly by accepted order events so
+ * that batch doesn't need to be copied before it is matched.
+ *
+ * @author Stefan Dragisic
+ */
+public interface OrderRequest {
+
+    long orderId();
+
+    String aggregateId();
+
+    Instant entryTimestamp();
+
+    OrderType type();
+
+    BigDecimal price();
+
+    BigDecimal amount();
+
+    TimeInForce timeInForce();
+
+    /**
+     * @return stop price, or null if order is not a stop order. Stop order with zero price is released as market order
+     */
+    BigDecimal stopPrice();
+
+    /**
+     * @return price of stop order once released, or null if it is released as market order, as expected by {@link
+     * MatchingEngine#placeStopOrder}
+     */
+    default BigDecimal stopLimitPrice() {
+        return price().signum() == 0 ? null : price();
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+
+/**
+ * Storage of resting orders used by {@link MatchingEngine}.
+ * <p>
+ * Orders are addressed by slot index. Slot is allocated when order starts resting and is recycled once order is filled
+ * or canceled. Store also keeps intrusive prev/next links that chain orders into their {@link PriceLevel}.
+ *
+ * @author Stefan Dragisic
+ */
+public interface OrderStore {
+
+    /**
+     * Marks absence of slot (end of level chain, or order that is not in store)
+     */
+    int NONE = -1;
+
+    /**
+     * Creates store configured by instrument
+     *
+     * @param spec - instrument configuration
+     * @return order store
+     */
+    static OrderStore create(InstrumentSpec spec) {
+        return switch (spec.orderStore()) {
+            case HEAP -> new HeapOrderStore(spec.expectedOrders());
+            case ARENA -> new ArenaOrderStore(spec.expectedOrders());
+        };
+    }
+
+    /**
+     * Allocates slot for order
+     *
+     * @return slot index
+     */
+    int allocate(long id, OrderType type, long price, long amount, long term);
+
+    /**
+     * Releases slot so it can be reused for another order
+     *
+     * @param slot - slot index
+     */
+    void free(int slot);
+
+    long id(int slot);
+
+    OrderType type(int slot);
+
+    long price(int slot);
+
+    long term(int slot);
+
+    long remainingAmount(int slot);
+
+    void remainingAmount(int slot, long amount);
+
+    int prev(int slot);
+
+    void prev(int slot, int prev);
+
+    int next(int slot);
+
+    void next(int slot, int next);
+
+    /**
+     * Type of order store
+     */
+    enum Type {
+        /**
+         * Each order is separate {@link Order} object
+         */
+        HEAP,
+        /**
+         * Orders are kept in parallel primitive arrays, see {@link ArenaOrderStore}
+         */
+        ARENA
+    }
+}
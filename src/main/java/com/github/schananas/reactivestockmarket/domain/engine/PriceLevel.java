@@ -0,0 +1,120 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+import static com.github.schananas.reactivestockmarket.domain.engine.OrderStore.NONE;
+
+/**
+ * All resting orders of one side at one price, kept in FIFO (time priority) order.
+ * <p>
+ * Orders are linked into the level by intrusive prev/next slot links kept in {@link OrderStore}, so removing any order
+ * from the level is O(1) and doesn't allocate. Keeps aggregate remaining amount of the level, so that level liquidity
+ * is known without walking the orders.
+ *
+ * @author Stefan Dragisic
+ */
+public class PriceLevel {
+
+    private final long price;
+    private final OrderStore store;
+    private int head = NONE;
+    private int tail = NONE;
+    private int size;
+    private long totalAmount;
+
+    public PriceLevel(long price, OrderStore store) {
+        this.price = price;
+        this.store = store;
+    }
+
+    public long price() {
+        return price;
+    }
+
+    public long totalAmount() {
+        return totalAmount;
+    }
+
+    public boolean isEmpty() {
+        return head == NONE;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return slot of order with the highest time priority, or {@link OrderStore#NONE} if level is empty
+     */
+    public int first() {
+        return head;
+    }
+
+    public void add(int slot) {
+        store.prev(slot, tail);
+        store.next(slot, NONE);
+        if (tail == NONE) {
+            head = slot;
+        } else {
+            store.next(tail, slot);
+        }
+        tail = slot;
+        size++;
+        totalAmount += store.remainingAmount(slot);
+    }
+
+    /**
+     * Removes order with the highest time priority
+     *
+     * @return slot of removed order
+     */
+    public int removeFirst() {
+        int slot = head;
+        remove(slot);
+        return slot;
+    }
+
+    /**
+     * Unlinks order from the level
+     *
+     * @param slot - slot of order resting at this level
+     */
+    public void remove(int slot) {
+        int prev = store.prev(slot);
+        int next = store.next(slot);
+        if (prev == NONE) {
+            head = next;
+        } else {
+            store.next(prev, next);
+        }
+        if (next == NONE) {
+            tail = prev;
+        } else {
+            store.prev(next, prev);
+        }
+        store.prev(slot, NONE);
+        store.next(slot, NONE);
+        size--;
+        totalAmount -= store.remainingAmount(slot);
+    }
+
+    /**
+     * Reduces remaining amount of order resting at this level
+     *
+     * @param slot - slot of resting order
+     * @param amount - amount to reduce by
+     */
+    public void reduce(int slot, long amount) {
+        store.remainingAmount(slot, store.remainingAmount(slot) - amount);
+        totalAmount -= amount;
+    }
+
+    /**
+     * Sets new remaining amount of order resting at this level
+     *
+     * @param slot - slot of resting order
+     * @param newAmount - new remaining amount
+     */
+    public void resize(int slot, long newAmount) {
+        totalAmount += newAmount - store.remainingAmount(slot);
+        store.remainingAmount(slot, newAmount);
+    }
+}
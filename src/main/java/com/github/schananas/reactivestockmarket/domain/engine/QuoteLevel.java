@@ -0,0 +1,14 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+
+import java.math.BigDecimal;
+
+/**
+ * One price level of two-sided quote, see {@link MatchingEngine#quote}.
+ *
+ * @author Stefan Dragisic
+ */
+public record QuoteLevel(OrderType type, BigDecimal price, BigDecimal amount) {
+
+}
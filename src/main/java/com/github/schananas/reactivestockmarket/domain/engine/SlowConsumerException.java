@@ -0,0 +1,14 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+/**
+ * Signals to consumer of {@link EngineEventRing} that it has been disconnected because it fell behind producer by more
+ * than ring size.
+ *
+ * @author Stefan Dragisic
+ */
+public class SlowConsumerException extends RuntimeException {
+
+    public SlowConsumerException(String message) {
+        super(message);
+    }
+}
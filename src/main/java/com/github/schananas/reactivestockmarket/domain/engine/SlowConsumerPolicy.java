@@ -0,0 +1,20 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+/**
+ * Defines what {@link EngineEventRing} does when producer would overwrite event that a consumer has not read yet.
+ * Policy is chosen per consumer.
+ *
+ * @author Stefan Dragisic
+ */
+public enum SlowConsumerPolicy {
+
+    /**
+     * Producer waits, using configured {@link WaitStrategy}, until the slowest consumer frees a slot. Matching engine
+     * is stalled meanwhile, so consumers must never depend on engine thread to make progress.
+     */
+    BLOCK,
+    /**
+     * Lagging consumer is disconnected and terminated with {@link SlowConsumerException}, producer never waits.
+     */
+    DISCONNECT
+}
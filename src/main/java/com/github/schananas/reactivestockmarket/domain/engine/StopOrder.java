@@ -0,0 +1,85 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+import com.github.schananas.reactivestockmarket.domain.query.TimeInForce;
+
+import java.time.Instant;
+
+/**
+ * Pending stop order kept in {@link TriggerBook} until a trade crosses its stop price.
+ * <p>
+ * Stop price, limit price and amount are kept as scaled ticks/lots, see {@link InstrumentSpec}. Stop order without
+ * limit price ({@link TriggerBook#MARKET}) is released as immediate-or-cancel order that takes any price. While
+ * pending, order is linked into its stop level by intrusive prev/next links.
+ *
+ * @author Stefan Dragisic
+ */
+public class StopOrder {
+
+    private final long id;
+    private final String aggregateId;
+    private final Instant entryTimestamp;
+    private final OrderType type;
+    private final long stopPrice;
+    private final long price;
+    private final TimeInForce timeInForce;
+    private long amount;
+
+    StopOrder prev;
+    StopOrder next;
+
+    public StopOrder(long id, String aggregateId, Instant entryTimestamp, OrderType type, long stopPrice, long price,
+                     long amount, TimeInForce timeInForce) {
+        this.id = id;
+        this.aggregateId = aggregateId;
+        this.entryTimestamp = entryTimestamp;
+        this.type = type;
+        this.stopPrice = stopPrice;
+        this.price = price;
+        this.amount = amount;
+        this.timeInForce = timeInForce;
+    }
+
+    public long id() {
+        return id;
+    }
+
+    public String aggregateId() {
+        return aggregateId;
+    }
+
+    public Instant entryTimestamp() {
+        return entryTimestamp;
+    }
+
+    public OrderType type() {
+        return type;
+    }
+
+    public long stopPrice() {
+        return stopPrice;
+    }
+
+    /**
+     * @return limit price in ticks, or {@link TriggerBook#MARKET}
+     */
+    public long price() {
+        return price;
+    }
+
+    public boolean isMarket() {
+        return price == TriggerBook.MARKET;
+    }
+
+    public long amount() {
+        return amount;
+    }
+
+    public TimeInForce timeInForce() {
+        return timeInForce;
+    }
+
+    void resize(long newAmount) {
+        amount = newAmount;
+    }
+}
@@ -0,0 +1,233 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Hierarchical hashed timing wheel of primitive {@code long} ids.
+ * <p>
+ * Time is divided into ticks of fixed resolution. Wheel has {@link #LEVELS} levels of {@link #WHEEL_SIZE} buckets,
+ * level 0 bucket spans one tick, and each next level spans whole previous level. Id is scheduled into bucket of the
+ * lowest level that covers its deadline, and cascaded to lower level once time reaches its bucket. Schedule is O(1),
+ * advancing by one tick is O(1) plus ids that expire or cascade, so cost doesn't depend on number of scheduled ids.
+ * Ticks of levels that have no ids are skipped, up to next bucket of the lowest non-empty level.
+ * <p>
+ * Canceling scheduled id is not supported, ids that are no longer relevant are expected to be ignored once expired.
+ * <p>
+ * Not thread-safe.
+ *
+ * @author Stefan Dragisic
+ */
+public class TimingWheel {
+
+    private static final int BITS = 8;
+    public static final int WHEEL_SIZE = 1 << BITS;
+    public static final int LEVELS = 4;
+    private static final int MASK = WHEEL_SIZE - 1;
+
+    private final long resolutionMillis;
+    private final Bucket[][] buckets = new Bucket[LEVELS][WHEEL_SIZE];
+    private final Bucket cascading = new Bucket();
+    private final int[] levelSizes = new int[LEVELS];
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param resolutionMillis - tick length in milliseconds
+     * @param startMillis - epoch millis wheel starts at
+     */
+    public TimingWheel(long resolutionMillis, long startMillis) {
+        if (resolutionMillis <= 0) {
+            throw new IllegalArgumentException("Timing wheel resolution needs to be positive!");
+        }
+        this.resolutionMillis = resolutionMillis;
+        this.currentTick = startMillis / resolutionMillis;
+    }
+
+    /**
+     * @return number of scheduled ids
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds the earliest deadline by visiting buckets of every non-empty level in time order, up to first non-empty
+     * bucket of each level. Cost is linear in size of those buckets, so callers should use it after {@link
+     * #advance(long, LongConsumer)} rather than after every {@link #schedule(long, long)}.
+     *
+     * @return epoch millis of the earliest scheduled deadline, rounded up to tick resolution, or {@link Long#MAX_VALUE}
+     * if nothing is scheduled
+     */
+    public long nextDeadline() {
+        long earliest = Long.MAX_VALUE;
+        for (int level = 0; level < LEVELS; level++) {
+            if (levelSizes[level] == 0) {
+                continue;
+            }
+            int current = index(currentTick, level);
+            for (int i = 1; i <= WHEEL_SIZE; i++) {
+                Bucket bucket = buckets[level][(current + i) & MASK];
+                if (bucket != null && bucket.size > 0) {
+                    for (int j = 0; j < bucket.size; j++) {
+                        earliest = Math.min(earliest, bucket.deadlines[j]);
+                    }
+                    break;
+                }
+            }
+        }
+        return earliest == Long.MAX_VALUE ? Long.MAX_VALUE : earliest * resolutionMillis;
+    }
+
+    /**
+     * Schedules id to expire at deadline. Deadline is rounded up to tick resolution, id with deadline in the past
+     * expires on next tick.
+     *
+     * @param id - id to schedule
+     * @param deadlineMillis - epoch millis
+     * @return epoch millis of the deadline, rounded up to tick resolution
+     */
+    public long schedule(long id, long deadlineMillis) {
+        long deadlineTick = Math.max(ceilDiv(deadlineMillis, resolutionMillis), currentTick + 1);
+        place(id, deadlineTick);
+        size++;
+        return deadlineTick * resolutionMillis;
+    }
+
+    /**
+     * Advances wheel to given time, passing every id whose deadline has been reached to consumer, in deadline order.
+     *
+     * @param nowMillis - epoch millis
+     * @param expired - consumer of expired ids
+     */
+    public void advance(long nowMillis, LongConsumer expired) {
+        long targetTick = nowMillis / resolutionMillis;
+        while (currentTick < targetTick) {
+            skipEmptyLevels(targetTick);
+            if (currentTick == targetTick) {
+                return;
+            }
+            currentTick++;
+            for (int level = 1; level < LEVELS; level++) {
+                if ((currentTick & ((1L << (BITS * level)) - 1)) != 0) {
+                    break;
+                }
+                cascade(level, index(currentTick, level));
+            }
+            Bucket bucket = buckets[0][index(currentTick, 0)];
+            if (bucket != null && bucket.size > 0) {
+                drain(bucket, expired);
+            }
+        }
+    }
+
+    /**
+     * Moves current tick to just before next bucket of the lowest level that has ids, nothing expires or cascades in
+     * between
+     */
+    private void skipEmptyLevels(long targetTick) {
+        int level = 0;
+        while (level < LEVELS && levelSizes[level] == 0) {
+            level++;
+        }
+        if (level == 0) {
+            return;
+        }
+        if (level == LEVELS) {
+            currentTick = targetTick;
+            return;
+        }
+        long nextBucket = ((currentTick >>> (BITS * level)) + 1) << (BITS * level);
+        currentTick = Math.max(currentTick, Math.min(targetTick, nextBucket - 1));
+    }
+
+    private void drain(Bucket bucket, LongConsumer expired) {
+        levelSizes[0] -= bucket.size;
+        bucket.moveTo(cascading);
+        for (int i = 0; i < cascading.size; i++) {
+            if (cascading.deadlines[i] <= currentTick) {
+                size--;
+                expired.accept(cascading.ids[i]);
+            } else {
+                place(cascading.ids[i], cascading.deadlines[i]);
+            }
+        }
+        cascading.size = 0;
+    }
+
+    private void cascade(int level, int index) {
+        Bucket bucket = buckets[level][index];
+        if (bucket == null || bucket.size == 0) {
+            return;
+        }
+        levelSizes[level] -= bucket.size;
+        bucket.moveTo(cascading);
+        for (int i = 0; i < cascading.size; i++) {
+            place(cascading.ids[i], cascading.deadlines[i]);
+        }
+        cascading.size = 0;
+    }
+
+    /**
+     * Puts id into bucket of the lowest level that covers its deadline. Deadline that has already been reached is put
+     * into current level 0 bucket, which is drained after cascading.
+     */
+    private void place(long id, long deadlineTick) {
+        long delta = Math.max(deadlineTick - currentTick, 0);
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1))) {
+            level++;
+        }
+        long tick = delta == 0 ? currentTick : deadlineTick;
+        int index = index(tick, level);
+        Bucket bucket = buckets[level][index];
+        if (bucket == null) {
+            bucket = new Bucket();
+            buckets[level][index] = bucket;
+        }
+        bucket.add(id, deadlineTick);
+        levelSizes[level]++;
+    }
+
+    private static int index(long tick, int level) {
+        return (int) (tick >>> (BITS * level)) & MASK;
+    }
+
+    private static long ceilDiv(long value, long divisor) {
+        return -Math.floorDiv(-value, divisor);
+    }
+
+    /**
+     * Growable pair of primitive arrays
+     */
+    private static final class Bucket {
+
+        private long[] ids = new long[4];
+        private long[] deadlines = new long[4];
+        private int size;
+
+        private void add(long id, long deadlineTick) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                deadlines = Arrays.copyOf(deadlines, size * 2);
+            }
+            ids[size] = id;
+            deadlines[size] = deadlineTick;
+            size++;
+        }
+
+        /**
+         * Moves all entries to other bucket, so that this bucket can be refilled while entries are processed
+         */
+        private void moveTo(Bucket other) {
+            if (other.ids.length < size) {
+                other.ids = new long[ids.length];
+                other.deadlines = new long[deadlines.length];
+            }
+            System.arraycopy(ids, 0, other.ids, 0, size);
+            System.arraycopy(deadlines, 0, other.deadlines, 0, size);
+            other.size = size;
+            size = 0;
+        }
+    }
+}
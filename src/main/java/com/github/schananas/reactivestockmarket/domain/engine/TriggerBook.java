@@ -0,0 +1,154 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Pending stop orders, indexed by stop price.
+ * <p>
+ * Buy stops trigger when trade price rises to or above stop price, sell stops when it falls to or below stop price.
+ * Each side is kept in a sorted map ordered so that stops closest to triggering come first, so after a trade only the
+ * crossed range is visited and removed - pending stops that are not triggered are never scanned. Within stop price,
+ * stops are released in the order they arrived.
+ * <p>
+ * Orders are also indexed by id, so cancel doesn't search the book.
+ *
+ * @author Stefan Dragisic
+ */
+public class TriggerBook {
+
+    /**
+     * Limit price of stop order that is released as market order
+     */
+    public static final long MARKET = -1;
+
+    private static final int EXPECTED_STOPS = 64;
+
+    private final TreeMap<Long, StopLevel> buyStops = new TreeMap<>();
+    private final TreeMap<Long, StopLevel> sellStops = new TreeMap<>(Comparator.reverseOrder());
+    private final LongObjectHashMap<StopOrder> stops = new LongObjectHashMap<>(EXPECTED_STOPS);
+
+    public boolean isEmpty() {
+        return stops.isEmpty();
+    }
+
+    public boolean contains(long orderId) {
+        return stops.containsKey(orderId);
+    }
+
+    public StopOrder get(long orderId) {
+        return stops.get(orderId);
+    }
+
+    /**
+     * Checks if stop would be triggered by trade at given price
+     *
+     * @param type - stop order direction
+     * @param stopPrice - stop price in ticks
+     * @param tradePrice - trade price in ticks
+     * @return true if trade price crosses stop price
+     */
+    public static boolean isTriggered(OrderType type, long stopPrice, long tradePrice) {
+        return type == OrderType.BUY ? tradePrice >= stopPrice : tradePrice <= stopPrice;
+    }
+
+    public void add(StopOrder stop) {
+        TreeMap<Long, StopLevel> side = stop.type() == OrderType.BUY ? buyStops : sellStops;
+        side.computeIfAbsent(stop.stopPrice(), price -> new StopLevel()).add(stop);
+        stops.put(stop.id(), stop);
+    }
+
+    /**
+     * Removes pending stop order
+     *
+     * @param orderId - order identifier
+     * @return removed stop order, or null if there is no such pending stop
+     */
+    public StopOrder remove(long orderId) {
+        StopOrder stop = stops.remove(orderId);
+        if (stop == null) {
+            return null;
+        }
+        TreeMap<Long, StopLevel> side = stop.type() == OrderType.BUY ? buyStops : sellStops;
+        StopLevel level = side.get(stop.stopPrice());
+        level.remove(stop);
+        if (level.head == null) {
+            side.remove(stop.stopPrice());
+        }
+        return stop;
+    }
+
+    /**
+     * Removes all stops triggered by trade price, and appends them to {@code triggered} in trigger priority
+     *
+     * @param tradePrice - trade price in ticks
+     * @param triggered - list to append triggered stops to
+     */
+    public void drainTriggered(long tradePrice, List<StopOrder> triggered) {
+        drainTriggered(tradePrice, tradePrice, triggered);
+    }
+
+    /**
+     * Removes all stops triggered by any trade within price range, buy stops at or below the highest and sell stops at
+     * or above the lowest trade price, and appends them to {@code triggered} in trigger priority
+     *
+     * @param lowPrice - lowest trade price in ticks
+     * @param highPrice - highest trade price in ticks
+     * @param triggered - list to append triggered stops to
+     */
+    public void drainTriggered(long lowPrice, long highPrice, List<StopOrder> triggered) {
+        drain(buyStops.headMap(highPrice, true), triggered);
+        drain(sellStops.headMap(lowPrice, true), triggered);
+    }
+
+    private void drain(NavigableMap<Long, StopLevel> crossed, List<StopOrder> triggered) {
+        while (!crossed.isEmpty()) {
+            StopLevel level = crossed.pollFirstEntry().getValue();
+            StopOrder stop = level.head;
+            while (stop != null) {
+                StopOrder next = stop.next;
+                stop.prev = null;
+                stop.next = null;
+                stops.remove(stop.id());
+                triggered.add(stop);
+                stop = next;
+            }
+        }
+    }
+
+    private static final class StopLevel {
+
+        private StopOrder head;
+        private StopOrder tail;
+
+        private void add(StopOrder stop) {
+            stop.prev = tail;
+            stop.next = null;
+            if (tail == null) {
+                head = stop;
+            } else {
+                tail.next = stop;
+            }
+            tail = stop;
+        }
+
+        private void remove(StopOrder stop) {
+            if (stop.prev == null) {
+                head = stop.next;
+            } else {
+                stop.prev.next = stop.next;
+            }
+            if (stop.next == null) {
+                tail = stop.prev;
+            } else {
+                stop.next.prev = stop.prev;
+            }
+            stop.prev = null;
+            stop.next = null;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Strategy used by a thread that has to wait for another thread to make progress.
+ *
+ * @author Stefan Dragisic
+ */
+public enum WaitStrategy {
+
+    /**
+     * Spins on CPU - lowest latency, burns a core while waiting
+     */
+    BUSY_SPIN {
+        @Override
+        public void idle() {
+            Thread.onSpinWait();
+        }
+    },
+    /**
+     * Yields CPU to other threads between checks
+     */
+    YIELD {
+        @Override
+        public void idle() {
+            Thread.yield();
+        }
+    },
+    /**
+     * Parks thread for a short period between checks - highest latency, cheapest on CPU
+     */
+    PARK {
+        @Override
+        public void idle() {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    };
+
+    private static final long PARK_NANOS = 50_000;
+
+    /**
+     * Called once per unsuccessful check
+     */
+    public abstract void idle();
+}
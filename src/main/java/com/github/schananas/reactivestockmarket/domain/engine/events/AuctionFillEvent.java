@@ -0,0 +1,23 @@
+package com.github.schananas.reactivestockmarket.domain.engine.events;
+
+import com.github.schananas.reactivestockmarket.cqrs.UpdateEvent;
+import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+
+import java.math.BigDecimal;
+
+/**
+ * Update event that signals that resting order has been (partially) filled by auction uncross. Published once per
+ * order and auction, at auction clearing price. Orders are filled against the auction, not against particular
+ * counterparty.
+ *
+ * @author Stefan Dragisic
+ */
+public record AuctionFillEvent(
+        long orderId,
+        String aggregateId,
+        OrderType orderType,
+        BigDecimal clearingPrice,
+        BigDecimal filledAmount,
+        BigDecimal remainingAmount) implements UpdateEvent {
+
+}
@@ -0,0 +1,20 @@
+package com.github.schananas.reactivestockmarket.domain.engine.events;
+
+import com.github.schananas.reactivestockmarket.cqrs.UpdateEvent;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Update event that signals that book has been uncrossed at single clearing price. Published after fills of all
+ * orders that took part in the auction.
+ *
+ * @author Stefan Dragisic
+ */
+public record AuctionUncrossedEvent(
+        String aggregateId,
+        Instant timestamp,
+        BigDecimal clearingPrice,
+        BigDecimal volume) implements UpdateEvent {
+
+}
@@ -0,0 +1,42 @@
+package com.github.schananas.reactivestockmarket.domain.engine.events;
+
+import com.github.schananas.reactivestockmarket.cqrs.UpdateEvent;
+import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Update event that reports all fills of incoming order at once, in order in which resting orders were filled.
+ * Incoming amount is amount of incoming order before the first fill.
+ *
+ * @author Stefan Dragisic
+ */
+public record OrderExecutedEvent(
+        long incomingId,
+        String aggregateId,
+        Instant entryTimestamp,
+        OrderType orderType,
+        BigDecimal incomingPrice,
+        BigDecimal incomingAmount,
+        List<Fill> fills) implements UpdateEvent {
+
+    /**
+     * @return amount of incoming order left after all fills
+     */
+    public BigDecimal incomingRemainingAmount() {
+        BigDecimal remaining = incomingAmount;
+        for (Fill fill : fills) {
+            remaining = remaining.subtract(fill.amount());
+        }
+        return remaining;
+    }
+
+    /**
+     * Fill of one resting order
+     */
+    public record Fill(long restingId, BigDecimal price, BigDecimal amount, BigDecimal restingRemainingAmount) {
+
+    }
+}
@@ -0,0 +1,27 @@
+package com.github.schananas.reactivestockmarket.domain.engine.events;
+
+import com.github.schananas.reactivestockmarket.cqrs.UpdateEvent;
+import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Update event that signals that price and/or remaining amount of resting order has been replaced. If order lost
+ * its queue priority it has been re-entered into the book at {@code timestamp}, and might be followed by {@link
+ * OrderMatchedEvent}s where it is incoming order.
+ *
+ * @author Stefan Dragisic
+ */
+public record OrderReplacedEvent(
+        long orderId,
+        String aggregateId,
+        Instant timestamp,
+        OrderType orderType,
+        BigDecimal previousPrice,
+        BigDecimal price,
+        BigDecimal previousAmount,
+        BigDecimal amount,
+        boolean priorityKept) implements UpdateEvent {
+
+}
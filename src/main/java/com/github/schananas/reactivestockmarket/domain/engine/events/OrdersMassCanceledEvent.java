@@ -0,0 +1,26 @@
+package com.github.schananas.reactivestockmarket.domain.engine.events;
+
+import com.github.schananas.reactivestockmarket.cqrs.UpdateEvent;
+import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Update event that signals that resting orders on one side of the book have been canceled by single mass cancel.
+ * Canceled orders are removed from the book, no amount remains.
+ *
+ * @author Stefan Dragisic
+ */
+public record OrdersMassCanceledEvent(
+        String aggregateId,
+        OrderType orderType,
+        List<CanceledOrder> canceledOrders) implements UpdateEvent {
+
+    /**
+     * Order removed by mass cancel
+     */
+    public record CanceledOrder(long orderId, BigDecimal canceledAmount) {
+
+    }
+}
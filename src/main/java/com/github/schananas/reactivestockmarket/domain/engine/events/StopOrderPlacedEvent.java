@@ -0,0 +1,24 @@
+package com.github.schananas.reactivestockmarket.domain.engine.events;
+
+import com.github.schananas.reactivestockmarket.cqrs.UpdateEvent;
+import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Update event that signals that stop order is pending in trigger book. Limit price is null for stop order that is
+ * released as market order.
+ *
+ * @author Stefan Dragisic
+ */
+public record StopOrderPlacedEvent(
+        long orderId,
+        String aggregateId,
+        Instant timestamp,
+        OrderType orderType,
+        BigDecimal stopPrice,
+        BigDecimal price,
+        BigDecimal amount) implements UpdateEvent {
+
+}
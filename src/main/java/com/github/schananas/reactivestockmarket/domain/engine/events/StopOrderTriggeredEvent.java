@@ -0,0 +1,20 @@
+package com.github.schananas.reactivestockmarket.domain.engine.events;
+
+import com.github.schananas.reactivestockmarket.cqrs.UpdateEvent;
+import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+
+import java.math.BigDecimal;
+
+/**
+ * Update event that signals that trade has crossed stop price and stop order has been released into matching engine.
+ *
+ * @author Stefan Dragisic
+ */
+public record StopOrderTriggeredEvent(
+        long orderId,
+        String aggregateId,
+        OrderType orderType,
+        BigDecimal stopPrice,
+        BigDecimal tradePrice) implements UpdateEvent {
+
+}
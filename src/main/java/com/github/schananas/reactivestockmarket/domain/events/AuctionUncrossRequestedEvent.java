@@ -0,0 +1,25 @@
+package com.github.schananas.reactivestockmarket.domain.events;
+
+import com.github.schananas.reactivestockmarket.cqrs.SourcingEvent;
+import org.springframework.lang.NonNull;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Event that marks that auction interval has elapsed and book needs to be uncrossed
+ *
+ * @author Stefan Dragisic
+ */
+public record AuctionUncrossRequestedEvent(String aggregateId, UUID eventId, Instant timestamp)
+        implements SourcingEvent {
+
+    public AuctionUncrossRequestedEvent(
+            @NonNull String aggregateId,
+            @NonNull UUID eventId,
+            @NonNull Instant timestamp) {
+        this.aggregateId = aggregateId;
+        this.eventId = eventId;
+        this.timestamp = timestamp;
+    }
+}
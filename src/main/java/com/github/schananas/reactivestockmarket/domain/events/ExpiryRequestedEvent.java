@@ -0,0 +1,25 @@
+package com.github.schananas.reactivestockmarket.domain.events;
+
+import com.github.schananas.reactivestockmarket.cqrs.SourcingEvent;
+import org.springframework.lang.NonNull;
+
+import java.util.UUID;
+
+/**
+ * Event that marks that expire time of good-till-date orders has been reached and their unfilled amount needs to be
+ * canceled. Order ids are kept unboxed, as many orders usually expire at once.
+ *
+ * @author Stefan Dragisic
+ */
+public record ExpiryRequestedEvent(String aggregateId, UUID eventId, long[] orderIds)
+        implements SourcingEvent {
+
+    public ExpiryRequestedEvent(
+            @NonNull String aggregateId,
+            @NonNull UUID eventId,
+            @NonNull long[] orderIds) {
+        this.aggregateId = aggregateId;
+        this.eventId = eventId;
+        this.orderIds = orderIds;
+    }
+}
@@ -0,0 +1,31 @@
+package com.github.schananas.reactivestockmarket.domain.events;
+
+import com.github.schananas.reactivestockmarket.cqrs.SourcingEvent;
+import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+import org.springframework.lang.NonNull;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * Event that user requested cancellation of all resting orders on one side of the book within price range
+ *
+ * @author Stefan Dragisic
+ */
+public record MassCancelRequestedEvent(String aggregateId, UUID eventId, OrderType type, BigDecimal minPrice,
+                                       BigDecimal maxPrice)
+        implements SourcingEvent {
+
+    public MassCancelRequestedEvent(
+            @NonNull String aggregateId,
+            @NonNull UUID eventId,
+            @NonNull OrderType type,
+            BigDecimal minPrice,
+            BigDecimal maxPrice) {
+        this.aggregateId = aggregateId;
+        this.eventId = eventId;
+        this.type = type;
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+    }
+}
@@ -1,7 +1,9 @@
 package com.github.schananas.reactivestockmarket.domain.events;
 
 import com.github.schananas.reactivestockmarket.cqrs.SourcingEvent;
+import com.github.schananas.reactivestockmarket.domain.engine.OrderRequest;
 import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+import com.github.schananas.reactivestockmarket.domain.query.TimeInForce;
 import org.springframework.lang.NonNull;
 
 import java.math.BigDecimal;
@@ -14,8 +16,9 @@ import java.util.UUID;
  * @author Stefan Dragisic
  */
 public record OrderAcceptedEvent(String aggregateId, UUID eventId, long orderId,
-                                 OrderType type, BigDecimal amount, BigDecimal price, Instant entryTimestamp)
-        implements SourcingEvent {
+                                 OrderType type, BigDecimal amount, BigDecimal price, Instant entryTimestamp,
+                                 TimeInForce timeInForce, BigDecimal stopPrice, Instant expireTime)
+        implements SourcingEvent, OrderRequest {
 
     public OrderAcceptedEvent(
             @NonNull String aggregateId,
@@ -24,7 +27,10 @@ public record OrderAcceptedEvent(String aggregateId, UUID eventId, long orderId,
             @NonNull OrderType type,
             @NonNull BigDecimal amount,
             @NonNull BigDecimal price,
-            @NonNull Instant entryTimestamp) {
+            @NonNull Instant entryTimestamp,
+            @NonNull TimeInForce timeInForce,
+            BigDecimal stopPrice,
+            Instant expireTime) {
         this.aggregateId = aggregateId;
         this.orderId = orderId;
         this.eventId = eventId;
@@ -32,5 +38,19 @@ public record OrderAcceptedEvent(String aggregateId, UUID eventId, long orderId,
         this.amount = amount;
         this.price = price;
         this.entryTimestamp = entryTimestamp;
+        this.timeInForce = timeInForce;
+        this.stopPrice = stopPrice;
+        this.expireTime = expireTime;
+    }
+
+    public OrderAcceptedEvent(String aggregateId, UUID eventId, long orderId, OrderType type, BigDecimal amount,
+                              BigDecimal price, Instant entryTimestamp, TimeInForce timeInForce,
+                              BigDecimal stopPrice) {
+        this(aggregateId, eventId, orderId, type, amount, price, entryTimestamp, timeInForce, stopPrice, null);
+    }
+
+    public OrderAcceptedEvent(String aggregateId, UUID eventId, long orderId, OrderType type, BigDecimal amount,
+                              BigDecimal price, Instant entryTimestamp) {
+        this(aggregateId, eventId, orderId, type, amount, price, entryTimestamp, TimeInForce.GTC, null, null);
     }
 }
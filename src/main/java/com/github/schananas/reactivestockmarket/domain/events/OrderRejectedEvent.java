@@ -8,8 +8,8 @@ import java.math.BigDecimal;
 import java.util.UUID;
 
 /**
- * Event that marks that order didn't pass validation.
- * Not used - POC
+ * Event that marks that order didn't pass validation, or that command was rejected before it reached its aggregate.
+ * Type, amount and price are null if rejected command is not an order.
  *
  * @author Stefan Dragisic
  */
@@ -20,9 +20,9 @@ public record OrderRejectedEvent(String aggregateId, UUID eventId,
     public OrderRejectedEvent(
             @NonNull String aggregateId,
             @NonNull UUID eventId,
-            @NonNull OrderType type,
-            @NonNull BigDecimal amount,
-            @NonNull BigDecimal price,
+            OrderType type,
+            BigDecimal amount,
+            BigDecimal price,
             @NonNull String cause) {
         this.aggregateId = aggregateId;
         this.eventId = eventId;
@@ -0,0 +1,35 @@
+package com.github.schananas.reactivestockmarket.domain.events;
+
+import com.github.schananas.reactivestockmarket.cqrs.SourcingEvent;
+import com.github.schananas.reactivestockmarket.domain.engine.QuoteLevel;
+import org.springframework.lang.NonNull;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Event that marks that quote has been validated and needs to be applied to the book. Every level has order id
+ * assigned up front, it is used only if level is not already resting.
+ *
+ * @author Stefan Dragisic
+ */
+public record QuoteRequestedEvent(String aggregateId, UUID eventId, String quoteId, List<QuoteLevel> levels,
+                                  long[] orderIds, Instant timestamp)
+        implements SourcingEvent {
+
+    public QuoteRequestedEvent(
+            @NonNull String aggregateId,
+            @NonNull UUID eventId,
+            @NonNull String quoteId,
+            @NonNull List<QuoteLevel> levels,
+            @NonNull long[] orderIds,
+            @NonNull Instant timestamp) {
+        this.aggregateId = aggregateId;
+        this.eventId = eventId;
+        this.quoteId = quoteId;
+        this.levels = levels;
+        this.orderIds = orderIds;
+        this.timestamp = timestamp;
+    }
+}
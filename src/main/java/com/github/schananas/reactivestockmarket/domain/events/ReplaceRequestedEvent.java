@@ -0,0 +1,33 @@
+package com.github.schananas.reactivestockmarket.domain.events;
+
+import com.github.schananas.reactivestockmarket.cqrs.SourcingEvent;
+import org.springframework.lang.NonNull;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Event that user requested replacement of order price and/or remaining amount
+ *
+ * @author Stefan Dragisic
+ */
+public record ReplaceRequestedEvent(String aggregateId, UUID eventId, long orderId, BigDecimal newPrice,
+                                    BigDecimal newAmount, Instant timestamp)
+        implements SourcingEvent {
+
+    public ReplaceRequestedEvent(
+            @NonNull String aggregateId,
+            @NonNull UUID eventId,
+            @NonNull long orderId,
+            @NonNull BigDecimal newPrice,
+            @NonNull BigDecimal newAmount,
+            @NonNull Instant timestamp) {
+        this.aggregateId = aggregateId;
+        this.eventId = eventId;
+        this.orderId = orderId;
+        this.newPrice = newPrice;
+        this.newAmount = newAmount;
+        this.timestamp = timestamp;
+    }
+}
@@ -1,14 +1,21 @@
 package com.github.schananas.reactivestockmarket.domain.query;
 
+import com.github.schananas.reactivestockmarket.domain.engine.events.AuctionFillEvent;
 import com.github.schananas.reactivestockmarket.domain.engine.events.OrderCanceledEvent;
+import com.github.schananas.reactivestockmarket.domain.engine.events.OrderExecutedEvent;
 import com.github.schananas.reactivestockmarket.domain.engine.events.OrderMatchedEvent;
 import com.github.schananas.reactivestockmarket.domain.engine.events.OrderPlacedEvent;
+import com.github.schananas.reactivestockmarket.domain.engine.events.OrderReplacedEvent;
+import com.github.schananas.reactivestockmarket.domain.engine.events.OrdersMassCanceledEvent;
+import com.github.schananas.reactivestockmarket.domain.engine.events.StopOrderPlacedEvent;
 import com.github.schananas.reactivestockmarket.cqrs.Event;
 import com.github.schananas.reactivestockmarket.cqrs.QueryRepository;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -46,7 +53,12 @@ public class BookQueryRepository implements QueryRepository<OrderEntry> {
         return (switch (event) {
             case OrderPlacedEvent evt -> handleOrderPlacedEvent(evt);
             case OrderMatchedEvent evt -> handleOrderMatchedEvent(evt);
+            case OrderExecutedEvent evt -> handleOrderExecutedEvent(evt);
             case OrderCanceledEvent evt -> handleOrderCanceledEvent(evt);
+            case OrderReplacedEvent evt -> handleOrderReplacedEvent(evt);
+            case OrdersMassCanceledEvent evt -> handleOrdersMassCanceledEvent(evt);
+            case AuctionFillEvent evt -> handleAuctionFillEvent(evt);
+            case StopOrderPlacedEvent evt -> handleStopOrderPlacedEvent(evt);
             default -> Mono.empty();
         }).subscribeOn(Schedulers.parallel())
           .then();
@@ -75,24 +87,96 @@ public class BookQueryRepository implements QueryRepository<OrderEntry> {
                                             evt.restingPrice()));
                 return order;
             });
-            //enter new
-            return projection.computeIfAbsent(evt.incomingId(), incomingId ->
-                    new OrderEntry(incomingId,
-                                   evt.entryTimestamp(),
-                                   evt.aggregateId(),
-                                   evt.incomingPrice(),
-                                   evt.incomingAmount(),
-                                   evt.orderType(),
-                                   new CopyOnWriteArrayList<>(List.of(new OrderTradeEntry(
-                                           evt.restingId(),
-                                           evt.previousRestingAmount().subtract(evt.restingRemainingAmount()),
-                                           evt.restingPrice()
-                                   ))),
-                                   evt.incomingAmount()
-                                      .subtract(evt.previousRestingAmount().subtract(evt.restingRemainingAmount()))));
+            //enter new, or update incoming order that is already known - released stop order or order that sweeps
+            //several resting orders
+            BigDecimal filledAmount = evt.previousRestingAmount().subtract(evt.restingRemainingAmount());
+            OrderTradeEntry trade = new OrderTradeEntry(evt.restingId(), filledAmount, evt.restingPrice());
+            return projection.compute(evt.incomingId(), (incomingId, order) -> {
+                if (order == null) {
+                    return new OrderEntry(incomingId,
+                                          evt.entryTimestamp(),
+                                          evt.aggregateId(),
+                                          evt.incomingPrice(),
+                                          evt.incomingAmount(),
+                                          evt.orderType(),
+                                          new CopyOnWriteArrayList<>(List.of(trade)),
+                                          evt.incomingAmount().subtract(filledAmount));
+                }
+                order.setPendingAmount(evt.incomingAmount().subtract(filledAmount));
+                order.trades().add(trade);
+                return order;
+            });
+        });
+    }
+
+    private Mono<OrderEntry> handleOrderExecutedEvent(OrderExecutedEvent evt) {
+        return Mono.fromCallable(() -> {
+            List<OrderTradeEntry> trades = new ArrayList<>(evt.fills().size());
+            for (OrderExecutedEvent.Fill fill : evt.fills()) {
+                projection.computeIfPresent(fill.restingId(), (key, order) -> {
+                    order.setPendingAmount(fill.restingRemainingAmount());
+                    order.trades().add(new OrderTradeEntry(evt.incomingId(), fill.amount(), fill.price()));
+                    return order;
+                });
+                trades.add(new OrderTradeEntry(fill.restingId(), fill.amount(), fill.price()));
+            }
+            BigDecimal remainingAmount = evt.incomingRemainingAmount();
+            return projection.compute(evt.incomingId(), (incomingId, order) -> {
+                if (order == null) {
+                    return new OrderEntry(incomingId,
+                                          evt.entryTimestamp(),
+                                          evt.aggregateId(),
+                                          evt.incomingPrice(),
+                                          evt.incomingAmount(),
+                                          evt.orderType(),
+                                          new CopyOnWriteArrayList<>(trades),
+                                          remainingAmount);
+                }
+                order.setPendingAmount(remainingAmount);
+                order.trades().addAll(trades);
+                return order;
+            });
         });
     }
 
+    private Mono<OrderEntry> handleStopOrderPlacedEvent(StopOrderPlacedEvent evt) {
+        return Mono.fromCallable(() -> projection.computeIfAbsent(evt.orderId(), orderId ->
+                new OrderEntry(orderId,
+                               evt.timestamp(),
+                               evt.aggregateId(),
+                               evt.price() != null ? evt.price() : evt.stopPrice(),
+                               evt.amount(),
+                               evt.orderType(),
+                               new CopyOnWriteArrayList<>(),
+                               evt.amount())));
+    }
+
+    private Mono<OrderEntry> handleAuctionFillEvent(AuctionFillEvent evt) {
+        return Mono.fromCallable(() -> projection.computeIfPresent(evt.orderId(), (key, order) -> {
+            order.setPendingAmount(evt.remainingAmount());
+            order.trades().add(new OrderTradeEntry(OrderTradeEntry.AUCTION,
+                                                   evt.filledAmount(),
+                                                   evt.clearingPrice()));
+            return order;
+        }));
+    }
+
+    private Mono<OrderEntry> handleOrderReplacedEvent(OrderReplacedEvent evt) {
+        return Mono.fromCallable(() -> projection.computeIfPresent(evt.orderId(), (key, order) -> {
+            order.setPrice(evt.price());
+            order.setPendingAmount(evt.amount());
+            return order;
+        }));
+    }
+
+    private Mono<Void> handleOrdersMassCanceledEvent(OrdersMassCanceledEvent evt) {
+        return Mono.fromRunnable(() -> evt.canceledOrders().forEach(canceled -> projection.computeIfPresent(
+                canceled.orderId(), (key, order) -> {
+                    order.setPendingAmount(BigDecimal.ZERO);
+                    return order;
+                })));
+    }
+
     private Mono<OrderEntry> handleOrderCanceledEvent(OrderCanceledEvent evt) {
         return Mono.fromCallable(() -> projection.computeIfPresent(evt.orderId(), (key, order) -> {
             order.setPendingAmount(evt.remainingAmount());
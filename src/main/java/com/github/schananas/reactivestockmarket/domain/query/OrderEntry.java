@@ -12,7 +12,7 @@ public class OrderEntry {
     private final long orderId;
     private final Instant entryTimestamp;
     private final String asset;
-    private final BigDecimal price;
+    private BigDecimal price;
     private final BigDecimal amount;
     private final OrderType direction;
     private final List<OrderTradeEntry> trades;
@@ -38,6 +38,10 @@ public class OrderEntry {
         this.pendingAmount = pendingAmount;
     }
 
+    public void setPrice(BigDecimal price) {
+        this.price = price;
+    }
+
     public void setPendingAmount(BigDecimal pendingAmount) {
         this.pendingAmount = pendingAmount;
     }
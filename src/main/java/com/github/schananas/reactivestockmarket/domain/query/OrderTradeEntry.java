@@ -8,6 +8,11 @@ public record OrderTradeEntry(
         BigDecimal price
 ) {
 
+    /**
+     * Counterparty order id of trades executed by auction uncross
+     */
+    public static final long AUCTION = 0;
+
     public OrderTradeEntry(
             long orderId,
             BigDecimal amount,
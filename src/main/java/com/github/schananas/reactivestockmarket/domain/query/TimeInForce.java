@@ -0,0 +1,32 @@
+package com.github.schananas.reactivestockmarket.domain.query;
+
+/**
+ * Defines how long order stays active
+ *
+ * @author Stefan Dragisic
+ */
+public enum TimeInForce {
+    /**
+     * Good till canceled - unfilled amount rests in the book
+     */
+    GTC,
+    /**
+     * Immediate or cancel - fills what it can immediately, unfilled amount is canceled
+     */
+    IOC,
+    /**
+     * Fill or kill - fills whole amount immediately or is canceled without trading
+     */
+    FOK,
+    /**
+     * Good till date - unfilled amount rests in the book until canceled or until its expire time
+     */
+    GTD;
+
+    /**
+     * @return true if unfilled amount rests in the book
+     */
+    public boolean rests() {
+        return this == GTC || this == GTD;
+    }
+}
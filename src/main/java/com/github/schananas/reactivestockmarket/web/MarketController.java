@@ -1,33 +1,51 @@
 package com.github.schananas.reactivestockmarket.web;
 
+import com.github.schananas.reactivestockmarket.api.protobuf.BulkQuoteRequest;
+import com.github.schananas.reactivestockmarket.api.protobuf.MassCancelRequest;
 import com.github.schananas.reactivestockmarket.api.protobuf.OrderStatusResponse;
 import com.github.schananas.reactivestockmarket.api.protobuf.PlaceOrderRequest;
+import com.github.schananas.reactivestockmarket.api.protobuf.QuoteEntry;
+import com.github.schananas.reactivestockmarket.api.protobuf.ReplaceOrderRequest;
 import com.github.schananas.reactivestockmarket.api.protobuf.Trade;
+import com.github.schananas.reactivestockmarket.cqrs.Command;
 import com.github.schananas.reactivestockmarket.cqrs.Event;
 import com.github.schananas.reactivestockmarket.cqrs.SourcingEvent;
 import com.github.schananas.reactivestockmarket.domain.bus.CommandBus;
+import com.github.schananas.reactivestockmarket.domain.bus.CommandRejectedException;
+import com.github.schananas.reactivestockmarket.domain.command.BulkQuoteCommand;
 import com.github.schananas.reactivestockmarket.domain.command.CancelOrderCommand;
 import com.github.schananas.reactivestockmarket.domain.command.MakeOrderCommand;
+import com.github.schananas.reactivestockmarket.domain.command.MassCancelCommand;
+import com.github.schananas.reactivestockmarket.domain.command.ReplaceOrderCommand;
+import com.github.schananas.reactivestockmarket.domain.engine.QuoteLevel;
 import com.github.schananas.reactivestockmarket.domain.events.OrderAcceptedEvent;
 import com.github.schananas.reactivestockmarket.domain.query.BookQueryRepository;
 import com.github.schananas.reactivestockmarket.domain.query.OrderEntry;
 import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+import com.github.schananas.reactivestockmarket.domain.query.TimeInForce;
 import com.github.schananas.reactivestockmarket.domain.Book;
 import com.github.schananas.reactivestockmarket.domain.BookAggregateRepository;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Implements REST Endpoints to place, get or cancel order.
@@ -50,17 +68,34 @@ public class MarketController {
     }
 
     /**
-     * Places order into trading system
+     * Places order into trading system. Request retried with the same command id gets status of the order placed by
+     * the first request. Command id that is not a UUID is rejected as bad request.
      *
      * @param request user request to place order
      * @return order status
      */
     @PostMapping("/orders")
     public Mono<OrderStatusResponse> placeOrder(@RequestBody PlaceOrderRequest request) {
-        return commandBus.sendCommand(toMakeOrderCommand(request))
-                         .cast(OrderAcceptedEvent.class)
-                         .flatMap(this::getOrderProjection)
-                         .map(this::toOrderStatus);
+        if (request.getCommandId().isEmpty()) {
+            return placeOrder(toMakeOrderCommand(request, UUID.randomUUID()), commandBus::sendCommand);
+        }
+        UUID commandId;
+        try {
+            commandId = UUID.fromString(request.getCommandId());
+        } catch (IllegalArgumentException e) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Command id needs to be UUID!", e));
+        }
+        return placeOrder(toMakeOrderCommand(request, commandId), commandBus::sendRetryableCommand);
+    }
+
+    private Mono<OrderStatusResponse> placeOrder(MakeOrderCommand command,
+                                                 Function<Command, Mono<SourcingEvent>> sender) {
+        return sender.apply(command)
+                     .cast(OrderAcceptedEvent.class)
+                     .flatMap(ev -> getOrderProjection(ev).onErrorResume(e -> ev.timeInForce().rests()
+                                                                              ? Mono.error(e)
+                                                                              : Mono.just(notRested(ev))))
+                     .map(this::toOrderStatus);
     }
 
     /**
@@ -102,7 +137,102 @@ public class MarketController {
                                   .switchIfEmpty(Mono.error(new IllegalStateException(
                                           "You can't cancel non-existing order.")))
                                   .map(order -> ResponseEntity.accepted().body("OK"))
-                                  .onErrorResume(e -> Mono.just(ResponseEntity.badRequest().body(e.getMessage())));
+                                  .onErrorResume(e -> Mono.just(errorResponse(e)));
+    }
+
+    /**
+     * Atomically replaces price and remaining amount of resting order, order keeps its id.
+     *
+     * @param orderId - order identifier
+     * @param request - new price and amount
+     * @return response OK or error with error message
+     */
+    @PostMapping("/orders/{orderId}/replace")
+    public Mono<ResponseEntity<String>> replaceOrder(@PathVariable Long orderId,
+                                                     @RequestBody ReplaceOrderRequest request) {
+        return bookQueryRepository.getProjection(orderId)
+                                  .flatMap(MarketController::validateOrderAmount)
+                                  .flatMap(order -> commandBus.sendCommand(new ReplaceOrderCommand(
+                                          order.asset(),
+                                          UUID.randomUUID(),
+                                          order.orderId(),
+                                          BigDecimal.valueOf(request.getPrice()),
+                                          BigDecimal.valueOf(request.getAmount()))))
+                                  .switchIfEmpty(Mono.error(new IllegalStateException(
+                                          "You can't replace non-existing order.")))
+                                  .map(event -> ResponseEntity.accepted().body("OK"))
+                                  .onErrorResume(e -> Mono.just(errorResponse(e)));
+    }
+
+    /**
+     * Cancels all resting orders of asset on one side of the book, optionally limited to price range. Doesn't look up
+     * individual orders, whole cancel is single command.
+     *
+     * @param asset - asset name
+     * @param request - side and price range
+     * @return response OK or error with error message
+     */
+    @PostMapping("/book/{asset}/cancel")
+    public Mono<ResponseEntity<String>> massCancel(@PathVariable String asset, @RequestBody MassCancelRequest request) {
+        return commandBus.sendCommand(new MassCancelCommand(asset,
+                                                            UUID.randomUUID(),
+                                                            OrderType.valueOf(request.getDirection().name()),
+                                                            request.getMinPrice() > 0
+                                                                    ? BigDecimal.valueOf(request.getMinPrice())
+                                                                    : null,
+                                                            request.getMaxPrice() > 0
+                                                                    ? BigDecimal.valueOf(request.getMaxPrice())
+                                                                    : null))
+                         .map(event -> ResponseEntity.accepted().body("OK"))
+                         .onErrorResume(e -> Mono.just(errorResponse(e)));
+    }
+
+    /**
+     * Atomically replaces whole quote of market maker, levels that are already resting at same price keep their
+     * priority when amount is not increased. Empty quote cancels all levels.
+     *
+     * @param asset - asset name
+     * @param quoteId - quote identifier, unique within the book
+     * @param request - bid and ask levels
+     * @return response OK or error with error message
+     */
+    @PostMapping("/book/{asset}/quotes/{quoteId}")
+    public Mono<ResponseEntity<String>> bulkQuote(@PathVariable String asset,
+                                                  @PathVariable String quoteId,
+                                                  @RequestBody BulkQuoteRequest request) {
+        List<QuoteLevel> levels = Stream.concat(request.getBidsList()
+                                                       .stream()
+                                                       .map(entry -> toQuoteLevel(OrderType.BUY, entry)),
+                                                request.getAsksList()
+                                                       .stream()
+                                                       .map(entry -> toQuoteLevel(OrderType.SELL, entry)))
+                                        .toList();
+        return commandBus.sendCommand(new BulkQuoteCommand(asset, UUID.randomUUID(), quoteId, levels))
+                         .map(event -> ResponseEntity.accepted().body("OK"))
+                         .onErrorResume(e -> Mono.just(errorResponse(e)));
+    }
+
+    private static QuoteLevel toQuoteLevel(OrderType type, QuoteEntry entry) {
+        return new QuoteLevel(type, BigDecimal.valueOf(entry.getPrice()), BigDecimal.valueOf(entry.getAmount()));
+    }
+
+    /**
+     * Command that command bus didn't accept because it is overloaded is reported as 503, so that client can back off
+     * and retry
+     *
+     * @param e - rejection
+     * @return response with rejection reason
+     */
+    @ExceptionHandler(CommandRejectedException.class)
+    public ResponseEntity<String> handleRejectedCommand(CommandRejectedException e) {
+        return errorResponse(e);
+    }
+
+    private static ResponseEntity<String> errorResponse(Throwable e) {
+        if (e instanceof CommandRejectedException rejected) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(rejected.rejection().cause());
+        }
+        return ResponseEntity.badRequest().body(e.getMessage());
     }
 
     private Mono<SourcingEvent> sendCancelCommand(OrderEntry order) {
@@ -113,18 +243,35 @@ public class MarketController {
                                                              BigDecimal.ZERO));
     }
 
-    private Mono<? extends OrderEntry> getOrderProjection(OrderAcceptedEvent ev) {
+    private Mono<OrderEntry> getOrderProjection(OrderAcceptedEvent ev) {
         return bookQueryRepository.getProjection(ev.orderId())
                                   .repeatWhenEmpty(10, o -> o.delayElements(
                                           Duration.ofMillis(50)));
     }
 
-    private MakeOrderCommand toMakeOrderCommand(PlaceOrderRequest request) {
+    /**
+     * IOC/FOK order that didn't trade never enters projection, its status is built from accepted event
+     */
+    private OrderEntry notRested(OrderAcceptedEvent ev) {
+        return new OrderEntry(ev.orderId(),
+                              ev.entryTimestamp(),
+                              ev.aggregateId(),
+                              ev.price(),
+                              ev.amount(),
+                              ev.type(),
+                              List.of(),
+                              BigDecimal.ZERO);
+    }
+
+    private MakeOrderCommand toMakeOrderCommand(PlaceOrderRequest request, UUID commandId) {
         return new MakeOrderCommand(request.getAsset(),
-                                    UUID.randomUUID(),
+                                    commandId,
                                     OrderType.valueOf(request.getDirection().name()),
                                     BigDecimal.valueOf(request.getAmount()),
-                                    BigDecimal.valueOf(request.getPrice()));
+                                    BigDecimal.valueOf(request.getPrice()),
+                                    TimeInForce.valueOf(request.getTimeInForce().name()),
+                                    request.getStopPrice() > 0 ? BigDecimal.valueOf(request.getStopPrice()) : null,
+                                    request.getExpireTime() > 0 ? Instant.ofEpochMilli(request.getExpireTime()) : null);
     }
 
     private OrderStatusResponse toOrderStatus(OrderEntry order) {
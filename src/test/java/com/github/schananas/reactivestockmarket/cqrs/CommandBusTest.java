@@ -1,23 +1,32 @@
 package com.github.schananas.reactivestockmarket.cqrs;
 
 import com.github.schananas.reactivestockmarket.domain.bus.CommandBus;
+import com.github.schananas.reactivestockmarket.domain.bus.CommandBusSpec;
 import com.github.schananas.reactivestockmarket.domain.command.CancelOrderCommand;
 import com.github.schananas.reactivestockmarket.domain.command.MakeOrderCommand;
+import com.github.schananas.reactivestockmarket.domain.command.ReplaceOrderCommand;
 import com.github.schananas.reactivestockmarket.domain.engine.MatchingEngine;
 import com.github.schananas.reactivestockmarket.domain.events.CancellationRequestedEvent;
 import com.github.schananas.reactivestockmarket.domain.events.OrderAcceptedEvent;
 import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+import com.github.schananas.reactivestockmarket.domain.query.TimeInForce;
 import com.github.schananas.reactivestockmarket.domain.Book;
 import com.github.schananas.reactivestockmarket.domain.BookAggregateRepository;
 import org.junit.jupiter.api.*;
 import org.mockito.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -58,7 +67,34 @@ class CommandBusTest {
                                               any(Instant.class),
                                               eq(OrderType.BUY),
                                               eq(BigDecimal.ONE),
-                                              eq(BigDecimal.ONE));
+                                              eq(BigDecimal.ONE),
+                                              eq(TimeInForce.GTC));
+    }
+
+    @Test
+    public void testRetriedCommandIsNotExecutedAgain() {
+        MakeOrderCommand command = order();
+        SourcingEvent first = commandBus.sendRetryableCommand(command).block(Duration.ofSeconds(5));
+
+        StepVerifier.create(commandBus.sendRetryableCommand(command))
+                    .expectNext(first)
+                    .verifyComplete();
+        verify(matchingEngineMock, times(1)).placeOrder(anyLong(), anyString(), any(Instant.class),
+                                                        any(OrderType.class), any(BigDecimal.class),
+                                                        any(BigDecimal.class), any());
+        assertEquals(1, commandBus.duplicateCommands());
+    }
+
+    @Test
+    public void testServerIssuedCommandIsNotRemembered() {
+        MakeOrderCommand command = order();
+        commandBus.sendCommand(command).block(Duration.ofSeconds(5));
+        commandBus.sendCommand(command).block(Duration.ofSeconds(5));
+
+        verify(matchingEngineMock, times(2)).placeOrder(anyLong(), anyString(), any(Instant.class),
+                                                        any(OrderType.class), any(BigDecimal.class),
+                                                        any(BigDecimal.class), any());
+        assertEquals(0, commandBus.duplicateCommands());
     }
 
     @Test
@@ -92,9 +128,12 @@ class CommandBusTest {
                                                         any(Instant.class),
                                                         orderTypeCaptor.capture(),
                                                         priceCaptor.capture(),
-                                                        amountCaptor.capture());
+                                                        amountCaptor.capture(),
+                                                        eq(TimeInForce.GTC));
 
-        assertEquals(orderIdCaptor.getAllValues(), List.of(1L, 2L, 3L));
+        //order ids are global across books, other test classes might have generated some already
+        long firstOrderId = orderIdCaptor.getAllValues().get(0);
+        assertEquals(orderIdCaptor.getAllValues(), List.of(firstOrderId, firstOrderId + 1, firstOrderId + 2));
         assertEquals(orderTypeCaptor.getAllValues(), List.of(OrderType.BUY, OrderType.SELL, OrderType.BUY));
         assertEquals(amountCaptor.getAllValues(), List.of(BigDecimal.ONE, BigDecimal.ONE, BigDecimal.valueOf(2)));
         assertEquals(priceCaptor.getAllValues(), List.of(BigDecimal.ONE, BigDecimal.valueOf(2), BigDecimal.valueOf(2)));
@@ -113,7 +152,23 @@ class CommandBusTest {
         verify(matchingEngineMock, times(0)).placeOrder(anyLong(),
                                                         anyString(),
                                                         any(Instant.class),
-                                                        any(), any(BigDecimal.class), any(BigDecimal.class));
+                                                        any(), any(BigDecimal.class), any(BigDecimal.class), any());
+    }
+
+    @Test
+    public void testMakeOrderCommandExceedingPrecision() {
+        StepVerifier.create(commandBus.sendCommand(new MakeOrderCommand("instrumentId",
+                                                                        UUID.randomUUID(),
+                                                                        OrderType.BUY,
+                                                                        BigDecimal.ONE,
+                                                                        new BigDecimal("1.000000001"))))
+                    .expectErrorMatches(err -> err instanceof IllegalStateException
+                            && err.getMessage().startsWith("Amount/Price exceeds instrument precision!"))
+                    .verify();
+        verify(matchingEngineMock, times(0)).placeOrder(anyLong(),
+                                                        anyString(),
+                                                        any(Instant.class),
+                                                        any(), any(BigDecimal.class), any(BigDecimal.class), any());
     }
 
     @Test
@@ -159,4 +214,185 @@ class CommandBusTest {
                     .verify();
         verify(matchingEngineMock, times(0)).cancel(anyLong(), anyString(), any(BigDecimal.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testRejectedCommandDoesNotStopBus() {
+        StepVerifier.create(commandBus.sendCommand(new MakeOrderCommand("instrumentId",
+                                                                        UUID.randomUUID(),
+                                                                        OrderType.BUY,
+                                                                        BigDecimal.valueOf(-1),
+                                                                        BigDecimal.ONE)))
+                    .expectError(IllegalStateException.class)
+                    .verify();
+        StepVerifier.create(commandBus.sendCommand(new CancelOrderCommand("instrumentId",
+                                                                          UUID.randomUUID(),
+                                                                          1,
+                                                                          true,
+                                                                          BigDecimal.ZERO)))
+                    .expectNextCount(1)
+                    .verifyComplete();
+        verify(matchingEngineMock).cancelAll(1, "instrumentId");
+    }
+
+    @Test
+    public void testMoreAssetsThanShards() {
+        BookAggregateRepository aggregateRepositoryMock = mock(BookAggregateRepository.class);
+        ConcurrentHashMap<String, Book> books = new ConcurrentHashMap<>();
+        when(aggregateRepositoryMock.load(anyString())).thenAnswer(invocation -> Mono.just(books.computeIfAbsent(
+                invocation.getArgument(0), asset -> new Book(asset, matchingEngineMock))));
+        CommandBus shardedBus = new CommandBus(aggregateRepositoryMock, CommandBusSpec.sharded(2));
+        try {
+            StepVerifier.create(Flux.range(0, 500)
+                                    .flatMap(i -> shardedBus.sendCommand(new MakeOrderCommand("asset-" + i,
+                                                                                              UUID.randomUUID(),
+                                                                                              OrderType.BUY,
+                                                                                              BigDecimal.ONE,
+                                                                                              BigDecimal.ONE))))
+                        .expectNextCount(500)
+                        .verifyComplete();
+            assertEquals(500, books.size());
+        } finally {
+            shardedBus.destroy();
+        }
+    }
+
+    @Test
+    public void testCancelOvertakesQueuedOrders() throws InterruptedException {
+        List<String> executed = new CopyOnWriteArrayList<>();
+        CountDownLatch executing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            executing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            executed.add("order");
+            return null;
+        }).when(matchingEngineMock).placeOrder(anyLong(), anyString(), any(Instant.class), any(OrderType.class),
+                                               any(BigDecimal.class), any(BigDecimal.class), any());
+        //orders queued behind the first one are placed as one batch
+        doAnswer(invocation -> {
+            List<?> batch = invocation.getArgument(0);
+            batch.forEach(order -> executed.add("order"));
+            return null;
+        }).when(matchingEngineMock).placeOrders(anyList());
+        doAnswer(invocation -> executed.add("cancel")).when(matchingEngineMock).cancelAll(anyLong(), anyString());
+        BookAggregateRepository aggregateRepositoryMock = mock(BookAggregateRepository.class);
+        when(aggregateRepositoryMock.load("instrumentId"))
+                .thenReturn(Mono.just(new Book("instrumentId", matchingEngineMock)));
+        CommandBus shardedBus = new CommandBus(aggregateRepositoryMock, CommandBusSpec.sharded(1));
+        try {
+            Mono<?> first = shardedBus.sendCommand(order()).cache();
+            first.subscribe();
+            assertTrue(executing.await(5, TimeUnit.SECONDS));
+            Mono<?> second = shardedBus.sendCommand(order()).cache();
+            second.subscribe();
+            Mono<?> cancel = shardedBus.sendCommand(new CancelOrderCommand("instrumentId",
+                                                                           UUID.randomUUID(),
+                                                                           1,
+                                                                           true,
+                                                                           BigDecimal.ZERO)).cache();
+            cancel.subscribe();
+
+            release.countDown();
+            StepVerifier.create(Mono.when(first, second, cancel))
+                        .verifyComplete();
+            assertEquals(List.of("order", "cancel", "order"), executed);
+        } finally {
+            release.countDown();
+            shardedBus.destroy();
+        }
+    }
+
+    @Test
+    public void testCancelDoesNotOvertakeQueuedReplaceOfOrder() throws InterruptedException {
+        List<String> executed = new CopyOnWriteArrayList<>();
+        CountDownLatch executing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            executing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            executed.add("order");
+            return null;
+        }).when(matchingEngineMock).placeOrder(anyLong(), anyString(), any(Instant.class), any(OrderType.class),
+                                               any(BigDecimal.class), any(BigDecimal.class), any());
+        doAnswer(invocation -> executed.add("replace")).when(matchingEngineMock)
+                                                       .replace(anyLong(), anyString(), any(Instant.class),
+                                                                any(BigDecimal.class), any(BigDecimal.class));
+        doAnswer(invocation -> executed.add("cancel")).when(matchingEngineMock)
+                                                      .cancel(anyLong(), anyString(), any(BigDecimal.class));
+        BookAggregateRepository aggregateRepositoryMock = mock(BookAggregateRepository.class);
+        when(aggregateRepositoryMock.load("instrumentId"))
+                .thenReturn(Mono.just(new Book("instrumentId", matchingEngineMock)));
+        CommandBus shardedBus = new CommandBus(aggregateRepositoryMock, CommandBusSpec.sharded(1));
+        try {
+            Mono<?> first = shardedBus.sendCommand(order()).cache();
+            first.subscribe();
+            assertTrue(executing.await(5, TimeUnit.SECONDS));
+            Mono<?> replace = shardedBus.sendCommand(new ReplaceOrderCommand("instrumentId",
+                                                                             UUID.randomUUID(),
+                                                                             1,
+                                                                             BigDecimal.ONE,
+                                                                             BigDecimal.TEN)).cache();
+            replace.subscribe();
+            Mono<?> cancel = shardedBus.sendCommand(new CancelOrderCommand("instrumentId",
+                                                                           UUID.randomUUID(),
+                                                                           1,
+                                                                           false,
+                                                                           BigDecimal.valueOf(5))).cache();
+            cancel.subscribe();
+
+            release.countDown();
+            StepVerifier.create(Mono.when(first, replace, cancel))
+                        .verifyComplete();
+            assertEquals(List.of("order", "replace", "cancel"), executed);
+        } finally {
+            release.countDown();
+            shardedBus.destroy();
+        }
+    }
+
+    @Test
+    public void testQueuedCommandsOfAggregateExecutedAsBatch() throws InterruptedException {
+        CountDownLatch executing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            executing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(matchingEngineMock).placeOrder(anyLong(), anyString(), any(Instant.class), any(OrderType.class),
+                                               any(BigDecimal.class), any(BigDecimal.class), any());
+        BookAggregateRepository aggregateRepositoryMock = mock(BookAggregateRepository.class);
+        when(aggregateRepositoryMock.load("instrumentId"))
+                .thenReturn(Mono.just(new Book("instrumentId", matchingEngineMock)));
+        CommandBus shardedBus = new CommandBus(aggregateRepositoryMock, CommandBusSpec.sharded(1));
+        try {
+            Mono<?> first = shardedBus.sendCommand(order()).cache();
+            first.subscribe();
+            assertTrue(executing.await(5, TimeUnit.SECONDS));
+            Mono<SourcingEvent> second = shardedBus.sendCommand(order()).cache();
+            second.subscribe();
+            Mono<SourcingEvent> invalid = shardedBus.sendCommand(new MakeOrderCommand("instrumentId",
+                                                                                      UUID.randomUUID(),
+                                                                                      OrderType.BUY,
+                                                                                      BigDecimal.ZERO,
+                                                                                      BigDecimal.ONE)).cache();
+            invalid.subscribe();
+            Mono<SourcingEvent> third = shardedBus.sendCommand(order()).cache();
+            third.subscribe();
+
+            release.countDown();
+            StepVerifier.create(invalid)
+                        .expectError(IllegalStateException.class)
+                        .verify(Duration.ofSeconds(5));
+            OrderAcceptedEvent secondAccepted = (OrderAcceptedEvent) second.block(Duration.ofSeconds(5));
+            OrderAcceptedEvent thirdAccepted = (OrderAcceptedEvent) third.block(Duration.ofSeconds(5));
+            verify(matchingEngineMock).placeOrders(List.of(secondAccepted, thirdAccepted));
+        } finally {
+            release.countDown();
+            shardedBus.destroy();
+        }
+    }
+
+    private static MakeOrderCommand order() {
+        return new MakeOrderCommand("instrumentId", UUID.randomUUID(), OrderType.BUY, BigDecimal.ONE, BigDecimal.ONE);
+    }
+}
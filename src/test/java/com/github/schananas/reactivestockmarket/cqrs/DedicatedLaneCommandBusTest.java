@@ -0,0 +1,189 @@
+package com.github.schananas.reactivestockmarket.cqrs;
+
+import com.github.schananas.reactivestockmarket.domain.Book;
+import com.github.schananas.reactivestockmarket.domain.BookAggregateRepository;
+import com.github.schananas.reactivestockmarket.domain.bus.CommandBus;
+import com.github.schananas.reactivestockmarket.domain.bus.CommandBusSpec;
+import com.github.schananas.reactivestockmarket.domain.bus.CommandRejectedException;
+import com.github.schananas.reactivestockmarket.domain.command.CancelOrderCommand;
+import com.github.schananas.reactivestockmarket.domain.command.MakeOrderCommand;
+import com.github.schananas.reactivestockmarket.domain.engine.MatchingEngine;
+import com.github.schananas.reactivestockmarket.domain.engine.WaitStrategy;
+import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+import org.junit.jupiter.api.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Stefan Dragisic
+ */
+class DedicatedLaneCommandBusTest {
+
+    private final List<String> threads = new CopyOnWriteArrayList<>();
+    private final List<Long> orderIds = new CopyOnWriteArrayList<>();
+    private CommandBus commandBus;
+
+    @BeforeEach
+    public void setUp() {
+        BookAggregateRepository aggregateRepositoryMock = mock(BookAggregateRepository.class);
+        MatchingEngine matchingEngineMock = mock(MatchingEngine.class);
+        doAnswer(invocation -> {
+            threads.add(Thread.currentThread().getName());
+            orderIds.add(invocation.getArgument(0));
+            return null;
+        }).when(matchingEngineMock).placeOrder(anyLong(), anyString(), any(Instant.class), any(OrderType.class),
+                                               any(BigDecimal.class), any(BigDecimal.class), any());
+        when(aggregateRepositoryMock.load("instrumentId"))
+                .thenReturn(Mono.just(new Book("instrumentId", matchingEngineMock)));
+        commandBus = new CommandBus(aggregateRepositoryMock, CommandBusSpec.dedicated(2, WaitStrategy.YIELD));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        commandBus.destroy();
+    }
+
+    @Test
+    public void aggregateOwnedBySingleLaneThread() {
+        StepVerifier.create(Flux.range(1, 100)
+                                .concatMap(i -> commandBus.sendCommand(order(BigDecimal.ONE))))
+                    .expectNextCount(100)
+                    .verifyComplete();
+
+        assertEquals(100, threads.size());
+        assertEquals(1, threads.stream().distinct().count());
+        assertTrue(threads.get(0).startsWith("command-lane-"));
+        assertEquals(orderIds.stream().sorted().toList(), orderIds);
+    }
+
+    @Test
+    public void rejectedCommandDoesNotStopLane() {
+        StepVerifier.create(commandBus.sendCommand(order(BigDecimal.valueOf(-1))))
+                    .expectError(IllegalStateException.class)
+                    .verify();
+        StepVerifier.create(commandBus.sendCommand(order(BigDecimal.ONE)))
+                    .expectNextCount(1)
+                    .verifyComplete();
+        assertEquals(1, threads.size());
+    }
+
+    @Test
+    public void commandSentAfterShutdownGivesBackItsAdmission() {
+        commandBus.destroy();
+
+        StepVerifier.create(commandBus.sendCommand(order(BigDecimal.ONE)))
+                    .expectError(IllegalStateException.class)
+                    .verify();
+        assertEquals(0, commandBus.queueDepth());
+    }
+
+    @Test
+    public void fullLaneRejectsCommandAsOverloaded() throws InterruptedException {
+        BookAggregateRepository aggregateRepositoryMock = mock(BookAggregateRepository.class);
+        MatchingEngine matchingEngineMock = mock(MatchingEngine.class);
+        CountDownLatch executing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            executing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(matchingEngineMock).placeOrder(anyLong(), anyString(), any(Instant.class), any(OrderType.class),
+                                               any(BigDecimal.class), any(BigDecimal.class), any());
+        when(aggregateRepositoryMock.load("instrumentId"))
+                .thenReturn(Mono.just(new Book("instrumentId", matchingEngineMock)));
+        CommandBus boundedBus = new CommandBus(aggregateRepositoryMock,
+                                               CommandBusSpec.dedicated(1, WaitStrategy.YIELD).withQueueDepth(1));
+        try {
+            Mono<?> first = sendOrder(boundedBus).cache();
+            first.subscribe();
+            assertTrue(executing.await(5, TimeUnit.SECONDS));
+            Mono<?> second = sendOrder(boundedBus).cache();
+            second.subscribe();
+
+            StepVerifier.create(sendOrder(boundedBus))
+                        .expectErrorMatches(e -> e instanceof CommandRejectedException rejected
+                                && rejected.rejection().cause().equals(CommandRejectedException.OVERLOADED)
+                                && rejected.rejection().type() == OrderType.BUY)
+                        .verify();
+            assertEquals(1, boundedBus.queueDepth());
+            assertEquals(1, boundedBus.rejectedCommands());
+
+            release.countDown();
+            StepVerifier.create(first.then(second))
+                        .expectNextCount(1)
+                        .verifyComplete();
+            assertEquals(0, boundedBus.queueDepth());
+        } finally {
+            release.countDown();
+            boundedBus.destroy();
+        }
+    }
+
+    @Test
+    public void cancelOvertakesQueuedOrders() throws InterruptedException {
+        BookAggregateRepository aggregateRepositoryMock = mock(BookAggregateRepository.class);
+        MatchingEngine matchingEngineMock = mock(MatchingEngine.class);
+        List<String> executed = new CopyOnWriteArrayList<>();
+        CountDownLatch executing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            executing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            executed.add("order");
+            return null;
+        }).when(matchingEngineMock).placeOrder(anyLong(), anyString(), any(Instant.class), any(OrderType.class),
+                                               any(BigDecimal.class), any(BigDecimal.class), any());
+        //orders queued behind the first one are placed as one batch
+        doAnswer(invocation -> {
+            List<?> batch = invocation.getArgument(0);
+            batch.forEach(order -> executed.add("order"));
+            return null;
+        }).when(matchingEngineMock).placeOrders(anyList());
+        doAnswer(invocation -> executed.add("cancel")).when(matchingEngineMock).cancelAll(anyLong(), anyString());
+        when(aggregateRepositoryMock.load("instrumentId"))
+                .thenReturn(Mono.just(new Book("instrumentId", matchingEngineMock)));
+        CommandBus priorityBus = new CommandBus(aggregateRepositoryMock,
+                                                CommandBusSpec.dedicated(1, WaitStrategy.YIELD));
+        try {
+            Mono<?> first = sendOrder(priorityBus).cache();
+            first.subscribe();
+            assertTrue(executing.await(5, TimeUnit.SECONDS));
+            Mono<?> second = sendOrder(priorityBus).cache();
+            second.subscribe();
+            Mono<?> cancel = priorityBus.sendCommand(new CancelOrderCommand("instrumentId",
+                                                                            UUID.randomUUID(),
+                                                                            1,
+                                                                            true,
+                                                                            BigDecimal.ZERO)).cache();
+            cancel.subscribe();
+
+            release.countDown();
+            StepVerifier.create(Mono.when(first, second, cancel))
+                        .verifyComplete();
+            assertEquals(List.of("order", "cancel", "order"), executed);
+        } finally {
+            release.countDown();
+            priorityBus.destroy();
+        }
+    }
+
+    private static Mono<?> sendOrder(CommandBus bus) {
+        return bus.sendCommand(order(BigDecimal.ONE));
+    }
+
+    private static MakeOrderCommand order(BigDecimal amount) {
+        return new MakeOrderCommand("instrumentId", UUID.randomUUID(), OrderType.BUY, amount, BigDecimal.ONE);
+    }
+}
@@ -1,7 +1,9 @@
 package com.github.schananas.reactivestockmarket.domain;
 
+import com.github.schananas.reactivestockmarket.domain.engine.events.OrderExecutedEvent;
 import com.github.schananas.reactivestockmarket.domain.engine.events.OrderMatchedEvent;
 import com.github.schananas.reactivestockmarket.domain.engine.events.OrderPlacedEvent;
+import com.github.schananas.reactivestockmarket.domain.engine.events.OrderReplacedEvent;
 import com.github.schananas.reactivestockmarket.domain.query.BookQueryRepository;
 import com.github.schananas.reactivestockmarket.domain.query.OrderType;
 import org.junit.jupiter.api.*;
@@ -9,6 +11,7 @@ import reactor.test.StepVerifier;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.List;
 
 /**
  * @author Stefan Dragisic
@@ -40,6 +43,78 @@ class BookQueryRepositoryTest {
                     .verifyComplete();
     }
 
+    @Test
+    void testOrderReplacedProjection() {
+        StepVerifier.create(testSubject.updateProjection(new OrderPlacedEvent(1L,
+                                                                              "BTC",
+                                                                              Instant.MIN,
+                                                                              OrderType.SELL,
+                                                                              BigDecimal.valueOf(10),
+                                                                              BigDecimal.valueOf(100)))
+                                       .then(testSubject.updateProjection(
+                                               new OrderReplacedEvent(1L,
+                                                                      "BTC",
+                                                                      Instant.MIN,
+                                                                      OrderType.SELL,
+                                                                      BigDecimal.valueOf(10),
+                                                                      BigDecimal.valueOf(11),
+                                                                      BigDecimal.valueOf(100),
+                                                                      BigDecimal.valueOf(50),
+                                                                      false)))
+                                       .then(testSubject.getProjection(1L)))
+                    .expectNextMatches(orderEntry -> orderEntry.orderId() == 1L
+                            && orderEntry.price().compareTo(BigDecimal.valueOf(11)) == 0
+                            && orderEntry.amount().compareTo(BigDecimal.valueOf(100)) == 0
+                            && orderEntry.pendingAmount().compareTo(BigDecimal.valueOf(50)) == 0
+                    )
+                    .verifyComplete();
+    }
+
+    @Test
+    void testOrderExecutedProjection() {
+        StepVerifier.create(testSubject.updateProjection(new OrderPlacedEvent(1L,
+                                                                              "BTC",
+                                                                              Instant.MIN,
+                                                                              OrderType.SELL,
+                                                                              BigDecimal.valueOf(10),
+                                                                              BigDecimal.valueOf(40)))
+                                       .then(testSubject.updateProjection(new OrderPlacedEvent(2L,
+                                                                                               "BTC",
+                                                                                               Instant.MIN,
+                                                                                               OrderType.SELL,
+                                                                                               BigDecimal.valueOf(10),
+                                                                                               BigDecimal.valueOf(60))))
+                                       .then(testSubject.updateProjection(
+                                               new OrderExecutedEvent(3L,
+                                                                      "BTC",
+                                                                      Instant.MAX,
+                                                                      OrderType.BUY,
+                                                                      BigDecimal.valueOf(10),
+                                                                      BigDecimal.valueOf(50),
+                                                                      List.of(new OrderExecutedEvent.Fill(
+                                                                                      1L,
+                                                                                      BigDecimal.valueOf(10),
+                                                                                      BigDecimal.valueOf(20),
+                                                                                      BigDecimal.valueOf(20)),
+                                                                              new OrderExecutedEvent.Fill(
+                                                                                      2L,
+                                                                                      BigDecimal.valueOf(10),
+                                                                                      BigDecimal.valueOf(30),
+                                                                                      BigDecimal.valueOf(30))))))
+                                       .thenMany(testSubject.getProjection(3L)
+                                                            .concatWith(testSubject.getProjection(2L))))
+                    .expectNextMatches(orderEntry -> orderEntry.orderId() == 3L
+                            && orderEntry.direction() == OrderType.BUY
+                            && orderEntry.pendingAmount().compareTo(BigDecimal.ZERO) == 0
+                            && orderEntry.trades().size() == 2
+                    )
+                    .expectNextMatches(orderEntry -> orderEntry.orderId() == 2L
+                            && orderEntry.pendingAmount().compareTo(BigDecimal.valueOf(30)) == 0
+                            && orderEntry.trades().stream().allMatch(t -> t.orderId() == 3L
+                            && t.amount().compareTo(BigDecimal.valueOf(30)) == 0)
+                    )
+                    .verifyComplete();
+    }
 
     @Test
     void stockTest() {
@@ -0,0 +1,314 @@
+package com.github.schananas.reactivestockmarket.domain;
+
+import com.github.schananas.reactivestockmarket.cqrs.Command;
+import com.github.schananas.reactivestockmarket.cqrs.PrevalidatedCommand;
+import com.github.schananas.reactivestockmarket.cqrs.SourcingEvent;
+import com.github.schananas.reactivestockmarket.domain.command.BulkQuoteCommand;
+import com.github.schananas.reactivestockmarket.domain.command.CancelOrderCommand;
+import com.github.schananas.reactivestockmarket.domain.command.ExpireOrdersCommand;
+import com.github.schananas.reactivestockmarket.domain.command.MakeOrderCommand;
+import com.github.schananas.reactivestockmarket.domain.command.ReplaceOrderCommand;
+import com.github.schananas.reactivestockmarket.domain.command.UncrossAuctionCommand;
+import com.github.schananas.reactivestockmarket.domain.engine.AuctionSpec;
+import com.github.schananas.reactivestockmarket.domain.engine.InstrumentSpec;
+import com.github.schananas.reactivestockmarket.domain.engine.MatchingEngine;
+import com.github.schananas.reactivestockmarket.domain.engine.QuoteLevel;
+import com.github.schananas.reactivestockmarket.domain.events.CancellationRequestedEvent;
+import com.github.schananas.reactivestockmarket.domain.events.OrderAcceptedEvent;
+import com.github.schananas.reactivestockmarket.domain.events.OrderRejectedEvent;
+import com.github.schananas.reactivestockmarket.domain.events.QuoteRequestedEvent;
+import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+import com.github.schananas.reactivestockmarket.domain.query.TimeInForce;
+import org.junit.jupiter.api.*;
+import org.mockito.InOrder;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Stefan Dragisic
+ */
+class BookTest {
+
+    private final MatchingEngine matchingEngineMock = mock(MatchingEngine.class);
+    private final Book testSubject = new Book("instrumentId", matchingEngineMock);
+
+    @Test
+    public void routeEventsBatchesConsecutiveOrders() {
+        OrderAcceptedEvent first = accepted(1);
+        OrderAcceptedEvent second = accepted(2);
+        OrderAcceptedEvent third = accepted(3);
+        CancellationRequestedEvent cancel = new CancellationRequestedEvent("instrumentId",
+                                                                           UUID.randomUUID(),
+                                                                           1,
+                                                                           true,
+                                                                           BigDecimal.ZERO);
+
+        StepVerifier.create(testSubject.routeEvents(List.of(first, second, cancel, third)))
+                    .verifyComplete();
+
+        InOrder inOrder = inOrder(matchingEngineMock);
+        inOrder.verify(matchingEngineMock).placeOrders(List.of(first, second));
+        inOrder.verify(matchingEngineMock).cancelAll(1, "instrumentId");
+        inOrder.verify(matchingEngineMock).placeOrders(List.of(third));
+        verifyNoMoreInteractions(matchingEngineMock);
+    }
+
+    @Test
+    public void routeEventsCoalescesConsecutiveCancellationsOfOrder() {
+        OrderAcceptedEvent order = accepted(4);
+        List<SourcingEvent> batch = List.of(order,
+                                            cancellation(1, false, new BigDecimal("5")),
+                                            cancellation(2, false, new BigDecimal("3")),
+                                            cancellation(1, false, new BigDecimal("2")),
+                                            cancellation(2, false, new BigDecimal("4")),
+                                            cancellation(1, true, BigDecimal.ZERO),
+                                            cancellation(1, false, new BigDecimal("1")));
+
+        StepVerifier.create(testSubject.routeEvents(batch))
+                    .verifyComplete();
+
+        InOrder inOrder = inOrder(matchingEngineMock);
+        inOrder.verify(matchingEngineMock).placeOrders(List.of(order));
+        inOrder.verify(matchingEngineMock).cancelAll(1, "instrumentId");
+        inOrder.verify(matchingEngineMock).cancel(2, "instrumentId", new BigDecimal("3"));
+        verifyNoMoreInteractions(matchingEngineMock);
+    }
+
+    @Test
+    public void prevalidatedOrderIsPublishedWhenRouted() {
+        Command prevalidated = testSubject.prevalidate(new MakeOrderCommand("instrumentId",
+                                                                            UUID.randomUUID(),
+                                                                            OrderType.BUY,
+                                                                            BigDecimal.ONE,
+                                                                            BigDecimal.TEN));
+
+        PrevalidatedCommand cmd = Assertions.assertInstanceOf(PrevalidatedCommand.class, prevalidated);
+        Assertions.assertFalse(cmd.isRejected());
+        OrderAcceptedEvent accepted = Assertions.assertInstanceOf(OrderAcceptedEvent.class, cmd.event());
+        StepVerifier.create(testSubject.routeCommand(cmd))
+                    .expectNext(accepted)
+                    .verifyComplete();
+        verifyNoInteractions(matchingEngineMock);
+    }
+
+    @Test
+    public void prevalidationRejectsInvalidCancellation() {
+        Command prevalidated = testSubject.prevalidate(new CancelOrderCommand("instrumentId",
+                                                                              UUID.randomUUID(),
+                                                                              1,
+                                                                              false,
+                                                                              BigDecimal.ZERO));
+
+        PrevalidatedCommand cmd = Assertions.assertInstanceOf(PrevalidatedCommand.class, prevalidated);
+        Assertions.assertTrue(cmd.isRejected());
+        Assertions.assertNull(cmd.event());
+        StepVerifier.create(testSubject.routeCommand(cmd))
+                    .expectErrorMessage("Cancellation: new amount can't be <= 0!")
+                    .verify();
+    }
+
+    @Test
+    public void routeEventsRejectsUnsupportedBatch() {
+        List<SourcingEvent> batch = List.of(accepted(1),
+                                            new OrderRejectedEvent("instrumentId",
+                                                                   UUID.randomUUID(),
+                                                                   OrderType.BUY,
+                                                                   BigDecimal.ONE,
+                                                                   BigDecimal.ONE,
+                                                                   "rejected"));
+
+        StepVerifier.create(testSubject.routeEvents(batch))
+                    .expectError(RuntimeException.class)
+                    .verify();
+        verifyNoInteractions(matchingEngineMock);
+    }
+
+    @Test
+    public void auctionClaimedOncePerInterval() {
+        Book auctionBook = new Book("instrumentId",
+                                    InstrumentSpec.DEFAULT.withAuction(AuctionSpec.every(Duration.ofMinutes(1))),
+                                    matchingEngineMock);
+        Instant due = Instant.now().plus(Duration.ofMinutes(1));
+
+        Assertions.assertFalse(auctionBook.claimAuction(Instant.now()));
+        Assertions.assertTrue(auctionBook.claimAuction(due));
+        Assertions.assertFalse(auctionBook.claimAuction(due));
+        Assertions.assertFalse(testSubject.claimAuction(due));
+
+        StepVerifier.create(auctionBook.routeCommand(new UncrossAuctionCommand("instrumentId", UUID.randomUUID()))
+                                       .flatMap(auctionBook::routeEvent))
+                    .verifyComplete();
+        verify(matchingEngineMock).uncross(eq("instrumentId"), any(Instant.class));
+        Assertions.assertFalse(auctionBook.claimAuction(due));
+    }
+
+    @Test
+    public void auctionRejectsImmediateOrders() {
+        Book auctionBook = new Book("instrumentId",
+                                    InstrumentSpec.DEFAULT.withAuction(AuctionSpec.every(Duration.ofMinutes(1))),
+                                    matchingEngineMock);
+
+        StepVerifier.create(auctionBook.routeCommand(new MakeOrderCommand("instrumentId",
+                                                                          UUID.randomUUID(),
+                                                                          OrderType.BUY,
+                                                                          BigDecimal.ONE,
+                                                                          BigDecimal.ONE,
+                                                                          TimeInForce.IOC)))
+                    .expectError(IllegalStateException.class)
+                    .verify();
+    }
+
+    @Test
+    public void auctionRejectsStopMarketOrders() {
+        Book auctionBook = new Book("instrumentId",
+                                    InstrumentSpec.DEFAULT.withAuction(AuctionSpec.every(Duration.ofMinutes(1))),
+                                    matchingEngineMock);
+
+        StepVerifier.create(auctionBook.routeCommand(new MakeOrderCommand("instrumentId",
+                                                                          UUID.randomUUID(),
+                                                                          OrderType.BUY,
+                                                                          BigDecimal.ONE,
+                                                                          BigDecimal.ZERO,
+                                                                          TimeInForce.GTC,
+                                                                          BigDecimal.TEN)))
+                    .expectError(IllegalStateException.class)
+                    .verify();
+        StepVerifier.create(auctionBook.routeCommand(new MakeOrderCommand("instrumentId",
+                                                                          UUID.randomUUID(),
+                                                                          OrderType.BUY,
+                                                                          BigDecimal.ONE,
+                                                                          BigDecimal.TEN,
+                                                                          TimeInForce.GTC,
+                                                                          BigDecimal.TEN)))
+                    .expectNextMatches(OrderAcceptedEvent.class::isInstance)
+                    .verifyComplete();
+    }
+
+    @Test
+    public void gtdOrderExpiresThroughCommand() {
+        Instant expireTime = Instant.now().plus(Duration.ofMinutes(1));
+        MakeOrderCommand gtd = new MakeOrderCommand("instrumentId",
+                                                    UUID.randomUUID(),
+                                                    OrderType.BUY,
+                                                    BigDecimal.ONE,
+                                                    BigDecimal.ONE,
+                                                    TimeInForce.GTD,
+                                                    null,
+                                                    expireTime);
+
+        Instant due = expireTime.plusMillis(10);
+        Assertions.assertFalse(testSubject.claimExpiry(due));
+        OrderAcceptedEvent accepted = (OrderAcceptedEvent) testSubject.routeCommand(gtd).block();
+        testSubject.routeEvent(accepted).block();
+        Assertions.assertFalse(testSubject.claimExpiry(Instant.now()));
+        Assertions.assertTrue(testSubject.claimExpiry(due));
+        Assertions.assertFalse(testSubject.claimExpiry(due));
+
+        StepVerifier.create(testSubject.routeCommand(new ExpireOrdersCommand("instrumentId",
+                                                                             UUID.randomUUID(),
+                                                                             Instant.now()))
+                                       .flatMap(testSubject::routeEvent))
+                    .verifyComplete();
+        verify(matchingEngineMock, never()).expire(anyString(), any());
+
+        StepVerifier.create(testSubject.routeCommand(new ExpireOrdersCommand("instrumentId",
+                                                                             UUID.randomUUID(),
+                                                                             due))
+                                       .flatMap(testSubject::routeEvent))
+                    .verifyComplete();
+        verify(matchingEngineMock).expire("instrumentId", new long[]{accepted.orderId()});
+        Assertions.assertFalse(testSubject.claimExpiry(due.plus(Duration.ofDays(1))));
+    }
+
+    @Test
+    public void replacedGtdOrderExpiresAtOriginalExpireTime() {
+        Instant expireTime = Instant.now().plus(Duration.ofMinutes(1));
+        OrderAcceptedEvent accepted = (OrderAcceptedEvent) testSubject.routeCommand(
+                new MakeOrderCommand("instrumentId",
+                                     UUID.randomUUID(),
+                                     OrderType.BUY,
+                                     BigDecimal.ONE,
+                                     BigDecimal.ONE,
+                                     TimeInForce.GTD,
+                                     null,
+                                     expireTime)).block();
+        testSubject.routeEvent(accepted).block();
+        SourcingEvent replaced = testSubject.routeCommand(new ReplaceOrderCommand("instrumentId",
+                                                                                  UUID.randomUUID(),
+                                                                                  accepted.orderId(),
+                                                                                  BigDecimal.valueOf(2),
+                                                                                  BigDecimal.ONE)).block();
+        testSubject.routeEvent(replaced).block();
+
+        Instant due = expireTime.plusMillis(10);
+        Assertions.assertTrue(testSubject.claimExpiry(due));
+        StepVerifier.create(testSubject.routeCommand(new ExpireOrdersCommand("instrumentId",
+                                                                             UUID.randomUUID(),
+                                                                             due))
+                                       .flatMap(testSubject::routeEvent))
+                    .verifyComplete();
+        verify(matchingEngineMock).expire("instrumentId", new long[]{accepted.orderId()});
+    }
+
+    @Test
+    public void gtdOrderNeedsFutureExpireTime() {
+        StepVerifier.create(testSubject.routeCommand(new MakeOrderCommand("instrumentId",
+                                                                          UUID.randomUUID(),
+                                                                          OrderType.BUY,
+                                                                          BigDecimal.ONE,
+                                                                          BigDecimal.ONE,
+                                                                          TimeInForce.GTD,
+                                                                          null,
+                                                                          Instant.now().minusSeconds(1))))
+                    .expectError(IllegalStateException.class)
+                    .verify();
+    }
+
+    @Test
+    public void bulkQuoteAssignsOrderIdPerLevel() {
+        List<QuoteLevel> levels = List.of(new QuoteLevel(OrderType.BUY, BigDecimal.valueOf(99), BigDecimal.ONE),
+                                          new QuoteLevel(OrderType.SELL, BigDecimal.valueOf(101), BigDecimal.ONE));
+        QuoteRequestedEvent quote = (QuoteRequestedEvent) testSubject.routeCommand(
+                new BulkQuoteCommand("instrumentId", UUID.randomUUID(), "mm-1", levels)).block();
+
+        Assertions.assertEquals(2, quote.orderIds().length);
+        Assertions.assertNotEquals(quote.orderIds()[0], quote.orderIds()[1]);
+        StepVerifier.create(testSubject.routeEvent(quote))
+                    .verifyComplete();
+        verify(matchingEngineMock).quote("mm-1", "instrumentId", quote.timestamp(), levels, quote.orderIds());
+    }
+
+    @Test
+    public void bulkQuoteRejectsCrossedLevels() {
+        List<QuoteLevel> levels = List.of(new QuoteLevel(OrderType.BUY, BigDecimal.valueOf(101), BigDecimal.ONE),
+                                          new QuoteLevel(OrderType.SELL, BigDecimal.valueOf(101), BigDecimal.ONE));
+
+        StepVerifier.create(testSubject.routeCommand(new BulkQuoteCommand("instrumentId",
+                                                                          UUID.randomUUID(),
+                                                                          "mm-1",
+                                                                          levels)))
+                    .expectError(IllegalStateException.class)
+                    .verify();
+    }
+
+    private static OrderAcceptedEvent accepted(long orderId) {
+        return new OrderAcceptedEvent("instrumentId",
+                                      UUID.randomUUID(),
+                                      orderId,
+                                      OrderType.BUY,
+                                      BigDecimal.ONE,
+                                      BigDecimal.ONE,
+                                      Instant.now());
+    }
+
+    private static CancellationRequestedEvent cancellation(long orderId, boolean cancelAll, BigDecimal newAmount) {
+        return new CancellationRequestedEvent("instrumentId", UUID.randomUUID(), orderId, cancelAll, newAmount);
+    }
+}
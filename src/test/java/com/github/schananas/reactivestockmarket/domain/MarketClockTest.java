@@ -0,0 +1,73 @@
+package com.github.schananas.reactivestockmarket.domain;
+
+import com.github.schananas.reactivestockmarket.domain.bus.CommandBus;
+import com.github.schananas.reactivestockmarket.domain.bus.CommandBusSpec;
+import com.github.schananas.reactivestockmarket.domain.command.MakeOrderCommand;
+import com.github.schananas.reactivestockmarket.domain.engine.AuctionSpec;
+import com.github.schananas.reactivestockmarket.domain.engine.InstrumentSpec;
+import com.github.schananas.reactivestockmarket.domain.engine.MatchingEngine;
+import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+import org.junit.jupiter.api.*;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Stefan Dragisic
+ */
+class MarketClockTest {
+
+    @Test
+    public void auctionRunsOnceRejectedUncrossFindsCapacity() throws InterruptedException {
+        MatchingEngine matchingEngineMock = mock(MatchingEngine.class);
+        CountDownLatch executing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            executing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(matchingEngineMock).placeOrder(anyLong(), anyString(), any(Instant.class), any(OrderType.class),
+                                               any(BigDecimal.class), any(BigDecimal.class), any());
+        Book book = new Book("instrumentId",
+                             InstrumentSpec.DEFAULT.withAuction(AuctionSpec.every(Duration.ofMinutes(1))),
+                             matchingEngineMock);
+        BookAggregateRepository aggregateRepositoryMock = mock(BookAggregateRepository.class);
+        when(aggregateRepositoryMock.load("instrumentId")).thenReturn(Mono.just(book));
+        when(aggregateRepositoryMock.aggregates()).thenReturn(List.of(book));
+        CommandBus boundedBus = new CommandBus(aggregateRepositoryMock, CommandBusSpec.sharded(1).withQueueDepth(1));
+        MarketClock clock = new MarketClock(boundedBus, aggregateRepositoryMock, 50);
+        Instant due = Instant.now().plus(Duration.ofMinutes(1));
+        try {
+            Mono<?> first = boundedBus.sendCommand(order()).cache();
+            first.subscribe();
+            assertTrue(executing.await(5, TimeUnit.SECONDS));
+            Mono<?> second = boundedBus.sendCommand(order()).cache();
+            second.subscribe();
+
+            clock.tick(due);
+            assertEquals(1, boundedBus.rejectedCommands());
+            verify(matchingEngineMock, never()).uncross(anyString(), any(Instant.class));
+
+            release.countDown();
+            first.then(second).block(Duration.ofSeconds(5));
+            clock.tick(due);
+            verify(matchingEngineMock, timeout(5000)).uncross(eq("instrumentId"), any(Instant.class));
+        } finally {
+            release.countDown();
+            boundedBus.destroy();
+        }
+    }
+
+    private static MakeOrderCommand order() {
+        return new MakeOrderCommand("instrumentId", UUID.randomUUID(), OrderType.BUY, BigDecimal.ONE, BigDecimal.ONE);
+    }
+}
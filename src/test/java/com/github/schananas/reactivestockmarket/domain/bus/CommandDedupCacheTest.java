@@ -0,0 +1,67 @@
+package com.github.schananas.reactivestockmarket.domain.bus;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * @author Stefan Dragisic
+ */
+class CommandDedupCacheTest {
+
+    @Test
+    public void remembersOutcomeOfCommand() {
+        CommandDedupCache<String> cache = new CommandDedupCache<>(64, 60_000);
+        UUID commandId = UUID.randomUUID();
+
+        assertNull(cache.putIfAbsent(commandId, "first"));
+        assertEquals("first", cache.putIfAbsent(commandId, "retry"));
+        assertNull(cache.putIfAbsent(UUID.randomUUID(), "other"));
+    }
+
+    @Test
+    public void forgetsOldestCommandsOverCapacity() {
+        CommandDedupCache<Integer> cache = new CommandDedupCache<>(16, 60_000);
+        List<UUID> commandIds = IntStream.range(0, 10_000).mapToObj(i -> UUID.randomUUID()).toList();
+        IntStream.range(0, commandIds.size()).forEach(i -> assertNull(cache.putIfAbsent(commandIds.get(i), i)));
+
+        assertEquals(commandIds.size() - 1, cache.putIfAbsent(commandIds.get(commandIds.size() - 1), -1));
+        assertNull(cache.putIfAbsent(commandIds.get(0), -1));
+    }
+
+    @Test
+    public void forgetsCommandsOutsideWindow() {
+        AtomicLong now = new AtomicLong();
+        CommandDedupCache<String> cache = new CommandDedupCache<>(64, 10, now::get);
+        UUID commandId = UUID.randomUUID();
+        cache.putIfAbsent(commandId, "first");
+
+        now.set(10);
+        assertEquals("first", cache.putIfAbsent(commandId, "retry"));
+
+        now.set(11);
+        assertNull(cache.putIfAbsent(commandId, "retry"));
+        assertEquals("retry", cache.putIfAbsent(commandId, "another retry"));
+    }
+
+    @Test
+    public void removedCommandDoesNotHideOthers() {
+        CommandDedupCache<UUID> cache = new CommandDedupCache<>(16384, 60_000);
+        List<UUID> commandIds = IntStream.range(0, 4096).mapToObj(i -> UUID.randomUUID()).toList();
+        commandIds.forEach(commandId -> cache.putIfAbsent(commandId, commandId));
+
+        IntStream.range(0, commandIds.size())
+                 .filter(i -> i % 2 == 0)
+                 .forEach(i -> cache.remove(commandIds.get(i), commandIds.get(i)));
+
+        IntStream.range(0, commandIds.size())
+                 .forEach(i -> assertEquals(i % 2 == 0 ? null : commandIds.get(i),
+                                            cache.putIfAbsent(commandIds.get(i), UUID.randomUUID())));
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.schananas.reactivestockmarket.domain.bus;
+
+import com.github.schananas.reactivestockmarket.domain.command.MakeOrderCommand;
+import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author Stefan Dragisic
+ */
+class CommandShardTest {
+
+    @Test
+    public void resumesInOrderAfterAsynchronousExecution() {
+        List<CommandWrapper> commands = IntStream.range(0, 100)
+                                                 .mapToObj(i -> new CommandWrapper(new MakeOrderCommand(
+                                                         "BTC",
+                                                         UUID.randomUUID(),
+                                                         OrderType.BUY,
+                                                         BigDecimal.valueOf(i),
+                                                         BigDecimal.ONE), 0))
+                                                 .toList();
+        List<Integer> executed = new CopyOnWriteArrayList<>();
+        CommandShard shard = new CommandShard(Schedulers.parallel().createWorker(), 8, batch -> {
+            List<CommandWrapper> executing = List.copyOf(batch);
+            Mono<Void> execution = Mono.fromRunnable(() -> executing.forEach(command -> {
+                executed.add(commands.indexOf(command));
+                command.signalError(new IllegalStateException("done"));
+            }));
+            //every other batch completes on another thread
+            return commands.indexOf(executing.get(0)) % 2 == 0
+                    ? execution
+                    : Mono.delay(Duration.ofMillis(1)).then(execution);
+        });
+        try {
+            commands.forEach(shard::submit);
+
+            StepVerifier.create(commands.get(99).result())
+                        .expectError(IllegalStateException.class)
+                        .verify(Duration.ofSeconds(5));
+            assertEquals(IntStream.range(0, 100).boxed().toList(), executed);
+        } finally {
+            shard.shutdown();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.schananas.reactivestockmarket.domain.bus;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * @author Stefan Dragisic
+ */
+class LaneBalancerTest {
+
+    private static void execute(LaneBalancer balancer, String aggregateId, long busyNanos) {
+        balancer.acquire(aggregateId);
+        balancer.release(aggregateId, busyNanos);
+    }
+
+    @Test
+    public void hotAggregateGetsDedicatedLane() {
+        LaneBalancer balancer = new LaneBalancer(4);
+        List<String> cold = List.of("ETH", "SOL", "ADA", "DOT", "XRP", "LTC", "BNB", "TRX");
+        execute(balancer, "BTC", 1_000_000);
+        cold.forEach(aggregateId -> execute(balancer, aggregateId, 10_000));
+
+        balancer.rebalance();
+
+        assertEquals(1, balancer.hotAggregates());
+        int hotLane = balancer.lane("BTC");
+        cold.forEach(aggregateId -> assertNotEquals(hotLane, balancer.lane(aggregateId)));
+        //new aggregates are not hashed onto dedicated lane either
+        assertNotEquals(hotLane, balancer.acquire("DOGE"));
+    }
+
+    @Test
+    public void concurrentSendersKeepInFlightCount() throws InterruptedException {
+        LaneBalancer balancer = new LaneBalancer(2);
+        //both are hashed onto the same lane
+        execute(balancer, "A", 100_000);
+        int lane = balancer.acquire("C");
+        assertEquals(lane, balancer.lane("A"));
+        List<Thread> senders = IntStream.range(0, 4)
+                                        .mapToObj(i -> new Thread(() -> {
+                                            for (int j = 0; j < 10_000; j++) {
+                                                execute(balancer, "C", 1);
+                                            }
+                                        }))
+                                        .toList();
+        senders.forEach(Thread::start);
+        for (Thread sender : senders) {
+            sender.join();
+        }
+
+        balancer.rebalance();
+        assertEquals(lane, balancer.lane("C"));
+        assertEquals(0, balancer.handoffs());
+
+        balancer.release("C", 0);
+        assertEquals(1 - lane, balancer.lane("C"));
+        assertEquals(1, balancer.handoffs());
+    }
+
+    @Test
+    public void aggregateChangesLaneOnlyOnceQuiescent() {
+        LaneBalancer balancer = new LaneBalancer(2);
+        //both are hashed onto the same lane
+        execute(balancer, "A", 150);
+        execute(balancer, "C", 100);
+        int lane = balancer.lane("C");
+        assertEquals(lane, balancer.lane("A"));
+
+        assertEquals(lane, balancer.acquire("C"));
+        balancer.rebalance();
+
+        assertEquals(lane, balancer.lane("A"));
+        assertEquals(lane, balancer.lane("C"));
+        assertEquals(lane, balancer.acquire("C"));
+        assertEquals(0, balancer.handoffs());
+
+        balancer.release("C", 0);
+        balancer.release("C", 0);
+        assertEquals(1 - lane, balancer.lane("C"));
+        assertEquals(1, balancer.handoffs());
+    }
+}
@@ -0,0 +1,14 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+/**
+ * Runs {@link MatchingEngineTest} against {@link ArenaOrderStore}, sized small enough for arena to grow.
+ *
+ * @author Stefan Dragisic
+ */
+class ArenaMatchingEngineTest extends MatchingEngineTest {
+
+    @Override
+    MatchingEngine createTestSubject() {
+        return new MatchingEngine(InstrumentSpec.DEFAULT.withOrderStore(2, OrderStore.Type.ARENA));
+    }
+}
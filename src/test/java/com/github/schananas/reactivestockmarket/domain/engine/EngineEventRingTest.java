@@ -0,0 +1,135 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+import com.github.schananas.reactivestockmarket.cqrs.UpdateEvent;
+import com.github.schananas.reactivestockmarket.domain.engine.events.OrderCanceledEvent;
+import com.github.schananas.reactivestockmarket.domain.engine.events.OrderPlacedEvent;
+import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * @author Stefan Dragisic
+ */
+class EngineEventRingTest {
+
+    private static InstrumentSpec spec(int ringSize, SlowConsumerPolicy policy) {
+        return new InstrumentSpec(2, 0).withEventRing(new EventRingSpec(ringSize, policy, WaitStrategy.YIELD));
+    }
+
+    @Test
+    public void wrapsAroundInOrder() {
+        MatchingEngine engine = new MatchingEngine(spec(4, SlowConsumerPolicy.BLOCK));
+
+        StepVerifier.create(engine.engineEvents().take(20))
+                    .expectSubscription()
+                    .then(() -> LongStream.rangeClosed(1, 10).forEach(id -> {
+                        engine.placeOrder(id, "BTC", Instant.MIN, OrderType.BUY, 100, 1);
+                        engine.cancelAll(id, "BTC");
+                    }))
+                    .expectNextSequence(LongStream.rangeClosed(1, 10)
+                                                  .boxed()
+                                                  .flatMap(id -> Stream.of(
+                                                          new OrderPlacedEvent(id,
+                                                                               "BTC",
+                                                                               Instant.MIN,
+                                                                               OrderType.BUY,
+                                                                               new BigDecimal("1.00"),
+                                                                               BigDecimal.ONE),
+                                                          new OrderCanceledEvent(id,
+                                                                                 "BTC",
+                                                                                 OrderType.BUY,
+                                                                                 BigDecimal.ONE,
+                                                                                 BigDecimal.ZERO)))
+                                                  .toList())
+                    .expectComplete()
+                    .verify(Duration.ofSeconds(5));
+
+        Assertions.assertEquals(19, engine.eventRing().cursor());
+    }
+
+    @Test
+    public void disconnectsSlowConsumer() {
+        MatchingEngine engine = new MatchingEngine(spec(4, SlowConsumerPolicy.DISCONNECT));
+
+        StepVerifier.create(engine.engineEvents(), 0)
+                    .expectSubscription()
+                    .then(() -> LongStream.rangeClosed(1, 10)
+                                          .forEach(id -> engine.placeOrder(id,
+                                                                           "BTC",
+                                                                           Instant.MIN,
+                                                                           OrderType.SELL,
+                                                                           100 + id,
+                                                                           1)))
+                    .expectError(SlowConsumerException.class)
+                    .verify(Duration.ofSeconds(5));
+
+        Assertions.assertEquals(1, engine.eventRing().disconnectedConsumers());
+        Assertions.assertEquals(0, engine.eventRing().consumerCount());
+    }
+
+    @Test
+    public void blockingConsumerGetsEveryEventWhileSlowConsumerIsDisconnected() throws Exception {
+        MatchingEngine engine = new MatchingEngine(spec(4, SlowConsumerPolicy.DISCONNECT));
+        CompletableFuture<List<Long>> projected = engine.engineEvents(SlowConsumerPolicy.BLOCK)
+                                                        .take(10)
+                                                        .map(event -> ((OrderPlacedEvent) event).orderId())
+                                                        .collectList()
+                                                        .toFuture();
+
+        StepVerifier.create(engine.engineEvents(), 0)
+                    .expectSubscription()
+                    .then(() -> LongStream.rangeClosed(1, 10)
+                                          .forEach(id -> engine.placeOrder(id,
+                                                                           "BTC",
+                                                                           Instant.MIN,
+                                                                           OrderType.SELL,
+                                                                           100 + id,
+                                                                           1)))
+                    .expectError(SlowConsumerException.class)
+                    .verify(Duration.ofSeconds(5));
+
+        Assertions.assertEquals(LongStream.rangeClosed(1, 10).boxed().toList(), projected.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, engine.eventRing().disconnectedConsumers());
+    }
+
+    @Test
+    public void blockingConsumerIsWokenWhileOperationOutgrowsRing() throws Exception {
+        MatchingEngine engine = new MatchingEngine(spec(4, SlowConsumerPolicy.BLOCK));
+        CompletableFuture<List<UpdateEvent>> projected = engine.engineEvents(SlowConsumerPolicy.BLOCK)
+                                                               .take(20)
+                                                               .collectList()
+                                                               .toFuture();
+
+        CompletableFuture.runAsync(() -> {
+            LongStream.rangeClosed(1, 10)
+                      .forEach(id -> engine.placeOrder(id, "BTC", Instant.MIN, OrderType.SELL, 100 + id, 1));
+            //single operation publishes more events than ring holds
+            engine.placeOrder(11, "BTC", Instant.MIN, OrderType.BUY, 110, 10);
+        }).get(5, TimeUnit.SECONDS);
+
+        Assertions.assertEquals(20, projected.get(5, TimeUnit.SECONDS).size());
+        Assertions.assertEquals(19, engine.eventRing().cursor());
+        Assertions.assertTrue(engine.eventRing().producerWaits() > 0);
+    }
+
+    @Test
+    public void producerDoesNotWaitWithoutConsumers() {
+        MatchingEngine engine = new MatchingEngine(spec(2, SlowConsumerPolicy.BLOCK));
+
+        LongStream.rangeClosed(1, 10)
+                  .forEach(id -> engine.placeOrder(id, "BTC", Instant.MIN, OrderType.SELL, 100 + id, 1));
+
+        Assertions.assertEquals(9, engine.eventRing().cursor());
+        Assertions.assertEquals(0, engine.eventRing().producerWaits());
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+import org.junit.jupiter.api.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Stefan Dragisic
+ */
+class LongObjectHashMapTest {
+
+    @Test
+    public void putGetRemove() {
+        LongObjectHashMap<String> testSubject = new LongObjectHashMap<>(4);
+
+        assertNull(testSubject.put(1L, "a"));
+        assertNull(testSubject.put(-1L, "b"));
+        assertEquals("a", testSubject.put(1L, "c"));
+
+        assertEquals(2, testSubject.size());
+        assertEquals("c", testSubject.get(1L));
+        assertEquals("b", testSubject.remove(-1L));
+        assertNull(testSubject.get(-1L));
+        assertNull(testSubject.remove(-1L));
+        assertEquals(1, testSubject.size());
+    }
+
+    @Test
+    public void matchesHashMapUnderChurn() {
+        LongObjectHashMap<Long> testSubject = new LongObjectHashMap<>(16);
+        Map<Long, Long> reference = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100_000; i++) {
+            long key = random.nextInt(512);
+            if (random.nextBoolean()) {
+                assertEquals(reference.put(key, (long) i), testSubject.put(key, (long) i));
+            } else {
+                assertEquals(reference.remove(key), testSubject.remove(key));
+            }
+        }
+
+        assertEquals(reference.size(), testSubject.size());
+        for (long key = 0; key < 512; key++) {
+            assertEquals(reference.get(key), testSubject.get(key));
+        }
+    }
+}
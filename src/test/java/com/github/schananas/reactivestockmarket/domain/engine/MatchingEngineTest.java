@@ -1,22 +1,38 @@
 package com.github.schananas.reactivestockmarket.domain.engine;
 
 
+import com.github.schananas.reactivestockmarket.domain.engine.events.AuctionFillEvent;
+import com.github.schananas.reactivestockmarket.domain.engine.events.AuctionUncrossedEvent;
 import com.github.schananas.reactivestockmarket.domain.engine.events.OrderCanceledEvent;
+import com.github.schananas.reactivestockmarket.domain.engine.events.OrderExecutedEvent;
 import com.github.schananas.reactivestockmarket.domain.engine.events.OrderMatchedEvent;
 import com.github.schananas.reactivestockmarket.domain.engine.events.OrderPlacedEvent;
+import com.github.schananas.reactivestockmarket.domain.engine.events.OrderReplacedEvent;
+import com.github.schananas.reactivestockmarket.domain.engine.events.OrdersMassCanceledEvent;
+import com.github.schananas.reactivestockmarket.domain.engine.events.StopOrderPlacedEvent;
+import com.github.schananas.reactivestockmarket.domain.engine.events.StopOrderTriggeredEvent;
+import com.github.schananas.reactivestockmarket.domain.events.OrderAcceptedEvent;
 import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+import com.github.schananas.reactivestockmarket.domain.query.TimeInForce;
 import org.junit.jupiter.api.*;
 import reactor.test.StepVerifier;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
 
 /**
  * @author Stefan Dragisic
  */
 class MatchingEngineTest {
 
-    private final MatchingEngine testSubject = new MatchingEngine();
+    private final MatchingEngine testSubject = createTestSubject();
+
+    MatchingEngine createTestSubject() {
+        return new MatchingEngine();
+    }
 
     @Test
     public void stockTest() {
@@ -557,4 +573,521 @@ class MatchingEngineTest {
                     .expectComplete()
                     .verify();
     }
+
+    @Test
+    public void fixedPointScale() {
+        MatchingEngine engine = new MatchingEngine(new InstrumentSpec(2, 0));
+        StepVerifier.create(engine.engineEvents().take(2))
+                    .expectSubscription()
+                    .then(() -> engine.placeOrder(1, "BTC", Instant.MIN, OrderType.SELL, 1005L, 20L))
+                    .then(() -> engine.placeOrder(2,
+                                                  "BTC",
+                                                  Instant.MIN,
+                                                  OrderType.BUY,
+                                                  BigDecimal.valueOf(10.05),
+                                                  BigDecimal.valueOf(5)))
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderPlacedEvent
+                            && ((OrderPlacedEvent) orderEvent).price().compareTo(BigDecimal.valueOf(10.05)) == 0
+                            && ((OrderPlacedEvent) orderEvent).amount().compareTo(BigDecimal.valueOf(20)) == 0)
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderMatchedEvent
+                            && ((OrderMatchedEvent) orderEvent).restingPrice().compareTo(BigDecimal.valueOf(10.05)) == 0
+                            && ((OrderMatchedEvent) orderEvent).restingRemainingAmount()
+                                                               .compareTo(BigDecimal.valueOf(15)) == 0)
+                    .expectComplete()
+                    .verify();
+    }
+
+    @Test
+    public void sweepLevelInTimePriority() {
+        StepVerifier.create(testSubject.engineEvents().take(7))
+                    .expectSubscription()
+                    .then(() -> testSubject.placeOrder(1, "BTC", Instant.MIN, OrderType.SELL, 1000L, 10L))
+                    .then(() -> testSubject.placeOrder(2, "BTC", Instant.MIN, OrderType.SELL, 1000L, 10L))
+                    .then(() -> testSubject.placeOrder(3, "BTC", Instant.MIN, OrderType.SELL, 1001L, 10L))
+                    .then(() -> testSubject.placeOrder(4, "BTC", Instant.MIN, OrderType.SELL, 1000L, 10L))
+                    .then(() -> testSubject.placeOrder(5, "BTC", Instant.MIN, OrderType.BUY, 1001L, 35L))
+                    .expectNextCount(4)
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderMatchedEvent
+                            && ((OrderMatchedEvent) orderEvent).restingId() == 1)
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderMatchedEvent
+                            && ((OrderMatchedEvent) orderEvent).restingId() == 2)
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderMatchedEvent
+                            && ((OrderMatchedEvent) orderEvent).restingId() == 4)
+                    .expectComplete()
+                    .verify();
+    }
+
+    @Test
+    public void cancelWithinLevel() {
+        StepVerifier.create(testSubject.engineEvents().take(8))
+                    .expectSubscription()
+                    .then(() -> testSubject.placeOrder(1, "BTC", Instant.MIN, OrderType.BUY, 1000L, 10L))
+                    .then(() -> testSubject.placeOrder(2, "BTC", Instant.MIN, OrderType.BUY, 1000L, 10L))
+                    .then(() -> testSubject.placeOrder(3, "BTC", Instant.MIN, OrderType.BUY, 1000L, 10L))
+                    .then(() -> testSubject.cancelAll(2, "BTC"))
+                    .then(() -> testSubject.cancelAll(1, "BTC"))
+                    .then(() -> testSubject.placeOrder(4, "BTC", Instant.MIN, OrderType.BUY, 1000L, 10L))
+                    .then(() -> testSubject.placeOrder(5, "BTC", Instant.MIN, OrderType.SELL, 1000L, 15L))
+                    .expectNextCount(3)
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderCanceledEvent
+                            && ((OrderCanceledEvent) orderEvent).orderId() == 2)
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderCanceledEvent
+                            && ((OrderCanceledEvent) orderEvent).orderId() == 1)
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderPlacedEvent)
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderMatchedEvent
+                            && ((OrderMatchedEvent) orderEvent).restingId() == 3)
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderMatchedEvent
+                            && ((OrderMatchedEvent) orderEvent).restingId() == 4
+                            && ((OrderMatchedEvent) orderEvent).restingRemainingAmount().signum() > 0)
+                    .expectComplete()
+                    .verify();
+    }
+
+    @Test
+    public void placeOrdersBatch() {
+        StepVerifier.create(testSubject.engineEvents().take(5))
+                    .expectSubscription()
+                    .then(() -> testSubject.placeOrders(List.of(accepted(1, OrderType.SELL, 10, 10),
+                                                                accepted(2, OrderType.SELL, 11, 10),
+                                                                accepted(1, OrderType.SELL, 10, 10),
+                                                                accepted(3, OrderType.BUY, 11, 15),
+                                                                accepted(4, OrderType.BUY, 9, 5))))
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderPlacedEvent
+                            && ((OrderPlacedEvent) orderEvent).orderId() == 1)
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderPlacedEvent
+                            && ((OrderPlacedEvent) orderEvent).orderId() == 2)
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderMatchedEvent
+                            && ((OrderMatchedEvent) orderEvent).restingId() == 1)
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderMatchedEvent
+                            && ((OrderMatchedEvent) orderEvent).restingId() == 2
+                            && ((OrderMatchedEvent) orderEvent).restingRemainingAmount()
+                                                               .compareTo(BigDecimal.valueOf(5)) == 0)
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderPlacedEvent
+                            && ((OrderPlacedEvent) orderEvent).orderId() == 4)
+                    .expectComplete()
+                    .verify();
+    }
+
+    @Test
+    public void immediateOrCancelNeverRests() {
+        StepVerifier.create(testSubject.engineEvents().take(5))
+                    .expectSubscription()
+                    .then(() -> testSubject.placeOrder(1, "BTC", Instant.MIN, OrderType.SELL, 1000L, 10L))
+                    .then(() -> testSubject.placeOrder(2, "BTC", Instant.MIN, OrderType.BUY, 1000L, 15L,
+                                                       TimeInForce.IOC))
+                    .then(() -> testSubject.placeOrder(3, "BTC", Instant.MIN, OrderType.BUY, 1000L, 5L,
+                                                       TimeInForce.IOC))
+                    .then(() -> testSubject.placeOrder(4, "BTC", Instant.MIN, OrderType.SELL, 1000L, 5L))
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderPlacedEvent)
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderMatchedEvent
+                            && ((OrderMatchedEvent) orderEvent).incomingId() == 2)
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderCanceledEvent
+                            && ((OrderCanceledEvent) orderEvent).orderId() == 2
+                            && ((OrderCanceledEvent) orderEvent).canceledAmount()
+                                                                .compareTo(testSubject.spec().amount(5)) == 0
+                            && ((OrderCanceledEvent) orderEvent).remainingAmount().signum() == 0)
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderCanceledEvent
+                            && ((OrderCanceledEvent) orderEvent).orderId() == 3)
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderPlacedEvent
+                            && ((OrderPlacedEvent) orderEvent).orderId() == 4)
+                    .expectComplete()
+                    .verify();
+    }
+
+    @Test
+    public void fillOrKill() {
+        StepVerifier.create(testSubject.engineEvents().take(6))
+                    .expectSubscription()
+                    .then(() -> testSubject.placeOrder(1, "BTC", Instant.MIN, OrderType.SELL, 1000L, 10L))
+                    .then(() -> testSubject.placeOrder(2, "BTC", Instant.MIN, OrderType.SELL, 1001L, 10L))
+                    .then(() -> testSubject.placeOrder(3, "BTC", Instant.MIN, OrderType.BUY, 1000L, 15L,
+                                                       TimeInForce.FOK))
+                    .then(() -> testSubject.placeOrder(4, "BTC", Instant.MIN, OrderType.BUY, 1001L, 15L,
+                                                       TimeInForce.FOK))
+                    .expectNextCount(2)
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderCanceledEvent
+                            && ((OrderCanceledEvent) orderEvent).orderId() == 3
+                            && ((OrderCanceledEvent) orderEvent).canceledAmount()
+                                                                .compareTo(testSubject.spec().amount(15)) == 0)
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderMatchedEvent
+                            && ((OrderMatchedEvent) orderEvent).restingId() == 1
+                            && ((OrderMatchedEvent) orderEvent).incomingId() == 4)
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderMatchedEvent
+                            && ((OrderMatchedEvent) orderEvent).restingId() == 2
+                            && ((OrderMatchedEvent) orderEvent).restingRemainingAmount().signum() > 0)
+                    .then(() -> testSubject.cancelAll(2, "BTC"))
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderCanceledEvent
+                            && ((OrderCanceledEvent) orderEvent).orderId() == 2)
+                    .expectComplete()
+                    .verify();
+    }
+
+    @Test
+    public void batchAuctionUncrossesAtSingleClearingPrice() {
+        MatchingEngine engine = new MatchingEngine(new InstrumentSpec(0, 0).withAuction(AuctionSpec.every(
+                Duration.ofSeconds(1))));
+        StepVerifier.create(engine.engineEvents().take(11))
+                    .expectSubscription()
+                    .then(() -> engine.placeOrder(1, "BTC", Instant.MIN, OrderType.BUY, 102L, 10L))
+                    .then(() -> engine.placeOrder(2, "BTC", Instant.MIN, OrderType.BUY, 101L, 10L))
+                    .then(() -> engine.placeOrder(3, "BTC", Instant.MIN, OrderType.SELL, 100L, 5L))
+                    .then(() -> engine.placeOrder(4, "BTC", Instant.MIN, OrderType.SELL, 101L, 10L))
+                    .then(() -> engine.placeOrder(5, "BTC", Instant.MIN, OrderType.SELL, 103L, 5L))
+                    .expectNextCount(5)
+                    .then(() -> engine.uncross("BTC", Instant.MIN))
+                    .expectNext(new AuctionFillEvent(1, "BTC", OrderType.BUY, price(101), amount(10), amount(0)))
+                    .expectNext(new AuctionFillEvent(2, "BTC", OrderType.BUY, price(101), amount(5), amount(5)))
+                    .expectNext(new AuctionFillEvent(3, "BTC", OrderType.SELL, price(101), amount(5), amount(0)))
+                    .expectNext(new AuctionFillEvent(4, "BTC", OrderType.SELL, price(101), amount(10), amount(0)))
+                    .expectNext(new AuctionUncrossedEvent("BTC", Instant.MIN, price(101), amount(15)))
+                    .then(() -> engine.uncross("BTC", Instant.MIN))
+                    .then(() -> engine.placeOrder(6, "BTC", Instant.MIN, OrderType.SELL, 101L, 5L))
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderPlacedEvent
+                            && ((OrderPlacedEvent) orderEvent).orderId() == 6)
+                    .expectComplete()
+                    .verify();
+    }
+
+    @Test
+    public void stopOrderReleasedWhenTradeCrossesStopPrice() {
+        MatchingEngine engine = new MatchingEngine(new InstrumentSpec(0, 0));
+        StepVerifier.create(engine.engineEvents().take(8))
+                    .expectSubscription()
+                    .then(() -> engine.placeOrder(1, "BTC", Instant.MIN, OrderType.SELL, 101L, 5L))
+                    .then(() -> engine.placeOrder(2, "BTC", Instant.MIN, OrderType.SELL, 102L, 5L))
+                    .then(() -> engine.placeStopOrder(3, "BTC", Instant.MIN, OrderType.BUY, price(101), price(102),
+                                                      amount(5), TimeInForce.GTC))
+                    .then(() -> engine.placeStopOrder(4, "BTC", Instant.MIN, OrderType.SELL, price(99), null,
+                                                      amount(1), TimeInForce.GTC))
+                    .expectNextCount(2)
+                    .expectNext(new StopOrderPlacedEvent(3, "BTC", Instant.MIN, OrderType.BUY, price(101), price(102),
+                                                         amount(5)))
+                    .expectNext(new StopOrderPlacedEvent(4, "BTC", Instant.MIN, OrderType.SELL, price(99), null,
+                                                         amount(1)))
+                    .then(() -> engine.placeOrder(5, "BTC", Instant.MIN, OrderType.BUY, 101L, 5L))
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderMatchedEvent
+                            && ((OrderMatchedEvent) orderEvent).restingId() == 1)
+                    .expectNext(new StopOrderTriggeredEvent(3, "BTC", OrderType.BUY, price(101), price(101)))
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderMatchedEvent
+                            && ((OrderMatchedEvent) orderEvent).restingId() == 2
+                            && ((OrderMatchedEvent) orderEvent).incomingId() == 3)
+                    .then(() -> engine.cancelAll(4, "BTC"))
+                    .expectNext(new OrderCanceledEvent(4, "BTC", OrderType.SELL, amount(1), amount(0)))
+                    .expectComplete()
+                    .verify();
+    }
+
+    @Test
+    public void stopOrderReleasedByTradeWithinMultiLevelSweep() {
+        MatchingEngine engine = new MatchingEngine(new InstrumentSpec(0, 0));
+        StepVerifier.create(engine.engineEvents().take(8))
+                    .expectSubscription()
+                    .then(() -> engine.placeOrder(1, "BTC", Instant.MIN, OrderType.SELL, 100L, 1L))
+                    .then(() -> engine.placeOrder(2, "BTC", Instant.MIN, OrderType.SELL, 102L, 1L))
+                    .then(() -> engine.placeOrder(3, "BTC", Instant.MIN, OrderType.BUY, 99L, 1L))
+                    .then(() -> engine.placeStopOrder(4, "BTC", Instant.MIN, OrderType.SELL, price(101), null,
+                                                      amount(1), TimeInForce.GTC))
+                    .expectNextCount(4)
+                    .then(() -> engine.placeOrder(5, "BTC", Instant.MIN, OrderType.BUY, 102L, 2L))
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderMatchedEvent
+                            && ((OrderMatchedEvent) orderEvent).restingId() == 1)
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderMatchedEvent
+                            && ((OrderMatchedEvent) orderEvent).restingId() == 2)
+                    .expectNext(new StopOrderTriggeredEvent(4, "BTC", OrderType.SELL, price(101), price(100)))
+                    .expectNext(new OrderMatchedEvent(3,
+                                                      "BTC",
+                                                      Instant.MIN,
+                                                      4,
+                                                      OrderType.SELL,
+                                                      price(99),
+                                                      price(99),
+                                                      amount(1),
+                                                      amount(1),
+                                                      amount(0)))
+                    .expectComplete()
+                    .verify();
+    }
+
+    @Test
+    public void stopOrderCascade() {
+        MatchingEngine engine = new MatchingEngine(new InstrumentSpec(0, 0));
+        StepVerifier.create(engine.engineEvents().take(9))
+                    .expectSubscription()
+                    .then(() -> engine.placeOrder(1, "BTC", Instant.MIN, OrderType.BUY, 100L, 1L))
+                    .then(() -> engine.placeOrder(2, "BTC", Instant.MIN, OrderType.BUY, 98L, 1L))
+                    .then(() -> engine.placeStopOrder(3, "BTC", Instant.MIN, OrderType.SELL, price(100), null,
+                                                      amount(1), TimeInForce.GTC))
+                    .then(() -> engine.placeStopOrder(4, "BTC", Instant.MIN, OrderType.SELL, price(98), null,
+                                                      amount(1), TimeInForce.GTC))
+                    .expectNextCount(4)
+                    .then(() -> engine.placeOrder(5, "BTC", Instant.MIN, OrderType.SELL, 100L, 1L))
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderMatchedEvent
+                            && ((OrderMatchedEvent) orderEvent).restingId() == 1)
+                    .expectNext(new StopOrderTriggeredEvent(3, "BTC", OrderType.SELL, price(100), price(100)))
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderMatchedEvent
+                            && ((OrderMatchedEvent) orderEvent).restingId() == 2
+                            && ((OrderMatchedEvent) orderEvent).incomingId() == 3)
+                    .expectNext(new StopOrderTriggeredEvent(4, "BTC", OrderType.SELL, price(98), price(98)))
+                    .expectNext(new OrderCanceledEvent(4, "BTC", OrderType.SELL, amount(1), amount(0)))
+                    .expectComplete()
+                    .verify();
+    }
+
+    @Test
+    public void replaceKeepsPriorityWhenAmountDecreases() {
+        MatchingEngine engine = new MatchingEngine(new InstrumentSpec(0, 0));
+        Instant replacedAt = Instant.now();
+        StepVerifier.create(engine.engineEvents().take(5))
+                    .expectSubscription()
+                    .then(() -> engine.placeOrder(1, "BTC", Instant.MIN, OrderType.SELL, 100L, 5L))
+                    .then(() -> engine.placeOrder(2, "BTC", Instant.MIN, OrderType.SELL, 100L, 5L))
+                    .expectNextCount(2)
+                    .then(() -> engine.replace(1, "BTC", replacedAt, 100L, 3L))
+                    .expectNext(new OrderReplacedEvent(1, "BTC", replacedAt, OrderType.SELL, price(100), price(100),
+                                                       amount(5), amount(3), true))
+                    .then(() -> engine.placeOrder(3, "BTC", Instant.MIN, OrderType.BUY, 100L, 3L))
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderMatchedEvent
+                            && ((OrderMatchedEvent) orderEvent).restingId() == 1
+                            && ((OrderMatchedEvent) orderEvent).restingRemainingAmount().signum() == 0)
+                    .then(() -> engine.replace(2, "BTC", replacedAt, 100L, 5L))
+                    .then(() -> engine.replace(42, "BTC", replacedAt, 100L, 1L))
+                    .then(() -> engine.cancelAll(2, "BTC"))
+                    .expectNext(new OrderCanceledEvent(2, "BTC", OrderType.SELL, amount(5), amount(0)))
+                    .expectComplete()
+                    .verify();
+    }
+
+    @Test
+    public void replaceRepricesAndTradesUnderSameId() {
+        MatchingEngine engine = new MatchingEngine(new InstrumentSpec(0, 0));
+        Instant replacedAt = Instant.now();
+        StepVerifier.create(engine.engineEvents().take(6))
+                    .expectSubscription()
+                    .then(() -> engine.placeOrder(1, "BTC", Instant.MIN, OrderType.SELL, 102L, 2L))
+                    .then(() -> engine.placeOrder(2, "BTC", Instant.MIN, OrderType.BUY, 100L, 5L))
+                    .expectNextCount(2)
+                    .then(() -> engine.replace(2, "BTC", replacedAt, 102L, 6L))
+                    .expectNext(new OrderReplacedEvent(2, "BTC", replacedAt, OrderType.BUY, price(100), price(102),
+                                                       amount(5), amount(6), false))
+                    .expectNext(new OrderMatchedEvent(1, "BTC", replacedAt, 2, OrderType.BUY, price(102), price(102),
+                                                      amount(6), amount(2), amount(0)))
+                    .then(() -> engine.placeOrder(3, "BTC", Instant.MIN, OrderType.SELL, 102L, 1L))
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderMatchedEvent
+                            && ((OrderMatchedEvent) orderEvent).restingId() == 2
+                            && ((OrderMatchedEvent) orderEvent).restingRemainingAmount().equals(amount(3)))
+                    .then(() -> engine.cancelAll(2, "BTC"))
+                    .expectNext(new OrderCanceledEvent(2, "BTC", OrderType.BUY, amount(3), amount(0)))
+                    .expectComplete()
+                    .verify();
+    }
+
+    @Test
+    public void stopMarketOrderIsMarkedOnlyByMissingPrice() {
+        MatchingEngine engine = new MatchingEngine(new InstrumentSpec(0, 0));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                                () -> engine.placeStopOrder(1, "BTC", Instant.MIN, OrderType.SELL, price(99),
+                                                            BigDecimal.ZERO, amount(1), TimeInForce.GTC));
+
+        StepVerifier.create(engine.engineEvents().take(1))
+                    .expectSubscription()
+                    .then(() -> engine.placeOrders(List.of(new OrderAcceptedEvent("BTC",
+                                                                                  UUID.randomUUID(),
+                                                                                  2,
+                                                                                  OrderType.SELL,
+                                                                                  amount(1),
+                                                                                  BigDecimal.ZERO,
+                                                                                  Instant.MIN,
+                                                                                  TimeInForce.GTC,
+                                                                                  price(99)))))
+                    .expectNext(new StopOrderPlacedEvent(2, "BTC", Instant.MIN, OrderType.SELL, price(99), null,
+                                                         amount(1)))
+                    .expectComplete()
+                    .verify();
+    }
+
+    @Test
+    public void repricedOrderIsStillExpiredUnderSameId() {
+        MatchingEngine engine = new MatchingEngine(new InstrumentSpec(0, 0));
+        Instant replacedAt = Instant.now();
+        StepVerifier.create(engine.engineEvents().take(3))
+                    .expectSubscription()
+                    .then(() -> engine.placeOrder(1, "BTC", Instant.MIN, OrderType.BUY, 100L, 5L, TimeInForce.GTD))
+                    .expectNextCount(1)
+                    .then(() -> engine.replace(1, "BTC", replacedAt, 99L, 5L))
+                    .expectNext(new OrderReplacedEvent(1, "BTC", replacedAt, OrderType.BUY, price(100), price(99),
+                                                       amount(5), amount(5), false))
+                    .then(() -> engine.expire("BTC", new long[]{1}))
+                    .expectNext(new OrderCanceledEvent(1, "BTC", OrderType.BUY, amount(5), amount(0)))
+                    .expectComplete()
+                    .verify();
+    }
+
+    @Test
+    public void massCancelRemovesSideWithinPriceRange() {
+        MatchingEngine engine = new MatchingEngine(new InstrumentSpec(0, 0));
+        StepVerifier.create(engine.engineEvents().take(7))
+                    .expectSubscription()
+                    .then(() -> engine.placeOrder(1, "BTC", Instant.MIN, OrderType.BUY, 100L, 1L))
+                    .then(() -> engine.placeOrder(2, "BTC", Instant.MIN, OrderType.BUY, 99L, 2L))
+                    .then(() -> engine.placeOrder(3, "BTC", Instant.MIN, OrderType.BUY, 100L, 3L))
+                    .then(() -> engine.placeOrder(4, "BTC", Instant.MIN, OrderType.BUY, 97L, 4L))
+                    .then(() -> engine.placeOrder(5, "BTC", Instant.MIN, OrderType.SELL, 101L, 5L))
+                    .expectNextCount(5)
+                    .then(() -> engine.massCancel("BTC", OrderType.BUY, price(98), price(100)))
+                    .expectNext(new OrdersMassCanceledEvent("BTC", OrderType.BUY, List.of(
+                            new OrdersMassCanceledEvent.CanceledOrder(1, amount(1)),
+                            new OrdersMassCanceledEvent.CanceledOrder(3, amount(3)),
+                            new OrdersMassCanceledEvent.CanceledOrder(2, amount(2)))))
+                    .then(() -> engine.massCancel("BTC", OrderType.BUY, price(98), price(100)))
+                    .then(() -> engine.placeOrder(6, "BTC", Instant.MIN, OrderType.SELL, 97L, 4L))
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderMatchedEvent
+                            && ((OrderMatchedEvent) orderEvent).restingId() == 4)
+                    .expectComplete()
+                    .verify();
+    }
+
+    @Test
+    public void expireCancelsRestingAndPendingStopOrders() {
+        MatchingEngine engine = new MatchingEngine(new InstrumentSpec(0, 0));
+        StepVerifier.create(engine.engineEvents().take(5))
+                    .expectSubscription()
+                    .then(() -> engine.placeOrder(1, "BTC", Instant.MIN, OrderType.BUY, 100L, 1L, TimeInForce.GTD))
+                    .then(() -> engine.placeStopOrder(2, "BTC", Instant.MIN, OrderType.SELL, price(90), null,
+                                                      amount(2), TimeInForce.GTD))
+                    .expectNextCount(2)
+                    .then(() -> engine.expire("BTC", new long[]{1, 2, 3}))
+                    .expectNext(new OrderCanceledEvent(1, "BTC", OrderType.BUY, amount(1), amount(0)))
+                    .expectNext(new OrderCanceledEvent(2, "BTC", OrderType.SELL, amount(2), amount(0)))
+                    .then(() -> engine.expire("BTC", new long[]{1, 2}))
+                    .then(() -> engine.placeOrder(4, "BTC", Instant.MIN, OrderType.SELL, 100L, 1L))
+                    .expectNext(new OrderPlacedEvent(4, "BTC", Instant.MIN, OrderType.SELL, price(100), amount(1)))
+                    .expectComplete()
+                    .verify();
+    }
+
+    @Test
+    public void proRataSplitsLevelBetweenRestingOrders() {
+        MatchingEngine engine = new MatchingEngine(new InstrumentSpec(0, 0).withAllocation(AllocationPolicy.PRO_RATA));
+        StepVerifier.create(engine.engineEvents().take(6))
+                    .expectSubscription()
+                    .then(() -> engine.placeOrder(1, "BTC", Instant.MIN, OrderType.SELL, 100L, 10L))
+                    .then(() -> engine.placeOrder(2, "BTC", Instant.MIN, OrderType.SELL, 100L, 30L))
+                    .then(() -> engine.placeOrder(3, "BTC", Instant.MIN, OrderType.SELL, 100L, 60L))
+                    .then(() -> engine.placeOrder(4, "BTC", Instant.MIN, OrderType.SELL, 101L, 5L))
+                    .expectNextCount(4)
+                    .then(() -> engine.placeOrder(5, "BTC", Instant.MIN, OrderType.BUY, 100L, 50L))
+                    .expectNext(new OrderExecutedEvent(5, "BTC", Instant.MIN, OrderType.BUY, price(100), amount(50),
+                                                       List.of(fill(1, 100, 5, 5),
+                                                               fill(2, 100, 15, 15),
+                                                               fill(3, 100, 30, 30))))
+                    .then(() -> engine.placeOrder(6, "BTC", Instant.MIN, OrderType.BUY, 101L, 60L))
+                    .expectNext(new OrderExecutedEvent(6, "BTC", Instant.MIN, OrderType.BUY, price(101), amount(60),
+                                                       List.of(fill(1, 100, 5, 0),
+                                                               fill(2, 100, 15, 0),
+                                                               fill(3, 100, 30, 0),
+                                                               fill(4, 101, 5, 0))))
+                    .expectComplete()
+                    .verify();
+    }
+
+    @Test
+    public void proRataRoundingFavorsTimePriority() {
+        MatchingEngine engine = new MatchingEngine(new InstrumentSpec(0, 0).withAllocation(AllocationPolicy.PRO_RATA));
+        StepVerifier.create(engine.engineEvents().take(5))
+                    .expectSubscription()
+                    .then(() -> engine.placeOrder(1, "BTC", Instant.MIN, OrderType.BUY, 100L, 1L))
+                    .then(() -> engine.placeOrder(2, "BTC", Instant.MIN, OrderType.BUY, 100L, 1L))
+                    .then(() -> engine.placeOrder(3, "BTC", Instant.MIN, OrderType.BUY, 100L, 1L))
+                    .expectNextCount(3)
+                    .then(() -> engine.placeOrder(4, "BTC", Instant.MIN, OrderType.SELL, 100L, 2L))
+                    .expectNext(new OrderExecutedEvent(4, "BTC", Instant.MIN, OrderType.SELL, price(100), amount(2),
+                                                       List.of(fill(1, 100, 1, 0), fill(2, 100, 1, 0))))
+                    .then(() -> engine.placeOrder(5, "BTC", Instant.MIN, OrderType.SELL, 100L, 1L))
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderExecutedEvent executed
+                            && executed.fills().equals(List.of(fill(3, 100, 1, 0))))
+                    .expectComplete()
+                    .verify();
+    }
+
+    @Test
+    public void coalescedExecutionReportsSweepInSingleEvent() {
+        MatchingEngine engine = new MatchingEngine(new InstrumentSpec(0, 0)
+                                                           .withExecutionReports(ExecutionReports.COALESCED));
+        StepVerifier.create(engine.engineEvents().take(6))
+                    .expectSubscription()
+                    .then(() -> engine.placeOrder(1, "BTC", Instant.MIN, OrderType.BUY, 100L, 10L))
+                    .then(() -> engine.placeOrder(2, "BTC", Instant.MIN, OrderType.BUY, 100L, 20L))
+                    .then(() -> engine.placeOrder(3, "BTC", Instant.MIN, OrderType.BUY, 99L, 30L))
+                    .expectNextCount(3)
+                    .then(() -> engine.placeOrder(4, "BTC", Instant.MIN, OrderType.SELL, 99L, 40L))
+                    .expectNext(new OrderExecutedEvent(4, "BTC", Instant.MIN, OrderType.SELL, price(99), amount(40),
+                                                       List.of(fill(1, 100, 10, 0),
+                                                               fill(2, 100, 20, 0),
+                                                               fill(3, 99, 10, 20))))
+                    .then(() -> engine.placeOrder(5, "BTC", Instant.MIN, OrderType.SELL, 98L, 25L))
+                    .expectNext(new OrderExecutedEvent(5, "BTC", Instant.MIN, OrderType.SELL, price(98), amount(25),
+                                                       List.of(fill(3, 99, 20, 0))))
+                    .expectNext(new OrderPlacedEvent(5, "BTC", Instant.MIN, OrderType.SELL, price(98), amount(5)))
+                    .expectComplete()
+                    .verify();
+    }
+
+    @Test
+    public void quoteAppliedAsDiffAgainstRestingLevels() {
+        MatchingEngine engine = new MatchingEngine(new InstrumentSpec(0, 0));
+        StepVerifier.create(engine.engineEvents().take(9))
+                    .expectSubscription()
+                    .then(() -> engine.quote("mm", "BTC", Instant.MIN,
+                                             List.of(quoteLevel(OrderType.BUY, 99, 5),
+                                                     quoteLevel(OrderType.BUY, 98, 5),
+                                                     quoteLevel(OrderType.SELL, 101, 5)),
+                                             new long[]{1, 2, 3}))
+                    .expectNext(new OrderPlacedEvent(1, "BTC", Instant.MIN, OrderType.BUY, price(99), amount(5)))
+                    .expectNext(new OrderPlacedEvent(2, "BTC", Instant.MIN, OrderType.BUY, price(98), amount(5)))
+                    .expectNext(new OrderPlacedEvent(3, "BTC", Instant.MIN, OrderType.SELL, price(101), amount(5)))
+                    .then(() -> engine.placeOrder(10, "BTC", Instant.MIN, OrderType.BUY, 99L, 1L))
+                    .expectNextCount(1)
+                    .then(() -> engine.quote("mm", "BTC", Instant.MIN,
+                                             List.of(quoteLevel(OrderType.BUY, 99, 3),
+                                                     quoteLevel(OrderType.SELL, 101, 5),
+                                                     quoteLevel(OrderType.SELL, 102, 5)),
+                                             new long[]{4, 5, 6}))
+                    .expectNext(new OrderCanceledEvent(2, "BTC", OrderType.BUY, amount(5), amount(0)))
+                    .expectNext(new OrderReplacedEvent(1, "BTC", Instant.MIN, OrderType.BUY, price(99), price(99),
+                                                       amount(5), amount(3), true))
+                    .expectNext(new OrderPlacedEvent(6, "BTC", Instant.MIN, OrderType.SELL, price(102), amount(5)))
+                    .then(() -> engine.placeOrder(11, "BTC", Instant.MIN, OrderType.SELL, 99L, 4L))
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderMatchedEvent matched
+                            && matched.restingId() == 1)
+                    .expectNextMatches(orderEvent -> orderEvent instanceof OrderMatchedEvent matched
+                            && matched.restingId() == 10)
+                    .expectComplete()
+                    .verify();
+    }
+
+    private static QuoteLevel quoteLevel(OrderType type, long price, long amount) {
+        return new QuoteLevel(type, price(price), amount(amount));
+    }
+
+    private static OrderExecutedEvent.Fill fill(long restingId, long price, long amount, long remainingAmount) {
+        return new OrderExecutedEvent.Fill(restingId, price(price), amount(amount), amount(remainingAmount));
+    }
+
+    private static BigDecimal price(long ticks) {
+        return BigDecimal.valueOf(ticks);
+    }
+
+    private static BigDecimal amount(long lots) {
+        return BigDecimal.valueOf(lots);
+    }
+
+    private static OrderAcceptedEvent accepted(long orderId, OrderType type, long price, long amount) {
+        return new OrderAcceptedEvent("BTC",
+                                      UUID.randomUUID(),
+                                      orderId,
+                                      type,
+                                      BigDecimal.valueOf(amount),
+                                      BigDecimal.valueOf(price),
+                                      Instant.MIN);
+    }
 }
@@ -0,0 +1,82 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Stefan Dragisic
+ */
+class TimingWheelTest {
+
+    private final TimingWheel testSubject = new TimingWheel(10, 0);
+    private final List<Long> expired = new ArrayList<>();
+
+    @Test
+    public void expiresInDeadlineOrder() {
+        testSubject.schedule(1, 50);
+        testSubject.schedule(2, 15);
+        testSubject.schedule(3, 20);
+
+        testSubject.advance(19, expired::add);
+        assertEquals(List.of(), expired);
+
+        testSubject.advance(20, expired::add);
+        assertEquals(List.of(2L, 3L), expired);
+
+        testSubject.advance(1000, expired::add);
+        assertEquals(List.of(2L, 3L, 1L), expired);
+        assertEquals(0, testSubject.size());
+    }
+
+    @Test
+    public void cascadesFarDeadlinesThroughAllLevels() {
+        long[] deadlines = {2_570, 655_370, 167_772_170, 42_949_672_970L, 50_000_000_000L};
+        for (int i = 0; i < deadlines.length; i++) {
+            testSubject.schedule(i, deadlines[i]);
+        }
+
+        for (int i = 0; i < deadlines.length; i++) {
+            testSubject.advance(deadlines[i] - 10, expired::add);
+            assertEquals(i, expired.size());
+            testSubject.advance(deadlines[i], expired::add);
+            assertEquals(i + 1, expired.size());
+            assertEquals(i, expired.get(i));
+        }
+    }
+
+    @Test
+    public void tracksEarliestDeadlineAcrossLevels() {
+        assertEquals(Long.MAX_VALUE, testSubject.nextDeadline());
+
+        testSubject.schedule(1, 2_570);
+        testSubject.advance(2_500, expired::add);
+        assertEquals(2_600, testSubject.schedule(2, 2_595));
+        assertEquals(655_370, testSubject.schedule(3, 655_370));
+        assertEquals(2_570, testSubject.nextDeadline());
+
+        testSubject.advance(2_570, expired::add);
+        assertEquals(2_600, testSubject.nextDeadline());
+
+        testSubject.advance(2_600, expired::add);
+        assertEquals(655_370, testSubject.nextDeadline());
+
+        testSubject.advance(655_370, expired::add);
+        assertEquals(Long.MAX_VALUE, testSubject.nextDeadline());
+        assertEquals(List.of(1L, 2L, 3L), expired);
+    }
+
+    @Test
+    public void pastDeadlineExpiresOnNextTick() {
+        testSubject.advance(100, expired::add);
+        testSubject.schedule(1, 30);
+
+        testSubject.advance(100, expired::add);
+        assertTrue(expired.isEmpty());
+        testSubject.advance(110, expired::add);
+        assertEquals(List.of(1L), expired);
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.schananas.reactivestockmarket.domain.engine;
+
+import com.github.schananas.reactivestockmarket.domain.query.OrderType;
+import com.github.schananas.reactivestockmarket.domain.query.TimeInForce;
+import org.junit.jupiter.api.*;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Stefan Dragisic
+ */
+class TriggerBookTest {
+
+    private final TriggerBook testSubject = new TriggerBook();
+
+    @Test
+    public void drainsOnlyCrossedRangeInTriggerPriority() {
+        testSubject.add(stop(1, OrderType.BUY, 105));
+        testSubject.add(stop(2, OrderType.BUY, 101));
+        testSubject.add(stop(3, OrderType.BUY, 103));
+        testSubject.add(stop(4, OrderType.BUY, 101));
+        testSubject.add(stop(5, OrderType.SELL, 103));
+        testSubject.add(stop(6, OrderType.SELL, 99));
+
+        List<StopOrder> triggered = new ArrayList<>();
+        testSubject.drainTriggered(103, triggered);
+
+        assertEquals(List.of(2L, 4L, 3L, 5L), triggered.stream().map(StopOrder::id).toList());
+        assertTrue(testSubject.contains(1));
+        assertTrue(testSubject.contains(6));
+        assertFalse(testSubject.contains(3));
+    }
+
+    @Test
+    public void removeUnlinksStop() {
+        testSubject.add(stop(1, OrderType.SELL, 100));
+        testSubject.add(stop(2, OrderType.SELL, 100));
+        testSubject.add(stop(3, OrderType.SELL, 100));
+
+        assertEquals(2, testSubject.remove(2).id());
+        assertNull(testSubject.remove(2));
+
+        List<StopOrder> triggered = new ArrayList<>();
+        testSubject.drainTriggered(90, triggered);
+
+        assertEquals(List.of(1L, 3L), triggered.stream().map(StopOrder::id).toList());
+        assertTrue(testSubject.isEmpty());
+    }
+
+    private static StopOrder stop(long id, OrderType type, long stopPrice) {
+        return new StopOrder(id, "BTC", Instant.MIN, type, stopPrice, TriggerBook.MARKET, 1, TimeInForce.GTC);
+    }
+}